@@ -0,0 +1,29 @@
+package metrolink.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with JMH's command line, adding the GC profiler so every result
+ * also reports its allocation rate, unless profilers are chosen on the command line
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain(){
+    }
+
+    /**
+     * Runs the benchmarks
+     * @param args JMH command line arguments
+     * @throws Exception if JMH fails
+     */
+    public static void main(String[] args) throws Exception{
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if(!jmhArgs.contains("-prof")){
+            jmhArgs.add("-prof");
+            jmhArgs.add("gc");
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
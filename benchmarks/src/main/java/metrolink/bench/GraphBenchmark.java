@@ -0,0 +1,42 @@
+package metrolink.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading the network and looking up stations
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    /**
+     * Benchmarks CSVReader.getGraph
+     * @param network the network to load
+     * @return the loaded Graph
+     */
+    @Benchmark
+    public Object loadGraph(NetworkState network){
+        return Planner.loadGraph(network.csv.toString());
+    }
+
+    /**
+     * Benchmarks Graph.findNode on the start station of the next query pair
+     * @param network the loaded network
+     * @param queries the query pairs
+     * @return the found Node
+     */
+    @Benchmark
+    public Object findNode(NetworkState network, QueryState queries){
+        return Planner.findNode(network.graph, queries.nextPair()[0]);
+    }
+}
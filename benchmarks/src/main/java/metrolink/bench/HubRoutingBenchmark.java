@@ -0,0 +1,134 @@
+package metrolink.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks shortest time queries on a generated network of busy interchanges, whose hubs have about twice
+ * as many edges as they have stops: ShortestRoute.findRoute with its loop over Edge objects, against OneToAllSearch
+ * on a CompactGraph relaxing every station edge by edge, and with the vector RelaxKernel for the busy stations.
+ * Setup checks the three agree on the journey times
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class HubRoutingBenchmark {
+
+    private static final int HUBS = 20;
+    private static final int PAIRS = 256;
+    private static final int CHECKED_PAIRS = 32;
+
+    /** The number of stops of each hub. */
+    @Param({"64", "256", "1024"})
+    public int spokes;
+
+    /** The search, "shortestRoute", "edgeLoop" or "vectorKernel". */
+    @Param({"shortestRoute", "edgeLoop", "vectorKernel"})
+    public String engine;
+
+    private Path csv;
+    private Object graph;
+    private Object shortestRoute;
+    private Object search;
+    private String[][] pairs;
+    private int[][] indexes; // The station indexes of the pairs, for OneToAllSearch
+    private BitSet target = new BitSet();
+    private int next;
+
+    /**
+     * Builds and loads the hub network, picks the query pairs and checks the searches agree on them
+     * @throws IOException if the network can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException{
+        Network network = Network.hubs(HUBS, spokes, 42);
+        csv = network.writeCsv();
+        graph = Planner.loadGraph(csv.toString());
+        Object packed = Planner.newCompactGraph(graph);
+        Object kernel = Planner.newRelaxKernel(true);
+        if(!Planner.kernelName(kernel).equals("vector")){
+            throw new IllegalStateException("The vector kernel is not available in this JVM");
+        }
+        shortestRoute = Planner.newShortestRoute();
+        Object edgeLoop = Planner.newOneToAllSearch(packed, null);
+        Object vector = Planner.newOneToAllSearch(packed, kernel);
+        search = engine.equals("vectorKernel") ? vector : edgeLoop;
+
+        List<String> stations = network.stations();
+        Random random = new Random(42);
+        pairs = new String[PAIRS][];
+        indexes = new int[PAIRS][];
+        for(int i = 0; i < PAIRS; i++){
+            pairs[i] = new String[]{stations.get(random.nextInt(stations.size())), stations.get(random.nextInt(stations.size()))};
+            indexes[i] = new int[]{Planner.nodeIndex(Planner.findNode(graph, pairs[i][0])), Planner.nodeIndex(Planner.findNode(graph, pairs[i][1]))};
+        }
+        for(int i = 0; i < CHECKED_PAIRS; i++){
+            Planner.shortestRoute(shortestRoute, graph, pairs[i][0], pairs[i][1]);
+            float expected = Planner.shortestJourneyTime(shortestRoute);
+            for(Object packedSearch : new Object[]{edgeLoop, vector}){
+                query(packedSearch, indexes[i]);
+                if(Planner.oneToAllTime(packedSearch, indexes[i][1]) != expected){
+                    throw new IllegalStateException("The searches disagree from " + pairs[i][0] + " to " + pairs[i][1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the hub network's CSV
+     * @throws IOException if the file can't be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException{
+        Files.deleteIfExists(csv);
+    }
+
+
+    /**
+     * Helper method which runs OneToAllSearch until it reaches the destination
+     * @param packedSearch the OneToAllSearch
+     * @param pair the start and destination indexes
+     */
+    private void query(Object packedSearch, int[] pair){
+        target.clear();
+        target.set(pair[1]);
+        Planner.oneToAllRun(packedSearch, pair[0], target);
+    }
+
+    /**
+     * Benchmarks one shortest time query with the engine
+     * @return the journey time found
+     */
+    @Benchmark
+    public float shortestTime(){
+        int i = next;
+        next = (next + 1) % PAIRS;
+        if(engine.equals("shortestRoute")){
+            Planner.shortestRoute(shortestRoute, graph, pairs[i][0], pairs[i][1]);
+            return Planner.shortestJourneyTime(shortestRoute);
+        }
+        query(search, indexes[i]);
+        return Planner.oneToAllTime(search, indexes[i][1]);
+    }
+}
@@ -0,0 +1,204 @@
+package metrolink.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The rows of a network in the From,To,Line,Time CSV format, with the station adjacency
+ * the workloads need to pick their query pairs
+ */
+final class Network {
+
+    private static final String BUNDLED = "resources/Metrolink_times_linecolour.csv";
+    private static final String HEADER = "From ,To ,Line ,Time (mins)";
+    private static final String LINK_LINE = "link"; // line of the edges which join the copies of a scaled network
+    private static final String LINK_TIME = "5";
+    private static final int HUB_LINES = 12; // lines of a hub network
+
+    private final List<String[]> rows;
+    private final Map<String, List<String>> neighbours = new LinkedHashMap<>();
+
+    /**
+     * Creates an instance of Network
+     * @param rows the rows of the network, each one as {from, to, line, time}
+     */
+    private Network(List<String[]> rows){
+        this.rows = rows;
+        for(String[] row : rows){
+            neighbours.computeIfAbsent(row[0], k -> new ArrayList<>()).add(row[1]);
+            neighbours.computeIfAbsent(row[1], k -> new ArrayList<>()).add(row[0]);
+        }
+    }
+
+
+    /**
+     * Reads the bundled Metrolink network, from the path in the metrolink.csv system property if it is set,
+     * otherwise from the resources folder of the nearest enclosing directory which has one
+     * @return the bundled network
+     * @throws IOException if the file can't be read
+     */
+    static Network bundled() throws IOException{
+        String property = System.getProperty("metrolink.csv");
+        Path csv = property != null ? Paths.get(property) : null;
+        for(Path dir = Paths.get("").toAbsolutePath(); csv == null && dir != null; dir = dir.getParent()){
+            if(Files.exists(dir.resolve(BUNDLED))) csv = dir.resolve(BUNDLED);
+        }
+        if(csv == null){
+            throw new IOException(BUNDLED + " not found, set -Dmetrolink.csv to its path");
+        }
+
+        return read(csv);
+    }
+
+
+    /**
+     * Reads a network from a CSV file
+     * @param csv the path of the file
+     * @return the network
+     * @throws IOException if the file can't be read
+     */
+    static Network read(Path csv) throws IOException{
+        List<String[]> rows = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)){
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.startsWith("From")) continue;
+                rows.add(line.split(","));
+            }
+        }
+        return new Network(rows);
+    }
+
+
+    /**
+     * Copies the network the given number of times and joins the copies into a binary tree,
+     * linking the busiest station of each copy to the second busiest station of its parent copy
+     * @param copies the number of copies, 1 returns this network
+     * @return the scaled network
+     */
+    Network scaled(int copies){
+        if(copies <= 1) return this;
+
+        List<String> byDegree = stationsByDegree();
+        String hub = byDegree.get(0);
+        String parentHub = byDegree.get(1);
+
+        List<String[]> scaled = new ArrayList<>(rows.size() * copies + copies);
+        for(int copy = 0; copy < copies; copy++){
+            for(String[] row : rows){
+                scaled.add(new String[]{rename(row[0], copy), rename(row[1], copy), row[2], row[3]});
+            }
+            if(copy > 0){
+                scaled.add(new String[]{rename(hub, copy), rename(parentHub, (copy - 1) / 2), LINK_LINE, LINK_TIME});
+            }
+        }
+        return new Network(scaled);
+    }
+
+
+    /**
+     * Builds a network of busy interchanges. Each hub has its own stops, each stop is linked to its hub and to one
+     * other hub, and the links take 1 to 6 minutes on one of 12 lines, so every hub has about twice as many edges as stops
+     * @param hubs the number of hubs
+     * @param spokes the number of stops of each hub
+     * @param seed the seed for the times
+     * @return the hub network
+     */
+    static Network hubs(int hubs, int spokes, long seed){
+        Random random = new Random(seed);
+        List<String[]> rows = new ArrayList<>();
+        for(int hub = 0; hub < hubs; hub++){
+            for(int spoke = 0; spoke < spokes; spoke++){
+                String stop = "Stop " + hub + "-" + spoke;
+                String line = "L" + (spoke % HUB_LINES);
+                rows.add(new String[]{"Hub " + hub, stop, line, Integer.toString(1 + random.nextInt(6))});
+                int other = (hub + 1 + spoke % Math.max(1, hubs - 1)) % hubs;
+                if(other != hub) rows.add(new String[]{stop, "Hub " + other, line, Integer.toString(1 + random.nextInt(6))});
+            }
+        }
+        return new Network(rows);
+    }
+
+
+    /**
+     * Writes the network to a temporary CSV file
+     * @return the path of the file
+     * @throws IOException if the file can't be written
+     */
+    Path writeCsv() throws IOException{
+        Path file = Files.createTempFile("metrolink-bench", ".csv");
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            writer.write(HEADER);
+            writer.newLine();
+            for(String[] row : rows){
+                writer.write(String.join(",", row));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+
+    /**
+     * getter for the station names
+     * @return the names of all stations in the order they first appear in the CSV
+     */
+    List<String> stations(){
+        return new ArrayList<>(neighbours.keySet());
+    }
+
+    /**
+     * Sorts the stations by the number of edges they have
+     * @return the names of all stations, busiest first
+     */
+    List<String> stationsByDegree(){
+        List<String> stations = stations();
+        stations.sort((a, b) -> Integer.compare(neighbours.get(b).size(), neighbours.get(a).size()));
+        return stations;
+    }
+
+
+    /**
+     * Finds the station which is the most stops away from the given one
+     * @param from the name of the station to start at
+     * @return the name of the farthest station
+     */
+    String farthestFrom(String from){
+        Map<String, Integer> hops = new HashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        hops.put(from, 0);
+        queue.add(from);
+        String last = from;
+        while(!queue.isEmpty()){
+            last = queue.poll();
+            for(String next : neighbours.getOrDefault(last, Collections.emptyList())){
+                if(hops.putIfAbsent(next, hops.get(last) + 1) == null) queue.add(next);
+            }
+        }
+        return last;
+    }
+
+
+    /**
+     * Helper method which names a station in a copy of the network
+     * @param station the name of the station in the original network
+     * @param copy the index of the copy
+     * @return the original name for the first copy, otherwise the name followed by the copy number
+     */
+    private static String rename(String station, int copy){
+        return copy == 0 ? station : station + " #" + copy;
+    }
+}
@@ -0,0 +1,67 @@
+package metrolink.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The network shared by all benchmark threads: the bundled Metrolink CSV scaled up by a number of copies,
+ * or a generated network of the same size, written to a temporary file and loaded into a Graph
+ */
+@State(Scope.Benchmark)
+public class NetworkState {
+
+    /** How many copies of the bundled network to join together. */
+    @Param({"1", "10", "100", "1000"})
+    public int scale;
+
+    /**
+     * How the network grows: COPIES joins copies of the bundled network,
+     * GENERATED uses NetworkGenerator with as many stations as the copies would have
+     */
+    @Param({"COPIES", "GENERATED"})
+    public String topology;
+
+    Network network;
+    Path csv;
+    Object graph;
+
+    /**
+     * Builds, writes and loads the scaled network
+     * @throws IOException if the bundled CSV can't be read or the scaled one can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException{
+        Network bundled = Network.bundled();
+        if(topology.equals("GENERATED")){
+            int stations = bundled.stations().size() * scale;
+            int lines = (int) Math.max(7, Math.round(7 * Math.sqrt(scale)));
+            csv = Files.createTempFile("metrolink-bench", ".csv");
+            try(Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)){
+                Planner.generateNetwork(stations, lines, 42, out);
+            }
+            network = Network.read(csv);
+        }else{
+            network = bundled.scaled(scale);
+            csv = network.writeCsv();
+        }
+        graph = Planner.loadGraph(csv.toString());
+    }
+
+    /**
+     * Deletes the scaled CSV
+     * @throws IOException if the file can't be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException{
+        Files.deleteIfExists(csv);
+    }
+}
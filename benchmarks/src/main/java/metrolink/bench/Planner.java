@@ -0,0 +1,352 @@
+package metrolink.bench;
+
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.BitSet;
+
+/**
+ * Calls into the planner classes.
+ * The planner lives in the unnamed package, which code in a named package can't import, and JMH refuses
+ * to generate code for benchmarks in the unnamed package. The planner methods are therefore looked up once
+ * as method handles; they are held in static finals so the JIT inlines them like direct calls
+ */
+final class Planner {
+
+    private static final MethodHandle NEW_CSV_READER;
+    private static final MethodHandle NEW_TEXT_AREA;
+    private static final MethodHandle GET_GRAPH;
+    private static final MethodHandle FIND_NODE;
+    private static final MethodHandle NEW_SHORTEST_ROUTE;
+    private static final MethodHandle SHORTEST_FIND_ROUTE;
+    private static final MethodHandle NEW_FEWEST_CHANGES_ROUTE;
+    private static final MethodHandle FEWEST_CHANGES_FIND_ROUTE;
+    private static final MethodHandle NEW_NETWORK_GENERATOR;
+    private static final MethodHandle GENERATOR_WRITE;
+    private static final MethodHandle NEW_RELAX_KERNEL;
+    private static final MethodHandle CREATE_RELAX_KERNEL;
+    private static final MethodHandle KERNEL_RELAX;
+    private static final MethodHandle KERNEL_NAME;
+    private static final MethodHandle SHORTEST_JOURNEY_TIME;
+    private static final MethodHandle NODE_INDEX;
+    private static final MethodHandle NEW_COMPACT_GRAPH;
+    private static final MethodHandle NEW_ONE_TO_ALL_SEARCH;
+    private static final MethodHandle ONE_TO_ALL_RUN;
+    private static final MethodHandle ONE_TO_ALL_TIME;
+
+    static {
+        try{
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> graph = Class.forName("Graph");
+            Class<?> node = Class.forName("Node");
+            Class<?> csvReader = Class.forName("CSVReader");
+            Class<?> textArea = Class.forName("javax.swing.JTextArea");
+            Class<?> shortestRoute = Class.forName("ShortestRoute");
+            Class<?> fewestChangesRoute = Class.forName("FewestChangesRoute");
+            Class<?> networkGenerator = Class.forName("NetworkGenerator");
+            Class<?> relaxKernel = Class.forName("RelaxKernel");
+            Class<?> packedNetwork = Class.forName("PackedNetwork");
+            Class<?> compactGraph = Class.forName("CompactGraph");
+            Class<?> oneToAllSearch = Class.forName("OneToAllSearch");
+
+            NEW_CSV_READER = erase(lookup.findConstructor(csvReader, MethodType.methodType(void.class)));
+            NEW_TEXT_AREA = erase(lookup.findConstructor(textArea, MethodType.methodType(void.class)));
+            GET_GRAPH = erase(lookup.findVirtual(csvReader, "getGraph",
+                    MethodType.methodType(graph, String.class, textArea)));
+            FIND_NODE = erase(lookup.findVirtual(graph, "findNode", MethodType.methodType(node, String.class)));
+            NEW_SHORTEST_ROUTE = erase(lookup.findConstructor(shortestRoute, MethodType.methodType(void.class)));
+            SHORTEST_FIND_ROUTE = erase(lookup.findVirtual(shortestRoute, "findRoute",
+                    MethodType.methodType(void.class, graph, String.class, String.class)));
+            NEW_FEWEST_CHANGES_ROUTE = erase(lookup.findConstructor(fewestChangesRoute, MethodType.methodType(void.class)));
+            FEWEST_CHANGES_FIND_ROUTE = erase(lookup.findVirtual(fewestChangesRoute, "findRoute",
+                    MethodType.methodType(void.class, graph, String.class, String.class)));
+            NEW_NETWORK_GENERATOR = erase(lookup.findConstructor(networkGenerator,
+                    MethodType.methodType(void.class, int.class, int.class, long.class)));
+            GENERATOR_WRITE = erase(lookup.findVirtual(networkGenerator, "write",
+                    MethodType.methodType(void.class, Writer.class)));
+            NEW_RELAX_KERNEL = erase(lookup.findConstructor(relaxKernel, MethodType.methodType(void.class)));
+            CREATE_RELAX_KERNEL = erase(lookup.findStatic(relaxKernel, "create", MethodType.methodType(relaxKernel)));
+            KERNEL_RELAX = erase(lookup.findVirtual(relaxKernel, "relax", MethodType.methodType(int.class,
+                    float[].class, int[].class, int[].class, float[].class, int.class, int.class, int.class, float.class,
+                    int[].class, float[].class)));
+            KERNEL_NAME = erase(lookup.findVirtual(relaxKernel, "getName", MethodType.methodType(String.class)));
+            SHORTEST_JOURNEY_TIME = erase(lookup.findVirtual(shortestRoute, "getJourneyTime", MethodType.methodType(float.class)));
+            NODE_INDEX = erase(lookup.findVirtual(node, "getIndex", MethodType.methodType(int.class)));
+            NEW_COMPACT_GRAPH = erase(lookup.findConstructor(compactGraph, MethodType.methodType(void.class, graph)));
+            NEW_ONE_TO_ALL_SEARCH = erase(lookup.findConstructor(oneToAllSearch,
+                    MethodType.methodType(void.class, packedNetwork, relaxKernel)));
+            ONE_TO_ALL_RUN = erase(lookup.findVirtual(oneToAllSearch, "run",
+                    MethodType.methodType(void.class, int.class, BitSet.class)));
+            ONE_TO_ALL_TIME = erase(lookup.findVirtual(oneToAllSearch, "getTime", MethodType.methodType(float.class, int.class)));
+        } catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Planner(){
+    }
+
+    /**
+     * Helper method which replaces every object type in the signature of the handle with Object,
+     * apart from the String and Writer arguments callers pass in
+     * @param handle the handle of a planner method
+     * @return a handle which can be invoked exactly with Object arguments in place of planner types
+     */
+    private static MethodHandle erase(MethodHandle handle){
+        MethodType type = handle.type();
+        for(int i = 0; i < type.parameterCount(); i++){
+            Class<?> parameter = type.parameterType(i);
+            if(!parameter.isPrimitive() && parameter != String.class && parameter != Writer.class) type = type.changeParameterType(i, Object.class);
+        }
+        if(!type.returnType().isPrimitive()) type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    /**
+     * Reads a network with CSVReader.getGraph
+     * @param csvPath the path of the CSV file
+     * @return the Graph
+     */
+    static Object loadGraph(String csvPath){
+        try{
+            Object reader = (Object) NEW_CSV_READER.invokeExact();
+            Object textArea = (Object) NEW_TEXT_AREA.invokeExact();
+            return (Object) GET_GRAPH.invokeExact(reader, csvPath, textArea);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls Graph.findNode
+     * @param graph the Graph
+     * @param station the name of the station
+     * @return the Node, null if it is not found
+     */
+    static Object findNode(Object graph, String station){
+        try{
+            return (Object) FIND_NODE.invokeExact(graph, station);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates a ShortestRoute
+     * @return the new ShortestRoute
+     */
+    static Object newShortestRoute(){
+        try{
+            return (Object) NEW_SHORTEST_ROUTE.invokeExact();
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls ShortestRoute.findRoute
+     * @param router the ShortestRoute
+     * @param graph the Graph
+     * @param start the name of the start station
+     * @param end the name of the destination
+     */
+    static void shortestRoute(Object router, Object graph, String start, String end){
+        try{
+            SHORTEST_FIND_ROUTE.invokeExact(router, graph, start, end);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates a FewestChangesRoute
+     * @return the new FewestChangesRoute
+     */
+    static Object newFewestChangesRoute(){
+        try{
+            return (Object) NEW_FEWEST_CHANGES_ROUTE.invokeExact();
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls FewestChangesRoute.findRoute
+     * @param router the FewestChangesRoute
+     * @param graph the Graph
+     * @param start the name of the start station
+     * @param end the name of the destination
+     */
+    static void fewestChangesRoute(Object router, Object graph, String start, String end){
+        try{
+            FEWEST_CHANGES_FIND_ROUTE.invokeExact(router, graph, start, end);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Writes a network made by NetworkGenerator
+     * @param stations the number of stations
+     * @param lines the number of lines
+     * @param seed the seed for the layout
+     * @param out where to write the CSV
+     */
+    static void generateNetwork(int stations, int lines, long seed, Writer out){
+        try{
+            Object generator = (Object) NEW_NETWORK_GENERATOR.invokeExact(stations, lines, seed);
+            GENERATOR_WRITE.invokeExact(generator, out);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls ShortestRoute.getJourneyTime
+     * @param router the ShortestRoute
+     * @return the journey time of the last route found
+     */
+    static float shortestJourneyTime(Object router){
+        try{
+            return (float) SHORTEST_JOURNEY_TIME.invokeExact(router);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls Node.getIndex
+     * @param node the Node
+     * @return the index of the station, which is also its index in a CompactGraph of the graph
+     */
+    static int nodeIndex(Object node){
+        try{
+            return (int) NODE_INDEX.invokeExact(node);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates a CompactGraph snapshot of a graph
+     * @param graph the Graph
+     * @return the CompactGraph
+     */
+    static Object newCompactGraph(Object graph){
+        try{
+            return (Object) NEW_COMPACT_GRAPH.invokeExact(graph);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates a OneToAllSearch
+     * @param packed the PackedNetwork to search
+     * @param kernel the RelaxKernel for busy stations, null to relax every station edge by edge
+     * @return the new OneToAllSearch
+     */
+    static Object newOneToAllSearch(Object packed, Object kernel){
+        try{
+            return (Object) NEW_ONE_TO_ALL_SEARCH.invokeExact(packed, kernel);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls OneToAllSearch.run
+     * @param search the OneToAllSearch
+     * @param source the index of the start station
+     * @param targets the stations to stop at, null for the whole network
+     */
+    static void oneToAllRun(Object search, int source, BitSet targets){
+        try{
+            ONE_TO_ALL_RUN.invokeExact(search, source, (Object) targets);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls OneToAllSearch.getTime
+     * @param search the OneToAllSearch
+     * @param station the index of the station
+     * @return the journey time found by the last run
+     */
+    static float oneToAllTime(Object search, int station){
+        try{
+            return (float) ONE_TO_ALL_TIME.invokeExact(search, station);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates a relaxation kernel
+     * @param vector true for RelaxKernel.create, which gives the vector kernel when the JVM has the Vector API,
+     *               false for the scalar RelaxKernel
+     * @return the RelaxKernel
+     */
+    static Object newRelaxKernel(boolean vector){
+        try{
+            return vector ? (Object) CREATE_RELAX_KERNEL.invokeExact() : (Object) NEW_RELAX_KERNEL.invokeExact();
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls RelaxKernel.getName
+     * @param kernel the RelaxKernel
+     * @return "scalar" or "vector"
+     */
+    static String kernelName(Object kernel){
+        try{
+            return (String) (Object) KERNEL_NAME.invokeExact(kernel);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Calls RelaxKernel.relax
+     * @param kernel the RelaxKernel
+     * @param edgeTime the travel time of each edge
+     * @param edgeLine the line of each edge
+     * @param edgeState the state each edge arrives in
+     * @param stateTime the current time of each state
+     * @param first the first edge of the range
+     * @param last the end of the range
+     * @param line the line the station was reached on
+     * @param time the time the station was reached at
+     * @param improved filled with the improving edges
+     * @param improvedTime filled with the times they give
+     * @return the number of improving edges
+     */
+    static int relax(Object kernel, float[] edgeTime, int[] edgeLine, int[] edgeState, float[] stateTime, int first, int last,
+                     int line, float time, int[] improved, float[] improvedTime){
+        try{
+            return (int) KERNEL_RELAX.invokeExact(kernel, (Object) edgeTime, (Object) edgeLine, (Object) edgeState,
+                    (Object) stateTime, first, last, line, time, (Object) improved, (Object) improvedTime);
+        } catch(Throwable t){
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Helper method which rethrows errors and wraps checked exceptions thrown through a method handle
+     * @param t the thrown exception
+     * @return an unchecked exception to throw
+     */
+    private static RuntimeException propagate(Throwable t){
+        if(t instanceof RuntimeException){
+            return (RuntimeException) t;
+        }
+        if(t instanceof Error){
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
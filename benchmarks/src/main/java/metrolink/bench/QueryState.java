@@ -0,0 +1,42 @@
+package metrolink.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The query pairs of one benchmark thread, which cycles through them so every invocation routes a different pair
+ */
+@State(Scope.Thread)
+public class QueryState {
+
+    private static final int PAIRS = 1024;
+
+    /** How the pairs are picked, one of the {@link Workload} names. */
+    @Param({"RANDOM", "SKEWED", "WORST_CASE"})
+    public String workload;
+
+    private String[][] pairs;
+    private int next;
+
+    /**
+     * Picks the query pairs
+     * @param network the network the queries run on
+     */
+    @Setup(Level.Trial)
+    public void setUp(NetworkState network){
+        pairs = Workload.valueOf(workload).pairs(network.network, PAIRS, 42);
+    }
+
+    /**
+     * getter for the next query pair
+     * @return the pair as {start, end}
+     */
+    String[] nextPair(){
+        String[] pair = pairs[next];
+        next = (next + 1) % pairs.length;
+        return pair;
+    }
+}
@@ -0,0 +1,86 @@
+package metrolink.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the scalar and vector RelaxKernel on the edges of one synthetic interchange,
+ * with as many edges as the degree and about 1 in 10 of them improving their arrival state.
+ * The fork adds the Vector API module, without which the vector kernel can't be created
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class RelaxBenchmark {
+
+    private static final int LINES = 12;
+
+    /** The number of edges leaving the station. */
+    @Param({"16", "64", "256", "1024"})
+    public int degree;
+
+    /** The kernel, "scalar" or "vector". */
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    private Object relaxKernel;
+    private float[] edgeTime;
+    private int[] edgeLine;
+    private int[] edgeState;
+    private float[] stateTime;
+    private int[] improved;
+    private float[] improvedTime;
+    private int query;
+
+    /**
+     * Builds the edges and the state times, and checks the kernel asked for is the one created
+     */
+    @Setup(Level.Trial)
+    public void setUp(){
+        relaxKernel = Planner.newRelaxKernel(kernel.equals("vector"));
+        if(!Planner.kernelName(relaxKernel).equals(kernel)){
+            throw new IllegalStateException("The " + kernel + " kernel is not available in this JVM");
+        }
+        Random random = new Random(42);
+        edgeTime = new float[degree];
+        edgeLine = new int[degree];
+        edgeState = new int[degree];
+        stateTime = new float[degree * 4];
+        for(int edge = 0; edge < degree; edge++){
+            edgeTime[edge] = 1 + random.nextInt(5);
+            edgeLine[edge] = random.nextInt(LINES);
+            edgeState[edge] = random.nextInt(stateTime.length);
+        }
+        // Most states are already settled well below the times the edges give
+        for(int state = 0; state < stateTime.length; state++){
+            stateTime[state] = random.nextInt(10) == 0 ? Float.POSITIVE_INFINITY : 2;
+        }
+        improved = new int[degree];
+        improvedTime = new float[degree];
+    }
+
+    /**
+     * Relaxes every edge of the station, reached on a line which changes with each call
+     * @return the number of improving edges
+     */
+    @Benchmark
+    public int relax(){
+        int line = query++ % LINES;
+        return Planner.relax(relaxKernel, edgeTime, edgeLine, edgeState, stateTime, 0, degree, line, 1, improved, improvedTime);
+    }
+}
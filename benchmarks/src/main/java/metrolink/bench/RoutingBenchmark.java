@@ -0,0 +1,54 @@
+package metrolink.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the routing searches on the query pairs of each workload
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+
+    // The routers keep their maps between queries like the GUI's would, so each thread has its own
+    private Object shortestRoute = Planner.newShortestRoute();
+    private Object fewestChangesRoute = Planner.newFewestChangesRoute();
+
+    /**
+     * Benchmarks ShortestRoute.findRoute
+     * @param network the loaded network
+     * @param queries the query pairs
+     * @return the router holding the found route
+     */
+    @Benchmark
+    public Object shortestRoute(NetworkState network, QueryState queries){
+        String[] pair = queries.nextPair();
+        Planner.shortestRoute(shortestRoute, network.graph, pair[0], pair[1]);
+        return shortestRoute;
+    }
+
+    /**
+     * Benchmarks FewestChangesRoute.findRoute
+     * @param network the loaded network
+     * @param queries the query pairs
+     * @return the router holding the found route
+     */
+    @Benchmark
+    public Object fewestChangesRoute(NetworkState network, QueryState queries){
+        String[] pair = queries.nextPair();
+        Planner.fewestChangesRoute(fewestChangesRoute, network.graph, pair[0], pair[1]);
+        return fewestChangesRoute;
+    }
+}
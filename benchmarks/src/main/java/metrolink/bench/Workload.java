@@ -0,0 +1,106 @@
+package metrolink.bench;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The ways the benchmarks pick the (start, end) pairs they route between
+ */
+enum Workload {
+
+    /** Every station is equally likely to be a start or an end. */
+    RANDOM {
+        @Override
+        String[][] pairs(Network network, int count, long seed){
+            List<String> stations = network.stations();
+            Random random = new Random(seed);
+            String[][] pairs = new String[count][];
+            for(int i = 0; i < count; i++){
+                pairs[i] = new String[]{pick(stations, random), pick(stations, random)};
+            }
+            return pairs;
+        }
+    },
+
+    /** Stations are picked with a Zipf distribution over their degree, so the interchanges get most of the queries. */
+    SKEWED {
+        @Override
+        String[][] pairs(Network network, int count, long seed){
+            List<String> stations = network.stationsByDegree();
+            double[] cumulative = new double[stations.size()];
+            double total = 0;
+            for(int rank = 0; rank < cumulative.length; rank++){
+                total += 1.0 / (rank + 1);
+                cumulative[rank] = total;
+            }
+
+            Random random = new Random(seed);
+            String[][] pairs = new String[count][];
+            for(int i = 0; i < count; i++){
+                pairs[i] = new String[]{zipf(stations, cumulative, random), zipf(stations, cumulative, random)};
+            }
+            return pairs;
+        }
+    },
+
+    /** Pairs of stations at the far ends of the network, found by sweeping out from random stations. */
+    WORST_CASE {
+        @Override
+        String[][] pairs(Network network, int count, long seed){
+            List<String> stations = network.stations();
+            Random random = new Random(seed);
+            // The sweeps are costly on big networks, so find a few pairs and repeat them
+            String[][] distinct = new String[Math.min(count, 16)][];
+            for(int i = 0; i < distinct.length; i++){
+                String first = network.farthestFrom(pick(stations, random));
+                distinct[i] = new String[]{first, network.farthestFrom(first)};
+            }
+
+            String[][] pairs = new String[count][];
+            for(int i = 0; i < count; i++){
+                pairs[i] = distinct[i % distinct.length];
+            }
+            return pairs;
+        }
+    };
+
+
+    /**
+     * Picks the query pairs
+     * @param network the network the queries run on
+     * @param count the number of pairs
+     * @param seed the seed for the random choices
+     * @return the pairs, each one as {start, end}
+     */
+    abstract String[][] pairs(Network network, int count, long seed);
+
+
+    /**
+     * Helper method which picks a station uniformly
+     * @param stations the stations to pick from
+     * @param random the source of randomness
+     * @return the name of the station
+     */
+    private static String pick(List<String> stations, Random random){
+        return stations.get(random.nextInt(stations.size()));
+    }
+
+    /**
+     * Helper method which picks a station with a Zipf distribution over its rank
+     * @param stations the stations, most popular first
+     * @param cumulative the cumulative weights of the ranks
+     * @param random the source of randomness
+     * @return the name of the station
+     */
+    private static String zipf(List<String> stations, double[] cumulative, Random random){
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(cumulative[middle] < target) low = middle + 1;
+            else high = middle;
+        }
+        return stations.get(low);
+    }
+}
@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Checks the cut and repair searches of ClosureCriticality against closing each station for real:
+ * a NetworkOverlay with the station closed and a full OneToAllSearch from every origin.
+ * The journeys left without a route must match exactly, and the extra minutes up to the order they are added in
+ */
+public class ClosureCriticalityTest {
+
+    private static final double TOLERANCE = 1e-6; // relative, for totals added up in a different order
+
+
+    /**
+     * Compares the scan on the Metrolink network, with a station already closed
+     * @throws IOException if the network can't be read
+     */
+    @Test
+    public void matchesFullSearchesOnMetrolink() throws IOException{
+        Graph graph = new LazyGraphReader().getGraph("../resources/Metrolink_times_linecolour.csv");
+        graph.addClosure(graph.getHeaNode().getNxtNode().getID());
+        Edge delayed = graph.getHeaNode().getEdges().iterator().next();
+        graph.addDelay(graph.getHeaNode().getID(), delayed.getEndNode().getID(), delayed.getLine(), 3.5f);
+        compare(graph, 1);
+        compare(graph, 4);
+    }
+
+    /**
+     * Compares the scan on a generated network
+     * @throws IOException if the network can't be written or read
+     */
+    @Test
+    public void matchesFullSearchesOnGeneratedNetwork() throws IOException{
+        Path csv = Files.createTempFile("generated", ".csv");
+        try{
+            try(Writer out = Files.newBufferedWriter(csv)){
+                new NetworkGenerator(300, 8, 7).write(out);
+            }
+            compare(new LazyGraphReader().getGraph(csv.toString()), 4);
+        } finally{
+            Files.deleteIfExists(csv);
+        }
+    }
+
+
+    /**
+     * Helper method which scans the network and checks every station's totals against closing it in an overlay
+     * @param graph the network
+     * @param threads the parallelism of the pool the scan runs on
+     */
+    private void compare(Graph graph, int threads){
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ClosureCriticality.Criticality> ranking;
+        try{
+            ranking = new ClosureCriticality(graph).run(pool);
+        } finally{
+            pool.shutdown();
+        }
+        Map<String, ClosureCriticality.Criticality> byStation = new HashMap<>();
+        for(ClosureCriticality.Criticality c : ranking) byStation.put(c.station, c);
+
+        CompactGraph before = new CompactGraph(graph);
+        OneToAllSearch base = new OneToAllSearch(before);
+        float[][] baseTimes = new float[before.getStationCount()][];
+        for(int source = 0; source < before.getStationCount(); source++){
+            base.run(source);
+            baseTimes[source] = new float[before.getStationCount()];
+            for(int target = 0; target < before.getStationCount(); target++) baseTimes[source][target] = base.getTime(target);
+        }
+
+        for(int closed = 0; closed < before.getStationCount(); closed++){
+            if(before.isClosed(closed)) continue;
+            NetworkOverlay overlay = new NetworkOverlay(graph);
+            overlay.addClosure(before.getStationName(closed));
+            OneToAllSearch search = new OneToAllSearch(new CompactGraph(graph, overlay));
+            long lost = 0;
+            double extra = 0;
+            for(int source = 0; source < before.getStationCount(); source++){
+                if(source == closed || before.isClosed(source)) continue;
+                search.run(source);
+                for(int target = 0; target < before.getStationCount(); target++){
+                    if(target == closed || target == source || baseTimes[source][target] == Float.POSITIVE_INFINITY) continue;
+                    float after = search.getTime(target);
+                    if(after == Float.POSITIVE_INFINITY) lost++;
+                    else extra += after - baseTimes[source][target];
+                }
+            }
+            ClosureCriticality.Criticality found = byStation.get(before.getStationName(closed));
+            assertEquals(lost, found.disconnected, "journeys without a route when closing " + found.station);
+            assertEquals(extra, found.extraTime, Math.max(1e-3, Math.abs(extra) * TOLERANCE), "extra minutes when closing " + found.station);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+
+/**
+ * Checks DeltaSteppingSearch finds bit for bit the same station and state times as OneToAllSearch,
+ * on the Metrolink network and on a generated one, each with a station closed, on one thread and on several,
+ * and that every parent edge it gives is on a shortest route
+ */
+public class DeltaSteppingSearchTest {
+
+    private static final int SOURCES = 25;
+    private static final int THREADS = 4;
+
+    private static CompactGraph metrolink;
+    private static CompactGraph generated;
+
+
+    /**
+     * Reads both networks and closes a station in each
+     * @throws IOException if a network can't be read or the generated one can't be written
+     */
+    @BeforeAll
+    public static void loadNetworks() throws IOException{
+        metrolink = withClosure(new LazyGraphReader().getGraph("../resources/Metrolink_times_linecolour.csv"), 1);
+        Path csv = Files.createTempFile("generated", ".csv");
+        try{
+            try(Writer out = Files.newBufferedWriter(csv)){
+                new NetworkGenerator(5000, 24, 42).write(out);
+            }
+            generated = withClosure(new LazyGraphReader().getGraph(csv.toString()), 2);
+        } finally{
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    /**
+     * Helper method which closes a random station and takes a snapshot of the network
+     * @param network the network
+     * @param seed picks the station
+     * @return the snapshot with the station closed
+     */
+    private static CompactGraph withClosure(Graph network, long seed){
+        Node closed = network.getHeaNode();
+        for(int i = new Random(seed).nextInt(network.getSize()); i > 0; i--) closed = closed.getNxtNode();
+        network.addClosure(closed.getID());
+        return new CompactGraph(network);
+    }
+
+
+    /**
+     * Compares the searches on the Metrolink network, with narrow buckets, buckets as wide as
+     * the average connection, and one bucket for every journey
+     * @param threads the parallelism of the pool
+     * @param delta the bucket width, 0 for the average connection
+     */
+    @ParameterizedTest
+    @CsvSource({"1, 0", "4, 0", "1, 0.25", "4, 0.25", "4, 1000"})
+    public void matchesOneToAllSearchOnMetrolink(int threads, float delta){
+        compare(metrolink, threads, delta);
+    }
+
+    /**
+     * Compares the searches on the generated network
+     * @param threads the parallelism of the pool
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, THREADS})
+    public void matchesOneToAllSearchOnGeneratedNetwork(int threads){
+        compare(generated, threads, 0);
+    }
+
+    /**
+     * Helper method which runs both searches from random sources, the closed station among them,
+     * and checks every time and parent
+     * @param graph the network
+     * @param threads the parallelism of the pool
+     * @param delta the bucket width, 0 for the average connection
+     */
+    private void compare(CompactGraph graph, int threads, float delta){
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            OneToAllSearch expected = new OneToAllSearch(graph);
+            DeltaSteppingSearch search = delta > 0 ? new DeltaSteppingSearch(graph, delta, pool) : new DeltaSteppingSearch(graph, pool);
+            Random random = new Random(threads);
+            for(int i = 0; i < SOURCES; i++){
+                int source = i == 0 ? closedStation(graph) : random.nextInt(graph.getStationCount());
+                expected.run(source);
+                search.run(source);
+                for(int station = 0; station < graph.getStationCount(); station++){
+                    assertEquals(Float.floatToRawIntBits(expected.getTime(station)), Float.floatToRawIntBits(search.getTime(station)),
+                            "time of station " + station + " from " + source);
+                }
+                for(int state = 0; state < graph.getStateCount(); state++){
+                    assertEquals(Float.floatToRawIntBits(expected.getStateTime(state)), Float.floatToRawIntBits(search.getStateTime(state)),
+                            "time of state " + state + " from " + source);
+                    if(search.getParentEdge(state) >= 0) assertTight(graph, search, state);
+                }
+            }
+        } finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Helper method which finds the closed station of a snapshot
+     * @param graph the network
+     * @return the index of the closed station
+     */
+    private static int closedStation(CompactGraph graph){
+        for(int station = 0; station < graph.getStationCount(); station++){
+            if(graph.isClosed(station)) return station;
+        }
+        throw new IllegalStateException("No station is closed");
+    }
+
+    /**
+     * Helper method which checks a state's parent edge arrives at it and, with its previous state, gives exactly its time
+     * @param graph the network
+     * @param search the search which reached the state
+     * @param state the index of the state
+     */
+    private static void assertTight(PackedNetwork graph, DeltaSteppingSearch search, int state){
+        int edge = search.getParentEdge(state);
+        int previous = search.getPreviousState(state);
+        assertEquals(state, graph.getArrivalState(edge), "parent edge of state " + state);
+        float time = graph.getTime(edge);
+        if(previous >= 0){
+            time += search.getStateTime(previous);
+            if(graph.getStateLine(previous) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+        }
+        assertEquals(Float.floatToRawIntBits(search.getStateTime(state)), Float.floatToRawIntBits(time), "parent of state " + state);
+    }
+
+
+    /**
+     * Checks bucket widths that can't make a ring are rejected
+     * @param delta the bucket width
+     */
+    @ParameterizedTest
+    @ValueSource(floats = {0, -1, Float.NaN, Float.POSITIVE_INFINITY})
+    public void rejectsInvalidBucketWidths(float delta){
+        assertThrows(IllegalArgumentException.class, () -> new DeltaSteppingSearch(metrolink, delta, ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Checks buckets too narrow for the ring are widened, and still give the same times
+     */
+    @Test
+    public void widensBucketsTooNarrowForTheRing(){
+        DeltaSteppingSearch search = new DeltaSteppingSearch(metrolink, 1e-6f, ForkJoinPool.commonPool());
+        assertTrue(search.getDelta() > 1e-6f);
+        compare(metrolink, 1, 1e-6f);
+    }
+
+}
@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Checks OverlayQuery finds bit for bit the same journey times as a OneToAllSearch on a fresh snapshot of the graph,
+ * after the overlay was built and after delays, closures and reopenings made through the graph,
+ * and that each update only customises again the cells it touched
+ */
+public class OverlayQueryTest {
+
+    private static final int SOURCES = 30;
+    private static final int THREADS = 4;
+
+
+    /**
+     * Compares the queries on the Metrolink network, split into small cells so most journeys cross several
+     * @throws IOException if the network can't be read
+     */
+    @Test
+    public void matchesFullSearchesOnMetrolink() throws IOException{
+        followUpdates(new LazyGraphReader().getGraph("../resources/Metrolink_times_linecolour.csv"), 10);
+    }
+
+    /**
+     * Compares the queries on a generated network, with the default cell size
+     * @throws IOException if the network can't be written or read
+     */
+    @Test
+    public void matchesFullSearchesOnGeneratedNetwork() throws IOException{
+        Path csv = Files.createTempFile("generated", ".csv");
+        try{
+            try(Writer out = Files.newBufferedWriter(csv)){
+                new NetworkGenerator(300, 8, 7).write(out);
+            }
+            Graph graph = new LazyGraphReader().getGraph(csv.toString());
+            followUpdates(graph, Math.max(8, (int) (2 * Math.sqrt(graph.getSize()))));
+        } finally{
+            Files.deleteIfExists(csv);
+        }
+    }
+
+
+    /**
+     * Helper method which builds an overlay of a graph, then updates the graph step by step,
+     * comparing the queries and counting the cells customised again after each step
+     * @param graph the network
+     * @param cellSize the most stations a cell may hold
+     */
+    private void followUpdates(Graph graph, int cellSize){
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try{
+            OverlayGraph overlay = new OverlayGraph(graph, cellSize, pool);
+            CompactGraph snapshot = overlay.getGraph();
+            CellPartition cells = overlay.getCells();
+            assertEquals(cells.getCellCount(), overlay.getCustomisations());
+            compare(overlay, graph);
+
+            // A connection between two cells, a connection inside a cell, and a station entered from another cell
+            int between = overlay.getExitEdge(0);
+            int inside = edgeInsideCell(snapshot, cells);
+            String entered = snapshot.getStationName(snapshot.getTarget(overlay.getExitEdge(overlay.getFirstExit(1))));
+
+            long before = overlay.getCustomisations();
+            BitSet dirty = new BitSet();
+            graph.addDelay(from(snapshot, between), to(snapshot, between), line(snapshot, between), 2.5f);
+            markConnection(overlay, dirty, between);
+            compare(overlay, graph);
+            assertEquals(before + dirty.cardinality(), overlay.getCustomisations(), "cells customised after a delay");
+
+            before = overlay.getCustomisations();
+            dirty.clear();
+            graph.addClosure(entered);
+            dirty.set(cells.getCell(overlay.findStation(entered)));
+            compare(overlay, graph);
+            assertEquals(before + dirty.cardinality(), overlay.getCustomisations(), "cells customised after a closure");
+
+            before = overlay.getCustomisations();
+            dirty.clear();
+            DisruptionBatch batch = new DisruptionBatch();
+            batch.addDelay(from(snapshot, inside), to(snapshot, inside), line(snapshot, inside), 1.5f);
+            batch.addReopening(entered);
+            graph.applyDisruptions(batch);
+            markConnection(overlay, dirty, inside);
+            dirty.set(cells.getCell(overlay.findStation(entered)));
+            compare(overlay, graph);
+            assertEquals(before + dirty.cardinality(), overlay.getCustomisations(), "cells customised after a batch");
+
+            before = overlay.getCustomisations();
+            dirty.clear();
+            graph.clearDelay(from(snapshot, between), to(snapshot, between), line(snapshot, between));
+            markConnection(overlay, dirty, between);
+            compare(overlay, graph);
+            assertEquals(before + dirty.cardinality(), overlay.getCustomisations(), "cells customised after a delay is cleared");
+            overlay.detach();
+        } finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Helper method which runs queries from random sources, a closed station among them if there is one,
+     * to every station, and checks each journey time against a full search on a fresh snapshot
+     * @param overlay the overlay following the graph
+     * @param graph the network
+     */
+    private void compare(OverlayGraph overlay, Graph graph){
+        CompactGraph fresh = new CompactGraph(graph);
+        OneToAllSearch expected = new OneToAllSearch(fresh);
+        OverlayQuery query = new OverlayQuery(overlay);
+        Random random = new Random(graph.getVersion());
+        for(int i = 0; i < SOURCES; i++){
+            int source = random.nextInt(fresh.getStationCount());
+            if(i == 0 && graph.getClosedStations().nextSetBit(0) >= 0) source = graph.getClosedStations().nextSetBit(0);
+            expected.run(source);
+            for(int target = 0; target < fresh.getStationCount(); target++){
+                query.findRoute(fresh.getStationName(source), fresh.getStationName(target));
+                float time = source == target && !fresh.isClosed(source) ? 0 : expected.getTime(target);
+                assertEquals(Float.floatToRawIntBits(time), Float.floatToRawIntBits(query.getJourneyTime()),
+                        "journey time from " + fresh.getStationName(source) + " to " + fresh.getStationName(target));
+            }
+        }
+    }
+
+    /**
+     * Helper method which marks the cells a delayed connection changes, the cell each of its directions leaves from
+     * @param overlay the overlay
+     * @param dirty the cells changed so far
+     * @param edge one direction of the connection in the snapshot
+     */
+    private static void markConnection(OverlayGraph overlay, BitSet dirty, int edge){
+        CompactGraph snapshot = overlay.getGraph();
+        dirty.set(overlay.getCells().getCell(snapshot.getTarget(edge)));
+        dirty.set(overlay.getCells().getCell(overlay.findStation(from(snapshot, edge))));
+    }
+
+    /**
+     * Helper method which finds an edge whose stations are in the same cell
+     * @param snapshot the snapshot of the network
+     * @param cells the cells of its stations
+     * @return the index of the first such edge
+     */
+    private static int edgeInsideCell(CompactGraph snapshot, CellPartition cells){
+        for(int station = 0; station < snapshot.getStationCount(); station++){
+            for(int edge = snapshot.getFirstEdge(station); edge < snapshot.getFirstEdge(station + 1); edge++){
+                if(cells.getCell(snapshot.getTarget(edge)) == cells.getCell(station)) return edge;
+            }
+        }
+        throw new IllegalStateException("No edge stays inside a cell");
+    }
+
+    /**
+     * Helper method which finds the name of the station an edge leaves from
+     * @param snapshot the snapshot of the network
+     * @param edge the index of the edge
+     * @return the name of the station
+     */
+    private static String from(CompactGraph snapshot, int edge){
+        for(int station = 0; station < snapshot.getStationCount(); station++){
+            if(edge < snapshot.getFirstEdge(station + 1)) return snapshot.getStationName(station);
+        }
+        throw new IllegalStateException("Edge " + edge + " is not in the snapshot");
+    }
+
+    /**
+     * Helper method which finds the name of the station an edge arrives at
+     * @param snapshot the snapshot of the network
+     * @param edge the index of the edge
+     * @return the name of the station
+     */
+    private static String to(CompactGraph snapshot, int edge){
+        return snapshot.getStationName(snapshot.getTarget(edge));
+    }
+
+    /**
+     * Helper method which finds the name of the line of an edge
+     * @param snapshot the snapshot of the network
+     * @param edge the index of the edge
+     * @return the name of the line
+     */
+    private static String line(CompactGraph snapshot, int edge){
+        return snapshot.getLineName(snapshot.getLine(edge));
+    }
+
+}
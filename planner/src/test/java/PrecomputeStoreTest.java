@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Checks PrecomputeStore only gives back entries which are whole and made for the graph,
+ * and builds the others again
+ */
+public class PrecomputeStoreTest {
+
+    private static final String METROLINK = "../resources/Metrolink_times_linecolour.csv";
+
+    @TempDir
+    Path folder;
+
+
+    /**
+     * Checks a saved line transfer index is restored, and gives the same changes as one built from the graph
+     * @throws IOException if the store can't be written
+     */
+    @Test
+    public void restoresASavedIndex() throws IOException{
+        PrecomputeStore store = new PrecomputeStore(METROLINK, folder.toString());
+        store.restore(new LazyGraphReader().getGraph(METROLINK));
+        assertNotNull(store.load("line-transfers", LineTransferIndex.STORE_VERSION));
+
+        Graph graph = new LazyGraphReader().getGraph(METROLINK);
+        store.restore(graph);
+        LineTransferIndex built = new LineTransferIndex(new LazyGraphReader().getGraph(METROLINK));
+        assertArrayEquals(built.changesToStation("Bury"), graph.getLineTransferIndex().changesToStation("Bury"));
+    }
+
+    /**
+     * Checks an entry with a damaged byte in its data isn't loaded, and that restoring builds and saves it again
+     * @throws IOException if the store can't be written or read
+     */
+    @Test
+    public void rebuildsADamagedEntry() throws IOException{
+        PrecomputeStore store = new PrecomputeStore(METROLINK, folder.toString());
+        store.restore(new LazyGraphReader().getGraph(METROLINK));
+        Path entry = folder.resolve("line-transfers.bin");
+        byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(entry, bytes);
+        assertNull(store.load("line-transfers", LineTransferIndex.STORE_VERSION));
+
+        Graph graph = new LazyGraphReader().getGraph(METROLINK);
+        store.restore(graph);
+        assertNotNull(store.load("line-transfers", LineTransferIndex.STORE_VERSION));
+        assertEquals(new LineTransferIndex(graph).getLineCount(), graph.getLineTransferIndex().getLineCount());
+    }
+
+    /**
+     * Checks a graph refuses a line transfer index built from other edges, and decoding rejects data which can't be an index
+     * @throws IOException if a network can't be written or read
+     */
+    @Test
+    public void rejectsAnIndexOfOtherEdges() throws IOException{
+        Path csv = folder.resolve("generated.csv");
+        try(Writer out = Files.newBufferedWriter(csv)){
+            new NetworkGenerator(200, 6, 3).write(out);
+        }
+        LineTransferIndex other = new LineTransferIndex(new LazyGraphReader().getGraph(csv.toString()));
+        Graph graph = new LazyGraphReader().getGraph(METROLINK);
+        assertThrows(IllegalArgumentException.class, () -> graph.setLineTransferIndex(other));
+
+        ByteBuffer data = new LineTransferIndex(graph).toBuffer();
+        data.putInt(0, -5);
+        assertThrows(IllegalArgumentException.class, () -> new LineTransferIndex(data));
+    }
+
+}
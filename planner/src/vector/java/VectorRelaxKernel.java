@@ -0,0 +1,73 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * The RelaxKernel written with the Java Vector API, which works out the new times of as many edges at once as the CPU
+ * has float lanes. The times and lines of the edges are loaded straight from the packed arrays and the change time is
+ * added under a mask of the edges on other lines. The new times are then checked against the arrival states one at a
+ * time, since a gather of the state times through the edge states measured several times slower than the scalar loop.
+ * The edges left over after the last full vector are relaxed by the scalar loop.
+ * It is kept out of the src folder since it needs --add-modules jdk.incubator.vector to compile and to run;
+ * Maven compiles it into the planner jar, and RelaxKernel.create only loads it when the module is present
+ */
+public class VectorRelaxKernel extends RelaxKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape()); // as many lanes as FLOATS
+
+
+    /**
+     * Finds the edges of a range which improve the time of their arrival state, a vector of edges at a time
+     * @param edgeTime the travel time of each edge
+     * @param edgeLine the line of each edge
+     * @param edgeState the state each edge arrives in
+     * @param stateTime the current time of each state
+     * @param first the first edge of the range
+     * @param last the end of the range
+     * @param line the line the station was reached on, -1 at the source where no change is counted
+     * @param time the time the station was reached at
+     * @param improved filled with the edges which improve their state, in order
+     * @param improvedTime filled with the time each of those edges gives, at least as long as the range
+     * @return the number of improving edges
+     */
+    @Override
+    public int relax(float[] edgeTime, int[] edgeLine, int[] edgeState, float[] stateTime, int first, int last,
+                     int line, float time, int[] improved, float[] improvedTime){
+        int count = 0;
+        int edge = first;
+        int upper = first + FLOATS.loopBound(last - first);
+        FloatVector reached = FloatVector.broadcast(FLOATS, time);
+        // At the source no edge counts as a change, which an empty change time gives without a separate loop
+        FloatVector change = FloatVector.broadcast(FLOATS, line >= 0 ? OneToAllSearch.CHANGE_TIME : 0f);
+        // The new times go into improvedTime first, relative to first, as it is as long as the biggest range
+        for(; edge < upper; edge += FLOATS.length()){
+            FloatVector newTime = FloatVector.fromArray(FLOATS, edgeTime, edge).add(reached);
+            VectorMask<Float> otherLine = IntVector.fromArray(INTS, edgeLine, edge).compare(VectorOperators.NE, line).cast(FLOATS);
+            newTime.add(change, otherLine).intoArray(improvedTime, edge - first);
+        }
+        // Then the improving edges are packed to the front, which never overtakes the time being read
+        for(int offset = 0; offset < upper - first; offset++){
+            float newTime = improvedTime[offset];
+            if(newTime < stateTime[edgeState[first + offset]]){
+                improved[count] = first + offset;
+                improvedTime[count++] = newTime;
+            }
+        }
+        return relaxScalar(edgeTime, edgeLine, edgeState, stateTime, edge, last, line, time, improved, improvedTime, count);
+    }
+
+
+    /**
+     * getter for the name of the kernel, for reports and benchmarks
+     * @return "vector"
+     */
+    @Override
+    public String getName(){
+        return "vector";
+    }
+
+}
@@ -0,0 +1,123 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+
+/**
+ * Plans journeys without the GUI, for batch workers which start, answer some queries and exit.
+ * The network is read with LazyGraphReader, so only the stations a query visits get their edges built,
+ * and no Swing class is loaded by the shortest route queries.
+ * Each line of the standard input is one query, "From,To", and each answer is printed as "From,To,minutes"
+ * (or "From,To,minutes,changes" with --changes), with "none" when there is no route.
+ * With --train it runs a fixed set of queries instead, which is the training run for a class data sharing archive
+ */
+public class HeadlessPlanner {
+
+    private static final int TRAINING_STATIONS = 20; // stations whose every pair is planned by the training run
+
+    /**
+     * Answers the queries on the standard input, or runs the training queries
+     * @param args the network CSV file, then optionally --changes and --train
+     * @throws IOException if the network file or the queries can't be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java HeadlessPlanner <network.csv> [--changes] [--train] < queries.csv");
+            return;
+        }
+        boolean changes = false;
+        boolean train = false;
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("--changes")) changes = true;
+            else if(args[i].equals("--train")) train = true;
+        }
+
+        long start = System.nanoTime();
+        Graph graph = new LazyGraphReader().getGraph(args[0]);
+        if(train){
+            train(graph);
+            System.out.println("Training run finished in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return;
+        }
+
+        BufferedReader queries = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while((line = queries.readLine()) != null){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            String[] stations = line.split(",");
+            if(stations.length != 2){
+                System.err.println("Skipping \"" + line + "\", a query is From,To");
+                continue;
+            }
+            System.out.println(plan(graph, stations[0].trim(), stations[1].trim(), changes));
+        }
+    }
+
+
+    /**
+     * Helper method which plans one journey
+     * @param graph the network
+     * @param from the name of the start station
+     * @param to the name of the destination
+     * @param changes true to find the fewest changes, false for the shortest time
+     * @return the answer line
+     */
+    static String plan(Graph graph, String from, String to, boolean changes){
+        RequestTrace trace = RequestTrace.begin(changes ? "fewestChanges" : "shortest", graph, from, to);
+        try{
+            return answer(graph, from, to, changes, trace);
+        } finally{
+            if(trace != null) trace.end();
+        }
+    }
+
+    /**
+     * Helper method which plans one journey, timing its phases
+     * @param graph the network
+     * @param from the name of the start station
+     * @param to the name of the destination
+     * @param changes true to find the fewest changes, false for the shortest time
+     * @param trace the trace of the request, null if it isn't traced
+     * @return the answer line
+     */
+    private static String answer(Graph graph, String from, String to, boolean changes, RequestTrace trace){
+        if(trace != null) trace.phase(RequestTrace.Phase.LOOKUP);
+        if(graph.findNode(from) == null || graph.findNode(to) == null) return from + "," + to + ",unknown station";
+        if(changes){
+            FewestChangesRoute route = new FewestChangesRoute();
+            route.findRoute(graph, from, to);
+            if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
+            if(route.getJourneyTime() == Float.POSITIVE_INFINITY) return from + "," + to + ",none";
+            return from + "," + to + "," + route.getJourneyTime() + "," + route.getChanges();
+        }
+        ShortestRoute route = new ShortestRoute();
+        route.findRoute(graph, from, to);
+        if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
+        if(route.getJourneyTime() == Float.POSITIVE_INFINITY) return from + "," + to + ",none";
+        return from + "," + to + "," + route.getJourneyTime();
+    }
+
+
+    /**
+     * Helper method which plans every pair of the first stations of the network with both routers,
+     * so every class a batch worker uses is loaded and can be put in the archive
+     * @param graph the network
+     */
+    private static void train(Graph graph){
+        int count = Math.min(TRAINING_STATIONS, graph.getSize());
+        String[] stations = new String[count];
+        for(Node node = graph.getHeaNode(); node != null; node = node.getNxtNode()){
+            if(node.getIndex() < count) stations[node.getIndex()] = node.getID();
+        }
+        int routes = 0;
+        for(String from : stations){
+            for(String to : stations){
+                if(!plan(graph, from, to, false).endsWith(",none")) routes++;
+                plan(graph, from, to, true);
+            }
+        }
+        System.out.println(routes + " of " + count * count + " training queries have a route");
+    }
+
+}
@@ -0,0 +1,292 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * A read only snapshot of a graph packed into arrays, for searches which visit the whole network many times.
+ * Stations are numbered by their index in the graph and the edges leaving each station are stored together,
+ * in the same order as in the graph. Every (station, line) pair served by an edge is a state, which is what
+ * the searches settle, and each edge knows the state it arrives in.
+ * Edge times and closures are taken from an overlay when the snapshot is made, so later changes to the graph
+ * are not seen. The graph is held while it is packed, so a batch of disruptions is either all in the snapshot or not at all
+ */
+public class CompactGraph implements PackedNetwork {
+
+    private String[] stationNames; // The name of each station by index
+    private String[] lineNames; // The name of each line by id, the ids of the LineTransferIndex
+    private boolean[] closed; // Whether each station is closed
+    private int[] firstEdge; // The edges leaving station s are firstEdge[s] up to firstEdge[s + 1]
+    private int[] edgeTarget; // The station each edge ends at
+    private int[] edgeLine; // The line of each edge
+    private float[] edgeTime; // The travel time of each edge
+    private int[] edgeState; // The state each edge arrives in
+    private int[] edgeId; // The id of the Edge in the graph each edge was packed from
+    private int[] firstState; // The states of station s are firstState[s] up to firstState[s + 1]
+    private int[] stateStation; // The station of each state
+    private int[] stateLine; // The line of each state
+
+
+    /**
+     * Creates a snapshot of the graph with its current delays and closures
+     * @param graph the graph to pack
+     */
+    public CompactGraph(Graph graph){
+        // The closures are taken under the same lock as the times, so both come from the same version
+        synchronized(graph){
+            pack(graph, new NetworkOverlay(graph));
+        }
+    }
+
+    /**
+     * Creates a snapshot of the graph with the delays and closures of an overlay
+     * @param graph the graph to pack
+     * @param overlay the delays and closures to use, which must be for the same graph
+     */
+    public CompactGraph(Graph graph, NetworkOverlay overlay){
+        if(overlay.getGraph() != graph) throw new IllegalArgumentException("The overlay is for a different graph");
+        synchronized(graph){
+            pack(graph, overlay);
+        }
+    }
+
+    /**
+     * Helper method which packs the stations and edges of the graph into the arrays, called while holding the graph
+     * @param graph the graph to pack
+     * @param overlay the delays and closures to use
+     */
+    private void pack(Graph graph, NetworkOverlay overlay){
+        LineTransferIndex transfers = graph.getLineTransferIndex();
+        int stations = graph.getSize();
+        stationNames = new String[stations];
+        closed = new boolean[stations];
+        lineNames = new String[transfers.getLineCount()];
+        Node[] nodes = new Node[stations];
+        int edges = 0;
+        for(Node node = graph.getHeaNode(); node != null; node = node.getNxtNode()){
+            // Nodes with a duplicate name are not in the station index, so they are skipped
+            if(graph.findNode(node.getID()) != node) continue;
+            nodes[node.getIndex()] = node;
+            edges += node.getEdges().size();
+        }
+
+        // Pack the edges of each station and find the lines serving it
+        firstEdge = new int[stations + 1];
+        edgeTarget = new int[edges];
+        edgeLine = new int[edges];
+        edgeTime = new float[edges];
+        edgeId = new int[edges];
+        firstState = new int[stations + 1];
+        ArrayList<Integer> lines = new ArrayList<>();
+        int[] servedLines = new int[Math.max(1, edges)];
+        int states = 0;
+        int e = 0;
+        for(int s = 0; s < stations; s++){
+            Node node = nodes[s];
+            stationNames[s] = node.getID();
+            closed[s] = overlay.isClosed(node);
+            firstEdge[s] = e;
+            firstState[s] = states;
+            for(Edge edge : node.getEdges()){
+                int line = transfers.getLineId(edge.getLine());
+                lineNames[line] = edge.getLine();
+                edgeTarget[e] = edge.getEndNode().getIndex();
+                edgeLine[e] = line;
+                edgeTime[e] = overlay.getTime(edge);
+                edgeId[e] = edge.getId();
+                e++;
+                if(!lines.contains(line)) lines.add(line);
+            }
+            for(int line : lines) servedLines[states++] = line;
+            lines.clear();
+        }
+        firstEdge[stations] = e;
+        firstState[stations] = states;
+
+        stateLine = Arrays.copyOf(servedLines, states);
+        stateStation = new int[states];
+        for(int s = 0; s < stations; s++){
+            Arrays.fill(stateStation, firstState[s], firstState[s + 1], s);
+        }
+
+        // Both directions of a connection share its line, so every edge arrives in a state of its end station
+        edgeState = new int[edges];
+        for(e = 0; e < edges; e++){
+            edgeState[e] = findState(edgeTarget[e], edgeLine[e]);
+        }
+    }
+
+
+    /**
+     * Finds the state of a station on a line
+     * @param station the index of the station
+     * @param line the id of the line
+     * @return the index of the state, -1 if the line doesn't serve the station
+     */
+    public int findState(int station, int line){
+        for(int state = firstState[station]; state < firstState[station + 1]; state++){
+            if(stateLine[state] == line) return state;
+        }
+        return -1;
+    }
+
+
+    /**
+     * getter for the number of stations
+     * @return the number of stations in the snapshot
+     */
+    public int getStationCount(){
+        return stationNames.length;
+    }
+
+    /**
+     * getter for the number of edges, counting each direction of a connection
+     * @return the number of edges in the snapshot
+     */
+    public int getEdgeCount(){
+        return edgeTarget.length;
+    }
+
+    /**
+     * getter for the number of (station, line) states
+     * @return the number of states in the snapshot
+     */
+    public int getStateCount(){
+        return stateLine.length;
+    }
+
+    /**
+     * getter for the name of a station
+     * @param station the index of the station
+     * @return the name of the station
+     */
+    public String getStationName(int station){
+        return stationNames[station];
+    }
+
+    /**
+     * getter for the name of a line
+     * @param line the id of the line
+     * @return the name of the line
+     */
+    public String getLineName(int line){
+        return lineNames[line];
+    }
+
+    /**
+     * Checks if a station is closed in the snapshot
+     * @param station the index of the station
+     * @return true if the station is closed
+     */
+    public boolean isClosed(int station){
+        return closed[station];
+    }
+
+    /**
+     * getter for the first edge leaving a station
+     * @param station the index of the station
+     * @return the index of the first edge, the edges of the station run up to getFirstEdge(station + 1)
+     */
+    public int getFirstEdge(int station){
+        return firstEdge[station];
+    }
+
+    /**
+     * getter for the station an edge ends at
+     * @param edge the index of the edge
+     * @return the index of the end station
+     */
+    public int getTarget(int edge){
+        return edgeTarget[edge];
+    }
+
+    /**
+     * getter for the line of an edge
+     * @param edge the index of the edge
+     * @return the id of the line
+     */
+    public int getLine(int edge){
+        return edgeLine[edge];
+    }
+
+    /**
+     * getter for the travel time of an edge
+     * @param edge the index of the edge
+     * @return the time in minutes, including the delays of the overlay
+     */
+    public float getTime(int edge){
+        return edgeTime[edge];
+    }
+
+    /**
+     * getter for the id of the Edge an edge was packed from
+     * @param edge the index of the edge
+     * @return the id the graph gave the Edge
+     */
+    public int getEdgeId(int edge){
+        return edgeId[edge];
+    }
+
+    /**
+     * getter for the state an edge arrives in
+     * @param edge the index of the edge
+     * @return the index of the (end station, line) state
+     */
+    public int getArrivalState(int edge){
+        return edgeState[edge];
+    }
+
+    /**
+     * getter for the travel times of all the edges, for kernels which read many edges at once.
+     * This is the array itself, which must not be changed
+     * @return the time of each edge
+     */
+    public float[] getEdgeTimes(){
+        return edgeTime;
+    }
+
+    /**
+     * getter for the lines of all the edges, for kernels which read many edges at once.
+     * This is the array itself, which must not be changed
+     * @return the line id of each edge
+     */
+    public int[] getEdgeLines(){
+        return edgeLine;
+    }
+
+    /**
+     * getter for the arrival states of all the edges, for kernels which read many edges at once.
+     * This is the array itself, which must not be changed
+     * @return the state each edge arrives in
+     */
+    public int[] getArrivalStates(){
+        return edgeState;
+    }
+
+    /**
+     * getter for the first state of a station
+     * @param station the index of the station
+     * @return the index of the first state, the states of the station run up to getFirstState(station + 1)
+     */
+    public int getFirstState(int station){
+        return firstState[station];
+    }
+
+    /**
+     * getter for the station of a state
+     * @param state the index of the state
+     * @return the index of the station
+     */
+    public int getStateStation(int state){
+        return stateStation[state];
+    }
+
+    /**
+     * getter for the line of a state
+     * @param state the index of the state
+     * @return the id of the line
+     */
+    public int getStateLine(int state){
+        return stateLine[state];
+    }
+
+}
@@ -0,0 +1,112 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Collects delay, closure and reopening events so they can be applied to a graph as one update.
+ * Events are coalesced as they are added: delays on the same connection are summed,
+ * and only the last closure or reopening of each station is kept
+ */
+public class DisruptionBatch {
+
+    private LinkedHashMap<String, Delay> delays = new LinkedHashMap<>(); // Maps each connection to its total delay
+    private LinkedHashMap<String, Boolean> stationStatus = new LinkedHashMap<>(); // Maps each station to whether it ends up open
+    private int events; // the number of events added, before coalescing
+
+
+    /**
+     * Adds a delay to the connection between two stations on a line
+     * @param from the name of the first station
+     * @param to the name of the second station
+     * @param line the line connecting the stations
+     * @param delay the delay time in minutes
+     */
+    public void addDelay(String from, String to, String line, float delay){
+        // Delays apply in both directions, so both directions share a key
+        String key = from.compareTo(to) <= 0 ? makeKey(from, to, line) : makeKey(to, from, line);
+        Delay total = delays.computeIfAbsent(key, k -> new Delay(from, to, line));
+        total.minutes += delay;
+        events++;
+    }
+
+    /**
+     * Closes a station
+     * @param station the name of the station
+     */
+    public void addClosure(String station){
+        stationStatus.put(station, false);
+        events++;
+    }
+
+    /**
+     * Reopens a station
+     * @param station the name of the station
+     */
+    public void addReopening(String station){
+        stationStatus.put(station, true);
+        events++;
+    }
+
+
+    /**
+     * Helper method which creates the key of a connection
+     * @param from the name of the first station
+     * @param to the name of the second station
+     * @param line the line connecting the stations
+     * @return the combined key as "from::to::line"
+     */
+    private String makeKey(String from, String to, String line){
+        return from + "::" + to + "::" + line;
+    }
+
+
+    /**
+     * getter for the coalesced delays
+     * @return the delays, one per connection
+     */
+    public Iterable<Delay> getDelays(){
+        return delays.values();
+    }
+
+    /**
+     * getter for the coalesced station changes
+     * @return a map from each station to true if it is reopened, false if it is closed
+     */
+    public Map<String, Boolean> getStationStatus(){
+        return stationStatus;
+    }
+
+    /**
+     * getter for the number of events in the batch
+     * @return the number of events added, before coalescing
+     */
+    public int getEventCount(){
+        return events;
+    }
+
+    /**
+     * Checks if the batch has any events
+     * @return true if no events were added
+     */
+    public boolean isEmpty(){
+        return events == 0;
+    }
+
+
+    /**
+     * The total delay of one connection
+     */
+    public static class Delay {
+        String from;
+        String to;
+        String line;
+        float minutes;
+
+        public Delay(String from, String to, String line){
+            this.from = from;
+            this.to = to;
+            this.line = line;
+        }
+    }
+
+}
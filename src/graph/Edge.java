@@ -6,6 +6,8 @@ public class Edge {
     private Node edgeEnd;
     private String lineColour;
     private float time;
+    private float baseTime; // the time read from the CSV, before any delays
+    private int id; // position of the edge in the graph, used to index arrays and maps of edges
 
     /**
     * Creates an instance of Edge
@@ -17,6 +19,7 @@ public class Edge {
         this.edgeEnd = edgeEnd;
         this.lineColour = line;
         this.time = time;
+        this.baseTime = time;
     }
 
     /**
@@ -43,6 +46,38 @@ public class Edge {
         return this.time;
     }
 
+    /**
+     * getter for the weight of the edge before any delays
+     * @return a float value of the time the edge was created with
+     */
+    public float getBaseTime(){
+        return this.baseTime;
+    }
+
+    /**
+     * getter for the delay on the edge
+     * @return the difference between the current and the base time
+     */
+    public float getDelay(){
+        return this.time - this.baseTime;
+    }
+
+    /**
+     * getter for the id of the edge in its graph
+     * @return an integer which is different for every edge of the graph, including the two directions of a connection
+     */
+    public int getId(){
+        return this.id;
+    }
+
+    /**
+     * setter for the id of the edge
+     * @param id the new id, given by the graph when the edge is added
+     */
+    public void setId(int id){
+        this.id = id;
+    }
+
     /**
      * setter for the edge end
      * @param newEnd Node object which is the new end of the edge
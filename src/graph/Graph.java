@@ -1,11 +1,27 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents the metroLink with nodes for stations and edges for connections
  */
 public class Graph {
     
+    private static final float EPSILON = 1e-4f; // a time this close to the base time is rounding left by adding and removing delays
+
     private Node headNode;
+    private HashMap<String, Node> stations = new HashMap<>(); // Maps each station name to its node
+    // Maps (from :: to :: line) to the edge leaving from. Stations load their edges into it lazily while other threads look edges up
+    private Map<String, Edge> edgeIndex = new ConcurrentHashMap<>();
+    private int edgeIds; // the id the next edge will get
+    private StationMatcher matcher = new StationMatcher(); // Index of the station names for resolving typos
+    private volatile LineTransferIndex lineTransfers; // Line level summary of the network, built under the lock when first needed
+    private PendingAdjacency pendingEdges; // Connections whose edges are created when their station is first touched, null if none
+    private volatile long version; // increased by every update to the delays and closures, under the lock, and read by query threads without it
+    private LinkedHashMap<String, Edge> delayedEdges = new LinkedHashMap<>(); // Maps (from :: to :: line) to each delayed connection
+    private LinkedHashSet<String> closedStations = new LinkedHashSet<>(); // The names of the closed stations
+    private BitSet closedBits = new BitSet(); // The indexes of the closed stations
+    private List<NetworkListener> listeners = new CopyOnWriteArrayList<>(); // Told about every update
     
     /**
     * Finds the node which its key(name) was passed and return it
@@ -14,12 +30,48 @@ public class Graph {
     * @return node object if it is found, null otherwise
     */
     public Node findNode(String label){
-       Node node = headNode;
-       while(node != null){
-           if(node.getID().equals(label))return node;
-           node = node.getNxtNode();
-       }
-       return null;
+       return stations.get(label);
+    }
+
+
+    /**
+     * Finds the edge leaving a station towards another on the given line
+     * @param from the name of the station the edge leaves
+     * @param to the name of the station the edge ends at
+     * @param line the line of the edge
+     * @return the edge if it is found, null otherwise
+     */
+    public Edge findEdge(String from, String to, String line){
+        // The edge is indexed when the edges of its first station are created
+        Node node = findNode(from);
+        if(node != null && node.isPending()) loadEdges(node);
+        return edgeIndex.get(makeKey(from, to, line));
+    }
+
+
+    /**
+     * Helper method which creates the key of an edge made up of its stations and line
+     * @param from the name of the station the edge leaves
+     * @param to the name of the station the edge ends at
+     * @param line the line of the edge
+     * @return the combined key as "from::to::line"
+     */
+    private String makeKey(String from, String to, String line){
+        return from + "::" + to + "::" + line;
+    }
+
+
+    /**
+     * Finds the node whose name is the closest to the label, so misspelt names still resolve to a station
+     * @param label the (possibly misspelt) name of the station
+     * @return node object of the closest station, null if no station is close enough
+     */
+    public Node findClosestNode(String label){
+        Node node = findNode(label);
+        if(node != null) return node;
+
+        String closest = matcher.findClosest(label);
+        return closest == null ? null : findNode(closest);
     }
 
 
@@ -30,20 +82,36 @@ public class Graph {
      * @param line the line connecting the stations
      * @param delay the delay time to be added to the weight
      */
-    public void addDelay(String l1, String l2, String line, float delay){
-        Node node1 = findNode(l1);
-        Node node2 = findNode(l2);
-
-        for(Edge e : node1.getEdges()){
-            if(e.getEndNode().getID().equals(l2) && e.getLine().equals(line))
-                e.addDelay(delay);
+    public synchronized void addDelay(String l1, String l2, String line, float delay){
+        Edge forward = findEdge(l1, l2, line);
+        Edge backward = findEdge(l2, l1, line);
+        if(forward == null || backward == null){
+            System.out.println("The connection is not found. Delay is not added");
+            return;
         }
 
-        for(Edge e : node2.getEdges()){
-            if(e.getEndNode().equals(node1) && e.getLine().equals(line))
-                e.addDelay(delay);
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        setTime(l1, l2, line, forward.getTime() + delay, changes);
+        publish(changes);
+    }
+
+
+    /**
+     * Removes any delay on the edge connecting the stations via the given line, restoring its time from the CSV
+     * @param l1 the name of the first station
+     * @param l2 the name of the second station
+     * @param line the line connecting the stations
+     */
+    public synchronized void clearDelay(String l1, String l2, String line){
+        Edge forward = findEdge(l1, l2, line);
+        if(forward == null || findEdge(l2, l1, line) == null){
+            System.out.println("The connection is not found. Delay is not cleared");
+            return;
         }
 
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        setTime(l1, l2, line, forward.getBaseTime(), changes);
+        publish(changes);
     }
 
 
@@ -51,13 +119,188 @@ public class Graph {
      * Sets the status of the given station as closed
      * @param stationName the name of the station to be closed
      */
-    public void addClosure(String stationName){
+    public synchronized void addClosure(String stationName){
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        setOpen(stationName, false, changes);
+        publish(changes);
+    }
+
+
+    /**
+     * Sets the status of the given station as open
+     * @param stationName the name of the station to be reopened
+     */
+    public synchronized void reopen(String stationName){
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        setOpen(stationName, true, changes);
+        publish(changes);
+    }
+
+
+    /**
+     * Removes every delay and reopens every station, returning the network to the times in the CSV
+     */
+    public synchronized void resetDisruptions(){
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        for(NetworkDelta delta : getDisruptions()){
+            if(delta.getType() == NetworkDelta.Type.DELAY){
+                setTime(delta.getStation(), delta.getOtherStation(), delta.getLine(), delta.getBaseTime(), changes);
+            }else{
+                setOpen(delta.getStation(), true, changes);
+            }
+        }
+        publish(changes);
+    }
+
+
+    /**
+     * Applies a batch of delays, closures and reopenings as one update.
+     * The batch is checked first, and nothing is changed if any of its stations or connections are not found
+     * @param batch the coalesced disruption events
+     * @return true if the batch was applied, false if it was rejected
+     */
+    public synchronized boolean applyDisruptions(DisruptionBatch batch){
+        for(DisruptionBatch.Delay delay : batch.getDelays()){
+            if(findEdge(delay.from, delay.to, delay.line) == null || findEdge(delay.to, delay.from, delay.line) == null){
+                System.out.println("The connection between " + delay.from + " and " + delay.to + " on the " + delay.line
+                        + " line is not found. The disruption batch is not applied");
+                return false;
+            }
+        }
+        for(String station : batch.getStationStatus().keySet()){
+            if(findNode(station) == null){
+                System.out.println("The station " + station + " is not found. The disruption batch is not applied");
+                return false;
+            }
+        }
+
+        ArrayList<NetworkDelta> changes = new ArrayList<>();
+        for(DisruptionBatch.Delay delay : batch.getDelays()){
+            float time = findEdge(delay.from, delay.to, delay.line).getTime();
+            setTime(delay.from, delay.to, delay.line, time + delay.minutes, changes);
+        }
+        for(Map.Entry<String, Boolean> station : batch.getStationStatus().entrySet()){
+            setOpen(station.getKey(), station.getValue(), changes);
+        }
+        publish(changes);
+        return true;
+    }
+
+
+    /**
+     * Finds how the network differs from the CSV: every delayed connection and every closed station
+     * @return a delta from the base network for each delayed connection and each closed station
+     */
+    public synchronized List<NetworkDelta> getDisruptions(){
+        ArrayList<NetworkDelta> disruptions = new ArrayList<>();
+        for(Map.Entry<String, Edge> delayed : delayedEdges.entrySet()){
+            String[] key = delayed.getKey().split("::");
+            Edge edge = delayed.getValue();
+            disruptions.add(new NetworkDelta(key[0], key[1], key[2], edge.getBaseTime(), edge.getBaseTime(), edge.getTime()));
+        }
+        for(String station : closedStations){
+            disruptions.add(new NetworkDelta(station, false));
+        }
+        return disruptions;
+    }
+
+
+    /**
+     * Helper method which sets the time of a connection in both directions and records the change
+     * @param l1 the name of the first station
+     * @param l2 the name of the second station
+     * @param line the line connecting the stations
+     * @param time the new time
+     * @param changes the list the change is recorded in
+     */
+    private void setTime(String l1, String l2, String line, float time, List<NetworkDelta> changes){
+        Edge forward = findEdge(l1, l2, line);
+        Edge backward = findEdge(l2, l1, line);
+        // A delay taken off again leaves rounding behind, which would keep the connection delayed
+        if(Math.abs(time - forward.getBaseTime()) < EPSILON) time = forward.getBaseTime();
+        float oldTime = forward.getTime();
+        if(oldTime == time) return;
+
+        forward.setTime(time);
+        backward.setTime(time);
+        // Keep one entry per connection, whichever direction it was named in
+        String key = makeKey(l1, l2, line);
+        String reverseKey = makeKey(l2, l1, line);
+        if(forward.getDelay() == 0){
+            delayedEdges.remove(key);
+            delayedEdges.remove(reverseKey);
+        }else if(!delayedEdges.containsKey(reverseKey)){
+            delayedEdges.put(key, forward);
+        }
+        changes.add(new NetworkDelta(l1, l2, line, forward.getBaseTime(), oldTime, time));
+    }
+
+    /**
+     * Helper method which opens or closes a station and records the change
+     * @param stationName the name of the station
+     * @param open true to open the station, false to close it
+     * @param changes the list the change is recorded in
+     */
+    private void setOpen(String stationName, boolean open, List<NetworkDelta> changes){
         Node station = findNode(stationName);
-        station.setOpen(false);
+        if(station.getOpen() == open) return;
+
+        station.setOpen(open);
+        closedBits.set(station.getIndex(), !open);
+        if(open) closedStations.remove(stationName);
+        else closedStations.add(stationName);
+        changes.add(new NetworkDelta(stationName, open));
     }
 
+    /**
+     * Helper method which finishes an update: if anything changed it moves the graph to a new version and tells the listeners
+     * @param changes the changes made by the update
+     */
+    private void publish(List<NetworkDelta> changes){
+        // Updates which changed nothing keep the version, so nothing is invalidated for them
+        if(changes.isEmpty()) return;
+        version++;
+        for(NetworkListener listener : listeners){
+            listener.networkChanged(this, changes, version);
+        }
+    }
 
 
+    /**
+     * Registers a listener to be told about every update to the delays and closures
+     * @param listener the listener to add
+     */
+    public void addListener(NetworkListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a registered listener
+     * @param listener the listener to remove
+     */
+    public void removeListener(NetworkListener listener){
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * getter for the closed stations, as a copy the caller can change freely,
+     * for example to try out closures without changing the graph
+     * @return a BitSet with the index of every closed station set
+     */
+    public synchronized BitSet getClosedStations(){
+        return (BitSet) closedBits.clone();
+    }
+
+
+    /**
+     * getter for the version of the network, which changes with every update to its delays and closures
+     * so that anything derived from them can tell when it is out of date
+     * @return the version number
+     */
+    public long getVersion(){
+        return this.version;
+    }
 
 
     /**
@@ -68,8 +311,11 @@ public class Graph {
     public void addNode(String label){
         if(findNode(label) == null){
             Node node = new Node(label);
+            node.setIndex(stations.size());
             node.setNextNode(headNode);
             headNode = node;
+            stations.put(label, node);
+            matcher.addStation(label);
         }
     }
 
@@ -85,8 +331,15 @@ public class Graph {
         Node node1 = findNode(l1);
         Node node2 = findNode(l2);
         if(node1 != null && node2 != null){
-            node1.getEdges().add(new Edge(node2, line, time));
-            node2.getEdges().add(new Edge(node1, line, time));
+            Edge forward = new Edge(node2, line, time);
+            Edge backward = new Edge(node1, line, time);
+            forward.setId(edgeIds++);
+            backward.setId(edgeIds++);
+            node1.getEdges().add(forward);
+            node2.getEdges().add(backward);
+            edgeIndex.put(makeKey(l1, l2, line), forward);
+            edgeIndex.put(makeKey(l2, l1, line), backward);
+            lineTransfers = null;
         }else{
             System.out.println("One of the stations or both are not found. Edge is not added");
         }
@@ -94,7 +347,8 @@ public class Graph {
 
 
     /**
-    * Removes edge from the graph
+    * Removes edge from the graph, in both directions.
+    * If the stations are linked by more than one line, only the first line found is removed
     * @param l1 the String key of the first node
     * @param l2 the String key of the second node
     */
@@ -104,15 +358,7 @@ public class Graph {
         if(node1 != null && node2 != null){
             for(Edge edge: node1.getEdges()){
                 if(edge.getEndNode().equals(node2)){
-                    node1.getEdges().remove(edge);
-                    break;
-                }
-                    
-            }
-            
-            for(Edge edge: node2.getEdges()){
-                if(edge.getEndNode().equals(node1)){
-                    node2.getEdges().remove(edge);
+                    removeEdge(l1, l2, edge.getLine());
                     break;
                 }
             }
@@ -120,18 +366,70 @@ public class Graph {
     }
 
 
+    /**
+    * Removes the edge linking two stations on the given line, in both directions
+    * @param l1 the String key of the first node
+    * @param l2 the String key of the second node
+    * @param line the line of the edge
+    */
+    public void removeEdge(String l1, String l2, String line){
+        findEdge(l1, l2, line);
+        findEdge(l2, l1, line);
+        Edge forward = edgeIndex.remove(makeKey(l1, l2, line));
+        Edge backward = edgeIndex.remove(makeKey(l2, l1, line));
+        if(forward != null) findNode(l1).getEdges().remove(forward);
+        if(backward != null) findNode(l2).getEdges().remove(backward);
+        lineTransfers = null;
+    }
+
+
+    /**
+     * Adds connections whose edges are only created when one of their stations is first touched,
+     * for short runs which only visit part of the network. The stations must already have been added,
+     * and the connections must be the first edges of the graph so they get the ids addEdge would have given them
+     * @param pending the connections, indexed by the station indexes of this graph
+     */
+    public synchronized void setPendingEdges(PendingAdjacency pending){
+        if(edgeIds != 0) throw new IllegalStateException("Pending edges must be added before any other edge");
+        this.pendingEdges = pending;
+        edgeIds = pending.getEdgeIdCount();
+        for(Node node = headNode; node != null; node = node.getNxtNode()){
+            if(findNode(node.getID()) == node) node.setPending(this);
+        }
+        lineTransfers = null;
+    }
+
+    /**
+     * Creates the pending edges of a station and indexes them, if it still has any
+     * @param node the station
+     */
+    synchronized void loadEdges(Node node){
+        if(!node.isPending()) return;
+        for(Edge edge : pendingEdges.createEdges(node)){
+            node.getLoadedEdges().add(edge);
+            edgeIndex.put(makeKey(node.getID(), edge.getEndNode().getID(), edge.getLine()), edge);
+        }
+        // Only show the edges once they are all added, since other threads may be reading the node
+        node.setPending(null);
+    }
+
+
     /**
      * Finds the number of Node in the graph 
      * @return an integer value of the number of nodes in the graph
      */
     public int getSize(){
-        int size = 0;
-        Node node = headNode;
-        while(node != null){
-            size++;
-            node = node.getNxtNode();
-        } 
-        return size;
+        return stations.size();
+    }
+
+
+    /**
+     * Finds the number of edge ids handed out, so arrays indexed by edge id can be sized.
+     * Ids of removed edges are not reused, so this can be more than the number of edges
+     * @return one more than the largest edge id
+     */
+    public int getEdgeIdCount(){
+        return edgeIds;
     }
 
 
@@ -148,6 +446,35 @@ public class Graph {
         }
     }
 
+    /**
+     * getter for the line transfer index of the graph, which is rebuilt after edges are added or removed
+     * @return the LineTransferIndex of the current edges
+     */
+    public LineTransferIndex getLineTransferIndex(){
+        LineTransferIndex index = lineTransfers;
+        if(index == null){
+            // Concurrent queries can ask at once, so only one builds it and the others wait for the finished index
+            synchronized(this){
+                if(lineTransfers == null){
+                    lineTransfers = new LineTransferIndex(this);
+                }
+                index = lineTransfers;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * setter for the line transfer index, such as one saved by a PrecomputeStore.
+     * It must have been built from the same edges, and it is dropped again once edges are added or removed
+     * @param index the LineTransferIndex of the current edges
+     * @throws IllegalArgumentException if the index doesn't have the lines of the graph's stations
+     */
+    public synchronized void setLineTransferIndex(LineTransferIndex index){
+        if(!index.matches(this)) throw new IllegalArgumentException("The line transfer index is for different edges");
+        this.lineTransfers = index;
+    }
+
     /**
      * getter for the head node of the graph
      * @return Node object of the head node of the graph
@@ -161,7 +488,44 @@ public class Graph {
      * @param newHead the node which will be the new head for the graph
      */
     public void setHeadNode(Node newHead){
+        // Pending edges are found by the old station indexes, so they are all created before reindexing
+        for(Node node = headNode; node != null; node = node.getNxtNode()){
+            node.getEdges();
+        }
+        pendingEdges = null;
         this.headNode = newHead;
+        reindex();
+    }
+
+
+    /**
+     * Helper method which rebuilds the station and edge indexes from the linked list of nodes
+     */
+    private void reindex(){
+        stations.clear();
+        edgeIndex.clear();
+        delayedEdges.clear();
+        closedStations.clear();
+        closedBits.clear();
+        edgeIds = 0;
+        for(Node node = headNode; node != null; node = node.getNxtNode()){
+            if(stations.putIfAbsent(node.getID(), node) != null) continue;
+            node.setIndex(stations.size() - 1);
+            matcher.addStation(node.getID());
+            if(!node.getOpen()){
+                closedStations.add(node.getID());
+                closedBits.set(node.getIndex());
+            }
+            for(Edge edge : node.getEdges()){
+                edge.setId(edgeIds++);
+                String key = makeKey(node.getID(), edge.getEndNode().getID(), edge.getLine());
+                edgeIndex.put(key, edge);
+                if(edge.getDelay() != 0 && !delayedEdges.containsKey(makeKey(edge.getEndNode().getID(), node.getID(), edge.getLine()))){
+                    delayedEdges.put(key, edge);
+                }
+            }
+        }
+        lineTransfers = null;
     }
 
 
@@ -172,11 +536,7 @@ public class Graph {
      * @return ture if they are adjecent and false otherwise
      */
     public boolean connectedViaLine(Node node1, Node node2, String lineColour){
-        for(Edge e : node1.getEdges()){
-            if(e.getEndNode().equals(node2) && e.getLine().equals(lineColour))
-                return true;
-        }
-        return false;
+        return findEdge(node1.getID(), node2.getID(), lineColour) != null;
     }
 
 
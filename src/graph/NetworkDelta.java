@@ -0,0 +1,114 @@
+/**
+ * Describes one change to the network: the time of a connection changing, or a station closing or reopening.
+ * Deltas are measured against the times read from the CSV, so anything built from the base network
+ * can apply them instead of rebuilding
+ */
+public class NetworkDelta {
+
+    /**
+     * The kinds of change
+     */
+    public enum Type { DELAY, CLOSURE, REOPENING }
+
+    private Type type;
+    private String from; // the first station of the connection, or the closed / reopened station
+    private String to; // the second station of the connection, null for station changes
+    private String line; // the line of the connection, null for station changes
+    private float baseTime; // the time of the connection in the CSV
+    private float oldTime; // the time of the connection before the change
+    private float newTime; // the time of the connection after the change
+
+    /**
+     * Creates a delta for a connection whose time changed, in both directions
+     * @param from the name of the first station
+     * @param to the name of the second station
+     * @param line the line connecting the stations
+     * @param baseTime the time of the connection in the CSV
+     * @param oldTime the time before the change
+     * @param newTime the time after the change
+     */
+    public NetworkDelta(String from, String to, String line, float baseTime, float oldTime, float newTime){
+        this.type = Type.DELAY;
+        this.from = from;
+        this.to = to;
+        this.line = line;
+        this.baseTime = baseTime;
+        this.oldTime = oldTime;
+        this.newTime = newTime;
+    }
+
+    /**
+     * Creates a delta for a station which closed or reopened
+     * @param station the name of the station
+     * @param open true if the station reopened, false if it closed
+     */
+    public NetworkDelta(String station, boolean open){
+        this.type = open ? Type.REOPENING : Type.CLOSURE;
+        this.from = station;
+    }
+
+    /**
+     * getter for the kind of change
+     * @return the Type of the delta
+     */
+    public Type getType(){
+        return this.type;
+    }
+
+    /**
+     * getter for the station of a closure or reopening, or the first station of a connection
+     * @return the name of the station
+     */
+    public String getStation(){
+        return this.from;
+    }
+
+    /**
+     * getter for the second station of a connection
+     * @return the name of the station, null for closures and reopenings
+     */
+    public String getOtherStation(){
+        return this.to;
+    }
+
+    /**
+     * getter for the line of a connection
+     * @return the name of the line, null for closures and reopenings
+     */
+    public String getLine(){
+        return this.line;
+    }
+
+    /**
+     * getter for the time of the connection in the CSV
+     * @return the base time in minutes
+     */
+    public float getBaseTime(){
+        return this.baseTime;
+    }
+
+    /**
+     * getter for the time of the connection before the change
+     * @return the old time in minutes
+     */
+    public float getOldTime(){
+        return this.oldTime;
+    }
+
+    /**
+     * getter for the time of the connection after the change
+     * @return the new time in minutes
+     */
+    public float getNewTime(){
+        return this.newTime;
+    }
+
+    @Override
+    public String toString(){
+        if(type == Type.DELAY){
+            return "[" + from + " to " + to + ", " + line + ", " + oldTime + " -> " + newTime + " min (base " + baseTime + ")]";
+        }
+        return "[" + from + " " + (type == Type.CLOSURE ? "closed" : "reopened") + "]";
+    }
+
+}
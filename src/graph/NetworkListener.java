@@ -0,0 +1,17 @@
+import java.util.List;
+
+/**
+ * Receives the changes made to a graph's delays and closures, so derived data such as route caches,
+ * distance tables or hierarchies can be updated in place
+ */
+public interface NetworkListener {
+
+    /**
+     * Called after each update to the graph, while the graph is still locked
+     * @param graph the graph which changed
+     * @param changes the changes made by the update, in the order they were applied
+     * @param version the version of the graph after the update
+     */
+    void networkChanged(Graph graph, List<NetworkDelta> changes, long version);
+
+}
@@ -0,0 +1,162 @@
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A what-if layer over a graph: extra delays on some connections and a set of closed stations for the route searches.
+ * Delays are kept sparsely by edge id and added to the current times of the graph, so the graph's own delays still count.
+ * Closures replace the closures of the graph: the overlay starts with a copy of them, and stations it reopens are open
+ * to the searches even though the graph has them closed.
+ * The graph is never changed, so many scenarios can be searched at once against one shared graph.
+ * An overlay should not be changed while a search is using it
+ */
+public class NetworkOverlay {
+
+    private Graph graph;
+    private HashMap<Integer, Float> delays = new HashMap<>(); // Maps the id of each delayed edge to its extra minutes
+    private BitSet closed; // The indexes of the closed stations
+
+
+    /**
+     * Creates an instance of NetworkOverlay which starts with the closures the graph has now
+     * @param graph the graph the overlay is for
+     */
+    public NetworkOverlay(Graph graph){
+        this(graph, graph.getClosedStations());
+    }
+
+    /**
+     * Creates an instance of NetworkOverlay with the given closures instead of the closures of the graph
+     * @param graph the graph the overlay is for
+     * @param closed the indexes of the closed stations, which the overlay takes over
+     */
+    public NetworkOverlay(Graph graph, BitSet closed){
+        this.graph = graph;
+        this.closed = closed;
+    }
+
+
+    /**
+     * Adds a delay to the connection between two stations on a line, in both directions
+     * @param l1 the name of the first station
+     * @param l2 the name of the second station
+     * @param line the line connecting the stations
+     * @param delay the delay time in minutes
+     * @return true if the delay was added, false if the connection is not found
+     */
+    public boolean addDelay(String l1, String l2, String line, float delay){
+        Edge forward = graph.findEdge(l1, l2, line);
+        Edge backward = graph.findEdge(l2, l1, line);
+        if(forward == null || backward == null){
+            System.out.println("The connection is not found. Delay is not added");
+            return false;
+        }
+        delays.merge(forward.getId(), delay, Float::sum);
+        delays.merge(backward.getId(), delay, Float::sum);
+        return true;
+    }
+
+    /**
+     * Closes a station in the overlay
+     * @param stationName the name of the station
+     * @return true if the station was closed, false if it is not found
+     */
+    public boolean addClosure(String stationName){
+        return setOpen(stationName, false);
+    }
+
+    /**
+     * Reopens a station in the overlay
+     * @param stationName the name of the station
+     * @return true if the station was reopened, false if it is not found
+     */
+    public boolean reopen(String stationName){
+        return setOpen(stationName, true);
+    }
+
+    /**
+     * Adds all the events of a disruption batch to the overlay.
+     * The batch is checked first, and nothing is changed if any of its stations or connections are not found
+     * @param batch the coalesced disruption events
+     * @return true if the batch was added, false if it was rejected
+     */
+    public boolean apply(DisruptionBatch batch){
+        for(DisruptionBatch.Delay delay : batch.getDelays()){
+            if(graph.findEdge(delay.from, delay.to, delay.line) == null || graph.findEdge(delay.to, delay.from, delay.line) == null){
+                System.out.println("The connection between " + delay.from + " and " + delay.to + " on the " + delay.line
+                        + " line is not found. The disruption batch is not added");
+                return false;
+            }
+        }
+        for(String station : batch.getStationStatus().keySet()){
+            if(graph.findNode(station) == null){
+                System.out.println("The station " + station + " is not found. The disruption batch is not added");
+                return false;
+            }
+        }
+
+        for(DisruptionBatch.Delay delay : batch.getDelays()){
+            addDelay(delay.from, delay.to, delay.line, delay.minutes);
+        }
+        for(Map.Entry<String, Boolean> station : batch.getStationStatus().entrySet()){
+            setOpen(station.getKey(), station.getValue());
+        }
+        return true;
+    }
+
+
+    /**
+     * Helper method which opens or closes a station in the overlay
+     * @param stationName the name of the station
+     * @param open true to open the station, false to close it
+     * @return true if the station was changed, false if it is not found
+     */
+    private boolean setOpen(String stationName, boolean open){
+        Node station = graph.findNode(stationName);
+        if(station == null){
+            System.out.println("The station " + stationName + " is not found");
+            return false;
+        }
+        closed.set(station.getIndex(), !open);
+        return true;
+    }
+
+
+    /**
+     * Finds the travel time of an edge with the delay of the overlay added
+     * @param edge an edge of the graph
+     * @return the time of the edge in the graph plus any delay the overlay adds to it
+     */
+    public float getTime(Edge edge){
+        if(delays.isEmpty()) return edge.getTime();
+        Float delay = delays.get(edge.getId());
+        return delay == null ? edge.getTime() : edge.getTime() + delay;
+    }
+
+    /**
+     * Checks if a station is closed in the overlay
+     * @param node a station of the graph
+     * @return true if the station is closed
+     */
+    public boolean isClosed(Node node){
+        return closed.get(node.getIndex());
+    }
+
+    /**
+     * getter for the graph the overlay is for
+     * @return the graph
+     */
+    public Graph getGraph(){
+        return this.graph;
+    }
+
+    /**
+     * getter for the number of delayed edges, counting each direction of a connection
+     * @return the number of edges with a delay in the overlay
+     */
+    public int getDelayCount(){
+        return delays.size();
+    }
+
+}
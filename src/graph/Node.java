@@ -10,6 +10,8 @@ public class Node {
     private LinkedHashSet<Edge> edges;
     private Node next;
     private boolean open;
+    private int index; // position of the station in the graph, used to index arrays and bitsets of stations
+    private volatile Graph pending; // the graph which still has to create the edges of the station, null once they exist
 
     /**
      * Creates an instance of Node
@@ -30,13 +32,31 @@ public class Node {
     }
 
     /**
-     * getter for the edges of the node
+     * getter for the edges of the node, which are created first if the graph was loaded lazily
      * @return LikedHashSet of the edges of the node
      */
     public LinkedHashSet<Edge> getEdges(){
+        Graph graph = this.pending;
+        if(graph != null) graph.loadEdges(this);
         return this.edges;
     }
 
+    /**
+     * getter for the edges of the node as they are, without creating any pending edges
+     * @return LikedHashSet of the edges created so far
+     */
+    LinkedHashSet<Edge> getLoadedEdges(){
+        return this.edges;
+    }
+
+    /**
+     * Checks if the edges of the node have still to be created
+     * @return true if the graph was loaded lazily and the edges haven't been asked for yet
+     */
+    public boolean isPending(){
+        return this.pending != null;
+    }
+
     /**
      * getter for the next node 
      * @return Node object of the next node 
@@ -50,6 +70,14 @@ public class Node {
         return this.open;
     }
 
+    /**
+     * getter for the index of the node in its graph
+     * @return an integer between 0 and the number of nodes in the graph
+     */
+    public int getIndex(){
+        return this.index;
+    }
+
     /**
      * setter for the next node
      * @param next the new Next node 
@@ -66,6 +94,22 @@ public class Node {
         this.id = newID;
     }
 
+    /**
+     * setter for the index of the node in its graph
+     * @param newIndex the new index of the node
+     */
+    public void setIndex(int newIndex){
+        this.index = newIndex;
+    }
+
+    /**
+     * setter for the graph which will create the edges of the node when they are first asked for
+     * @param graph the graph holding the pending edges, null once they have been created
+     */
+    void setPending(Graph graph){
+        this.pending = graph;
+    }
+
     /**
      * setter for the open status of the station
      * @param status a boolean value for the open attribute
@@ -0,0 +1,413 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * A network read straight from a CSV file into direct memory, for networks with millions of edges.
+ * It holds the same stations, lines, times and states as a CompactGraph, but no Node or Edge objects are made
+ * and every array, including the station names, lives in direct buffers outside the heap, so the heap stays small
+ * and the garbage collector has almost nothing to scan. It can be searched by anything reading a PackedNetwork.
+ * Stations are numbered in the order they first appear in the file, as Graph numbers them, and each station's edges
+ * are in file order. Every station is open and every time is the one in the file.
+ * The memory is given back when the OffHeapGraph is garbage collected
+ */
+public class OffHeapGraph implements PackedNetwork {
+
+    private int stations;
+    private int edges;
+    private int states;
+    private String[] lineNames; // The name of each line by id, in the order the lines first appear. There are few, so they stay on the heap
+    private IntBuffer firstEdge; // The edges leaving station s are firstEdge[s] up to firstEdge[s + 1]
+    private IntBuffer edgeTarget; // The station each edge ends at
+    private IntBuffer edgeLine; // The line of each edge
+    private FloatBuffer edgeTime; // The travel time of each edge
+    private IntBuffer edgeState; // The state each edge arrives in
+    private IntBuffer firstState; // The states of station s are firstState[s] up to firstState[s + 1]
+    private IntBuffer stateStation; // The station of each state
+    private IntBuffer stateLine; // The line of each state
+    private IntBuffer nameStart; // The UTF-8 name of station s is nameBytes[nameStart[s]] up to nameBytes[nameStart[s + 1]]
+    private ByteBuffer nameBytes;
+    private IntBuffer nameOrder; // The stations sorted by the bytes of their names, for finding a station by name
+
+
+    /**
+     * Reads a CSV file, in the same format as CSVReader, into direct memory
+     * @param filePath the path of the CSV file
+     * @throws IOException if the file can't be read
+     */
+    public OffHeapGraph(String filePath) throws IOException{
+        // The rows are kept in direct memory too while the file is read, and only the names are on the heap
+        HashMap<String, Integer> stationIds = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String, Integer> lineIds = new HashMap<>();
+        ArrayList<String> lines = new ArrayList<>();
+        IntBuffer rowFrom = allocateInts(1024);
+        IntBuffer rowTo = allocateInts(1024);
+        IntBuffer rowLine = allocateInts(1024);
+        FloatBuffer rowTime = allocateFloats(1024);
+        int rows = 0;
+
+        try(BufferedReader buffer = new BufferedReader(new FileReader(filePath))){
+            String line;
+            while((line = buffer.readLine()) != null){
+                if(line.startsWith("From")) continue;
+                int first = line.indexOf(',');
+                int second = line.indexOf(',', first + 1);
+                int third = line.indexOf(',', second + 1);
+                int fourth = line.indexOf(',', third + 1);
+                if(rows == rowFrom.capacity()){
+                    rowFrom = grow(rowFrom);
+                    rowTo = grow(rowTo);
+                    rowLine = grow(rowLine);
+                    rowTime = grow(rowTime);
+                }
+                // Add the first station before the second, so the numbering is the one Graph.addNode gives
+                rowFrom.put(rows, findId(stationIds, names, line.substring(0, first)));
+                rowTo.put(rows, findId(stationIds, names, line.substring(first + 1, second)));
+                rowLine.put(rows, findId(lineIds, lines, line.substring(second + 1, third)));
+                rowTime.put(rows, Float.parseFloat(fourth < 0 ? line.substring(third + 1) : line.substring(third + 1, fourth)));
+                rows++;
+            }
+        }
+
+        stations = names.size();
+        edges = 2 * rows;
+        lineNames = lines.toArray(new String[0]);
+        packEdges(rowFrom, rowTo, rowLine, rowTime, rows);
+        findStates();
+        packNames(names);
+    }
+
+
+    /**
+     * Helper method which finds the id of a name, giving it the next id if it is new
+     * @param ids the ids given so far
+     * @param names the names by id
+     * @param name the name
+     * @return the id of the name
+     */
+    private static int findId(HashMap<String, Integer> ids, ArrayList<String> names, String name){
+        Integer id = ids.get(name);
+        if(id == null){
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+
+    /**
+     * Helper method which groups the edges by the station they leave, both directions of every row,
+     * in the order Graph.addEdge would have added them
+     * @param rowFrom the first station of each row
+     * @param rowTo the second station of each row
+     * @param rowLine the line of each row
+     * @param rowTime the time of each row
+     * @param rows the number of rows
+     */
+    private void packEdges(IntBuffer rowFrom, IntBuffer rowTo, IntBuffer rowLine, FloatBuffer rowTime, int rows){
+        firstEdge = allocateInts(stations + 1);
+        for(int row = 0; row < rows; row++){
+            firstEdge.put(rowFrom.get(row) + 1, firstEdge.get(rowFrom.get(row) + 1) + 1);
+            firstEdge.put(rowTo.get(row) + 1, firstEdge.get(rowTo.get(row) + 1) + 1);
+        }
+        for(int s = 0; s < stations; s++){
+            firstEdge.put(s + 1, firstEdge.get(s + 1) + firstEdge.get(s));
+        }
+
+        edgeTarget = allocateInts(edges);
+        edgeLine = allocateInts(edges);
+        edgeTime = allocateFloats(edges);
+        IntBuffer next = allocateInts(stations);
+        for(int s = 0; s < stations; s++) next.put(s, firstEdge.get(s));
+        for(int row = 0; row < rows; row++){
+            int from = rowFrom.get(row);
+            int to = rowTo.get(row);
+            int forward = next.get(from);
+            next.put(from, forward + 1);
+            edgeTarget.put(forward, to);
+            edgeLine.put(forward, rowLine.get(row));
+            edgeTime.put(forward, rowTime.get(row));
+            int backward = next.get(to);
+            next.put(to, backward + 1);
+            edgeTarget.put(backward, from);
+            edgeLine.put(backward, rowLine.get(row));
+            edgeTime.put(backward, rowTime.get(row));
+        }
+    }
+
+
+    /**
+     * Helper method which makes a state for every line serving each station, in the order the lines first appear
+     * among its edges, and finds the state each edge arrives in
+     */
+    private void findStates(){
+        firstState = allocateInts(stations + 1);
+        int[] served = new int[8];
+        for(int pass = 0; pass < 2; pass++){
+            // The first pass counts the states, the second fills them in
+            int count = 0;
+            for(int s = 0; s < stations; s++){
+                firstState.put(s, count);
+                int lines = 0;
+                for(int e = firstEdge.get(s); e < firstEdge.get(s + 1); e++){
+                    int line = edgeLine.get(e);
+                    int i = 0;
+                    while(i < lines && served[i] != line) i++;
+                    if(i < lines) continue;
+                    if(lines == served.length) served = Arrays.copyOf(served, lines * 2);
+                    served[lines++] = line;
+                    if(pass == 1){
+                        stateStation.put(count, s);
+                        stateLine.put(count, line);
+                    }
+                    count++;
+                }
+            }
+            firstState.put(stations, count);
+            if(pass == 0){
+                states = count;
+                stateStation = allocateInts(states);
+                stateLine = allocateInts(states);
+            }
+        }
+
+        // Both directions of a connection share its line, so every edge arrives in a state of its end station
+        edgeState = allocateInts(edges);
+        for(int e = 0; e < edges; e++){
+            int target = edgeTarget.get(e);
+            int state = firstState.get(target);
+            while(stateLine.get(state) != edgeLine.get(e)) state++;
+            edgeState.put(e, state);
+        }
+    }
+
+
+    /**
+     * Helper method which copies the station names into direct memory as UTF-8, with their order for lookups
+     * @param names the name of each station
+     */
+    private void packNames(ArrayList<String> names){
+        byte[][] encoded = new byte[stations][];
+        nameStart = allocateInts(stations + 1);
+        int total = 0;
+        for(int s = 0; s < stations; s++){
+            encoded[s] = names.get(s).getBytes(StandardCharsets.UTF_8);
+            nameStart.put(s, total);
+            total += encoded[s].length;
+        }
+        nameStart.put(stations, total);
+        nameBytes = ByteBuffer.allocateDirect(Math.max(1, total));
+        for(int s = 0; s < stations; s++) nameBytes.put(nameStart.get(s), encoded[s]);
+
+        Integer[] order = new Integer[stations];
+        for(int s = 0; s < stations; s++) order[s] = s;
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+        nameOrder = allocateInts(stations);
+        for(int i = 0; i < stations; i++) nameOrder.put(i, order[i]);
+    }
+
+
+    /**
+     * Finds a station by its name
+     * @param name the name of the station
+     * @return the index of the station, -1 if there is no station with that name
+     */
+    public int findStation(String name){
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stations - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            int station = nameOrder.get(middle);
+            int compare = compareName(station, key);
+            if(compare < 0) low = middle + 1;
+            else if(compare > 0) high = middle - 1;
+            else return station;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Helper method which compares the name of a station with a name, byte by byte
+     * @param station the index of the station
+     * @param key the UTF-8 bytes of the other name
+     * @return a negative number, zero or a positive number as the station's name sorts before, the same as or after the key
+     */
+    private int compareName(int station, byte[] key){
+        int start = nameStart.get(station);
+        int length = nameStart.get(station + 1) - start;
+        for(int i = 0; i < Math.min(length, key.length); i++){
+            int compare = Byte.toUnsignedInt(nameBytes.get(start + i)) - Byte.toUnsignedInt(key[i]);
+            if(compare != 0) return compare;
+        }
+        return length - key.length;
+    }
+
+
+    /**
+     * Helper method which allocates an int array in direct memory
+     * @param length the number of ints
+     * @return the buffer, filled with 0
+     */
+    private static IntBuffer allocateInts(int length){
+        return ByteBuffer.allocateDirect(4 * Math.max(1, length)).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Helper method which allocates a float array in direct memory
+     * @param length the number of floats
+     * @return the buffer, filled with 0
+     */
+    private static FloatBuffer allocateFloats(int length){
+        return ByteBuffer.allocateDirect(4 * Math.max(1, length)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Helper method which copies an int array in direct memory into one twice as long
+     * @param old the buffer to copy
+     * @return the new buffer
+     */
+    private static IntBuffer grow(IntBuffer old){
+        IntBuffer bigger = allocateInts(old.capacity() * 2);
+        bigger.put(old.duplicate().clear());
+        return bigger.clear();
+    }
+
+    /**
+     * Helper method which copies a float array in direct memory into one twice as long
+     * @param old the buffer to copy
+     * @return the new buffer
+     */
+    private static FloatBuffer grow(FloatBuffer old){
+        FloatBuffer bigger = allocateFloats(old.capacity() * 2);
+        bigger.put(old.duplicate().clear());
+        return bigger.clear();
+    }
+
+
+    /**
+     * getter for the direct memory the graph uses
+     * @return the number of bytes outside the heap
+     */
+    public long getOffHeapBytes(){
+        return 4L * (firstEdge.capacity() + edgeTarget.capacity() + edgeLine.capacity() + edgeTime.capacity() + edgeState.capacity()
+                + firstState.capacity() + stateStation.capacity() + stateLine.capacity() + nameStart.capacity() + nameOrder.capacity())
+                + nameBytes.capacity();
+    }
+
+    @Override
+    public int getStationCount(){
+        return stations;
+    }
+
+    @Override
+    public int getEdgeCount(){
+        return edges;
+    }
+
+    @Override
+    public int getStateCount(){
+        return states;
+    }
+
+    @Override
+    public String getStationName(int station){
+        int start = nameStart.get(station);
+        byte[] name = new byte[nameStart.get(station + 1) - start];
+        nameBytes.get(start, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getLineName(int line){
+        return lineNames[line];
+    }
+
+    @Override
+    public boolean isClosed(int station){
+        return false;
+    }
+
+    @Override
+    public int getFirstEdge(int station){
+        return firstEdge.get(station);
+    }
+
+    @Override
+    public int getTarget(int edge){
+        return edgeTarget.get(edge);
+    }
+
+    @Override
+    public int getLine(int edge){
+        return edgeLine.get(edge);
+    }
+
+    @Override
+    public float getTime(int edge){
+        return edgeTime.get(edge);
+    }
+
+    @Override
+    public int getArrivalState(int edge){
+        return edgeState.get(edge);
+    }
+
+    @Override
+    public int getFirstState(int station){
+        return firstState.get(station);
+    }
+
+    @Override
+    public int getStateStation(int state){
+        return stateStation.get(state);
+    }
+
+    @Override
+    public int getStateLine(int state){
+        return stateLine.get(state);
+    }
+
+
+    /**
+     * Reads a network off the heap and times searches on it, printing how much heap and direct memory it takes
+     * @param args the network CSV file, then optionally the number of searches
+     * @throws IOException if the network file can't be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java OffHeapGraph <network.csv> [searches]");
+            return;
+        }
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Runtime runtime = Runtime.getRuntime();
+        long start = System.nanoTime();
+        OffHeapGraph graph = new OffHeapGraph(args[0]);
+        long loaded = System.nanoTime();
+        System.gc();
+        System.out.println(graph.getStationCount() + " stations, " + graph.getEdgeCount() + " edges and " + graph.getStateCount()
+                + " states read in " + (loaded - start) / 1000000 + " ms");
+        System.out.println("Direct memory: " + graph.getOffHeapBytes() / (1024 * 1024) + " MB, heap in use: "
+                + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " MB");
+
+        OneToAllSearch search = new OneToAllSearch(graph);
+        long searchStart = System.nanoTime();
+        for(int i = 0; i < searches; i++){
+            search.run((int) ((long) i * graph.getStationCount() / searches));
+        }
+        System.out.println(searches + " searches over the whole network in " + (System.nanoTime() - searchStart) / 1000000 + " ms");
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * A network packed into arrays, as the searches which visit the whole network many times read it.
+ * Stations, edges and (station, line) states are numbered from 0, the edges leaving each station are stored
+ * together, and each edge knows the state it arrives in. CompactGraph keeps the arrays on the heap and
+ * OffHeapGraph keeps them in direct memory
+ */
+public interface PackedNetwork {
+
+    /**
+     * getter for the number of stations
+     * @return the number of stations
+     */
+    int getStationCount();
+
+    /**
+     * getter for the number of edges, counting each direction of a connection
+     * @return the number of edges
+     */
+    int getEdgeCount();
+
+    /**
+     * getter for the number of (station, line) states
+     * @return the number of states
+     */
+    int getStateCount();
+
+    /**
+     * getter for the name of a station
+     * @param station the index of the station
+     * @return the name of the station
+     */
+    String getStationName(int station);
+
+    /**
+     * getter for the name of a line
+     * @param line the id of the line
+     * @return the name of the line
+     */
+    String getLineName(int line);
+
+    /**
+     * Checks if a station is closed
+     * @param station the index of the station
+     * @return true if the station is closed
+     */
+    boolean isClosed(int station);
+
+    /**
+     * getter for the first edge leaving a station
+     * @param station the index of the station
+     * @return the index of the first edge, the edges of the station run up to getFirstEdge(station + 1)
+     */
+    int getFirstEdge(int station);
+
+    /**
+     * getter for the station an edge ends at
+     * @param edge the index of the edge
+     * @return the index of the end station
+     */
+    int getTarget(int edge);
+
+    /**
+     * getter for the line of an edge
+     * @param edge the index of the edge
+     * @return the id of the line
+     */
+    int getLine(int edge);
+
+    /**
+     * getter for the travel time of an edge
+     * @param edge the index of the edge
+     * @return the time in minutes
+     */
+    float getTime(int edge);
+
+    /**
+     * getter for the state an edge arrives in
+     * @param edge the index of the edge
+     * @return the index of the (end station, line) state
+     */
+    int getArrivalState(int edge);
+
+    /**
+     * getter for the first state of a station
+     * @param station the index of the station
+     * @return the index of the first state, the states of the station run up to getFirstState(station + 1)
+     */
+    int getFirstState(int station);
+
+    /**
+     * getter for the station of a state
+     * @param state the index of the state
+     * @return the index of the station
+     */
+    int getStateStation(int state);
+
+    /**
+     * getter for the line of a state
+     * @param state the index of the state
+     * @return the id of the line
+     */
+    int getStateLine(int state);
+
+}
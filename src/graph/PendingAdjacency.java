@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The connections of a network which have been read but not yet made into edges.
+ * A graph loaded lazily keeps one of these and only creates the edges of a station when they are first asked for,
+ * so a short run which touches a few stations never builds the rest of the adjacency.
+ * The edges get the same ids and the same order as if every connection had been added with Graph.addEdge
+ */
+public class PendingAdjacency {
+
+    private Node[] nodes; // The station of each index
+    private int[] rowFrom; // The index of the first station of each connection, in the order they were read
+    private int[] rowTo; // The index of the second station of each connection
+    private String[] rowLine; // The line of each connection
+    private float[] rowTime; // The time of each connection
+    private int[] firstRow; // The connections of station s are rows[firstRow[s]] up to rows[firstRow[s + 1]]
+    private int[] rows;
+
+
+    /**
+     * Creates an instance of PendingAdjacency
+     * @param nodes the station of each index
+     * @param rowFrom the index of the first station of each connection
+     * @param rowTo the index of the second station of each connection
+     * @param rowLine the line of each connection
+     * @param rowTime the time of each connection
+     * @param rowCount the number of connections, which may be less than the length of the arrays
+     */
+    public PendingAdjacency(Node[] nodes, int[] rowFrom, int[] rowTo, String[] rowLine, float[] rowTime, int rowCount){
+        this.nodes = nodes;
+        this.rowFrom = rowFrom;
+        this.rowTo = rowTo;
+        this.rowLine = rowLine;
+        this.rowTime = rowTime;
+
+        // Group the connections by station, keeping the order they were read in
+        firstRow = new int[nodes.length + 1];
+        for(int row = 0; row < rowCount; row++){
+            firstRow[rowFrom[row] + 1]++;
+            firstRow[rowTo[row] + 1]++;
+        }
+        for(int station = 0; station < nodes.length; station++){
+            firstRow[station + 1] += firstRow[station];
+        }
+        int[] next = firstRow.clone();
+        rows = new int[2 * rowCount];
+        for(int row = 0; row < rowCount; row++){
+            rows[next[rowFrom[row]]++] = row;
+            rows[next[rowTo[row]]++] = row;
+        }
+    }
+
+
+    /**
+     * Creates the edges leaving a station
+     * @param node the station
+     * @return the edges, in the order Graph.addEdge would have added them
+     */
+    public List<Edge> createEdges(Node node){
+        int station = node.getIndex();
+        List<Edge> edges = new ArrayList<>(firstRow[station + 1] - firstRow[station]);
+        for(int i = firstRow[station]; i < firstRow[station + 1]; i++){
+            int row = rows[i];
+            // addEdge gives the edge from the first station the id 2 * row and the edge back the id after it
+            boolean forward = rowFrom[row] == station;
+            Edge edge = new Edge(nodes[forward ? rowTo[row] : rowFrom[row]], rowLine[row], rowTime[row]);
+            edge.setId(forward ? 2 * row : 2 * row + 1);
+            edges.add(edge);
+            // A connection from a station to itself has both its edges at that station
+            if(forward && rowTo[row] == station){
+                Edge back = new Edge(nodes[station], rowLine[row], rowTime[row]);
+                back.setId(2 * row + 1);
+                edges.add(back);
+                i++;
+            }
+        }
+        return edges;
+    }
+
+
+    /**
+     * getter for the number of edge ids the connections use
+     * @return twice the number of connections
+     */
+    public int getEdgeIdCount(){
+        return rows.length;
+    }
+
+}
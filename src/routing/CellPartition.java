@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+
+/**
+ * Splits the stations of a CompactGraph into cells of at most a given size, cutting as few connections as it can.
+ * The partition is multilevel: stations start as groups of one, and every round pairs each group with the neighbour
+ * it shares the most connections with (relative to their sizes), while the pair still fits in a cell.
+ * Once no more groups can be paired, stations at the edge of a cell are moved to the neighbouring cell they have
+ * more connections with when that cuts fewer connections
+ */
+public class CellPartition {
+
+    private static final int REFINE_PASSES = 3; // passes of moving boundary stations between cells
+
+    private int[] cellOf; // The cell of each station
+    private int cellCount;
+    private int maxCellSize;
+
+
+    /**
+     * Creates a partition of a snapshot's stations
+     * @param graph the snapshot to partition
+     * @param maxCellSize the most stations a cell may hold
+     */
+    public CellPartition(CompactGraph graph, int maxCellSize){
+        if(maxCellSize < 1) throw new IllegalArgumentException("A cell must hold at least one station");
+        this.maxCellSize = maxCellSize;
+        int stations = graph.getStationCount();
+
+        // The first level has one group per station, joined by the connections between the stations
+        int groups = stations;
+        int[] groupOf = new int[stations];
+        for(int s = 0; s < stations; s++) groupOf[s] = s;
+        int[] size = new int[groups];
+        Arrays.fill(size, 1);
+        int[] first = new int[groups + 1];
+        int[] neighbour = new int[graph.getEdgeCount()];
+        int[] weight = new int[graph.getEdgeCount()];
+        int e = 0;
+        for(int s = 0; s < stations; s++){
+            first[s] = e;
+            for(int edge = graph.getFirstEdge(s); edge < graph.getFirstEdge(s + 1); edge++){
+                if(graph.getTarget(edge) == s) continue;
+                neighbour[e] = graph.getTarget(edge);
+                weight[e++] = 1;
+            }
+        }
+        first[stations] = e;
+
+        // Each round pairs up groups and builds the coarser level from the pairs, until no pair fits in a cell
+        int[] match = new int[groups];
+        while(true){
+            Arrays.fill(match, 0, groups, -1);
+            int pairs = 0;
+            for(int g = 0; g < groups; g++){
+                if(match[g] >= 0) continue;
+                int best = -1;
+                double bestScore = 0;
+                for(int i = first[g]; i < first[g + 1]; i++){
+                    int h = neighbour[i];
+                    if(h == g || match[h] >= 0 || size[g] + size[h] > maxCellSize) continue;
+                    // Prefer strongly connected neighbours, and small ones so the cells grow evenly
+                    double score = weight[i] / ((double) size[g] * size[h]);
+                    if(score > bestScore){
+                        bestScore = score;
+                        best = h;
+                    }
+                }
+                if(best >= 0){
+                    match[g] = best;
+                    match[best] = g;
+                    pairs++;
+                }else{
+                    match[g] = g;
+                }
+            }
+            if(pairs == 0) break;
+
+            // Number the coarse groups and remember the one or two groups each is made of
+            int coarse = groups - pairs;
+            int[] coarseOf = new int[groups];
+            int[] part = new int[2 * coarse];
+            int[] coarseSize = new int[coarse];
+            int c = 0;
+            for(int g = 0; g < groups; g++){
+                if(match[g] < g) continue;
+                coarseOf[g] = c;
+                coarseOf[match[g]] = c;
+                part[2 * c] = g;
+                part[2 * c + 1] = match[g];
+                coarseSize[c] = match[g] == g ? size[g] : size[g] + size[match[g]];
+                c++;
+            }
+
+            // Join the coarse groups, adding up the weights of connections between the same pair
+            int[] coarseFirst = new int[coarse + 1];
+            int[] coarseNeighbour = new int[e];
+            int[] coarseWeight = new int[e];
+            int[] slot = new int[coarse]; // Where each neighbour of the current group is in the new arrays, if it was seen
+            Arrays.fill(slot, -1);
+            int ce = 0;
+            for(c = 0; c < coarse; c++){
+                coarseFirst[c] = ce;
+                for(int p = 0; p < 2; p++){
+                    int g = part[2 * c + p];
+                    if(p == 1 && g == part[2 * c]) break;
+                    for(int i = first[g]; i < first[g + 1]; i++){
+                        int h = coarseOf[neighbour[i]];
+                        if(h == c) continue;
+                        if(slot[h] < 0){
+                            slot[h] = ce;
+                            coarseNeighbour[ce] = h;
+                            coarseWeight[ce++] = 0;
+                        }
+                        coarseWeight[slot[h]] += weight[i];
+                    }
+                }
+                for(int i = coarseFirst[c]; i < ce; i++) slot[coarseNeighbour[i]] = -1;
+            }
+            coarseFirst[coarse] = ce;
+
+            for(int s = 0; s < stations; s++) groupOf[s] = coarseOf[groupOf[s]];
+            groups = coarse;
+            size = coarseSize;
+            first = coarseFirst;
+            neighbour = coarseNeighbour;
+            weight = coarseWeight;
+            e = ce;
+        }
+
+        cellOf = groupOf;
+        cellCount = groups;
+        refine(graph, size);
+    }
+
+
+    /**
+     * Helper method which moves stations at the edge of a cell to the neighbouring cell they have the most connections with,
+     * when it has room and the move cuts fewer connections. A cell is never emptied, so the cell numbers stay the same
+     * @param graph the snapshot being partitioned
+     * @param size the number of stations in each cell, updated as stations move
+     */
+    private void refine(CompactGraph graph, int[] size){
+        int[] links = new int[cellCount]; // The connections of the current station to each cell
+        int[] touched = new int[cellCount];
+        for(int pass = 0; pass < REFINE_PASSES; pass++){
+            int moved = 0;
+            for(int s = 0; s < graph.getStationCount(); s++){
+                int own = cellOf[s];
+                int count = 0;
+                for(int edge = graph.getFirstEdge(s); edge < graph.getFirstEdge(s + 1); edge++){
+                    int cell = cellOf[graph.getTarget(edge)];
+                    if(links[cell]++ == 0) touched[count++] = cell;
+                }
+                int best = own;
+                for(int i = 0; i < count; i++){
+                    int cell = touched[i];
+                    if(cell != own && links[cell] > links[best] && size[cell] < maxCellSize && size[own] > 1) best = cell;
+                }
+                for(int i = 0; i < count; i++) links[touched[i]] = 0;
+                if(best != own){
+                    cellOf[s] = best;
+                    size[own]--;
+                    size[best]++;
+                    moved++;
+                }
+            }
+            if(moved == 0) return;
+        }
+    }
+
+
+    /**
+     * getter for the cell of a station
+     * @param station the index of the station
+     * @return the number of its cell, between 0 and the number of cells
+     */
+    public int getCell(int station){
+        return cellOf[station];
+    }
+
+    /**
+     * getter for the number of cells
+     * @return the number of cells
+     */
+    public int getCellCount(){
+        return cellCount;
+    }
+
+    /**
+     * getter for the most stations a cell may hold
+     * @return the cell size limit
+     */
+    public int getMaxCellSize(){
+        return maxCellSize;
+    }
+
+}
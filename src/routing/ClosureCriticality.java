@@ -0,0 +1,443 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import javax.swing.JTextArea;
+
+
+/**
+ * Ranks the stations by how much closing each one would hurt the rest of the network: the extra travel time
+ * summed over all journeys between the other stations, and the number of those journeys left without a route.
+ * Every closure is only simulated, so the graph is not changed.
+ *
+ * Closing a station only changes the states whose shortest route passes through it. So for every origin,
+ * one search finds the shortest path tree, and then each station inside the tree is closed in turn and
+ * only the states below it in the tree are searched again, starting from the states around them which keep their times.
+ * A station with nothing below it in the tree of an origin needs no search for it at all.
+ * Origins are spread over a fork-join pool and each task reuses its buffers for all its origins.
+ * A scan can be cancelled from another thread, which leaves the totals of the origins searched so far
+ */
+public class ClosureCriticality {
+
+    private static final int SOURCES_PER_TASK = 4; // origins searched by one task before it stops splitting
+
+    private CompactGraph graph;
+    private int[] edgeSource; // The station each edge leaves from
+    private int[] firstInEdge; // The edges arriving in state s are inEdges[firstInEdge[s]] up to inEdges[firstInEdge[s + 1]]
+    private int[] inEdges;
+    private DoubleAdder[] extraTime; // The extra minutes over all journeys for each closed station
+    private LongAdder[] disconnected; // The journeys left without a route for each closed station
+    private LongAdder originsSearched = new LongAdder();
+    private LongAdder repairs = new LongAdder();
+    private AtomicBoolean cancelled = new AtomicBoolean();
+    private List<Criticality> ranking = new ArrayList<>();
+
+
+    /**
+     * Creates an instance of ClosureCriticality for the network with its current delays and closures
+     * @param graph the graph to scan
+     */
+    public ClosureCriticality(Graph graph){
+        this.graph = new CompactGraph(graph);
+        int stations = this.graph.getStationCount();
+        extraTime = new DoubleAdder[stations];
+        disconnected = new LongAdder[stations];
+        for(int station = 0; station < stations; station++){
+            extraTime[station] = new DoubleAdder();
+            disconnected[station] = new LongAdder();
+        }
+
+        // Index the edges by the state they arrive in, so a repair can find the states around it
+        int edges = this.graph.getEdgeCount();
+        edgeSource = new int[edges];
+        firstInEdge = new int[this.graph.getStateCount() + 1];
+        inEdges = new int[edges];
+        for(int station = 0; station < stations; station++){
+            for(int edge = this.graph.getFirstEdge(station); edge < this.graph.getFirstEdge(station + 1); edge++){
+                edgeSource[edge] = station;
+                firstInEdge[this.graph.getArrivalState(edge) + 1]++;
+            }
+        }
+        for(int state = 0; state < this.graph.getStateCount(); state++){
+            firstInEdge[state + 1] += firstInEdge[state];
+        }
+        int[] next = Arrays.copyOf(firstInEdge, firstInEdge.length);
+        for(int edge = 0; edge < edges; edge++){
+            inEdges[next[this.graph.getArrivalState(edge)]++] = edge;
+        }
+    }
+
+
+    /**
+     * Scans every station on the common fork-join pool
+     * @return the stations, the most critical first
+     */
+    public List<Criticality> run(){
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Scans every station on the given fork-join pool
+     * @param pool the pool to run the searches on
+     * @return the stations, the most critical first. If the scan was cancelled the totals are only partial
+     */
+    public List<Criticality> run(ForkJoinPool pool){
+        pool.invoke(new RangeTask<Void>(0, graph.getStationCount(), SOURCES_PER_TASK, this::scanOrigins));
+
+        ranking = new ArrayList<>();
+        for(int station = 0; station < graph.getStationCount(); station++){
+            if(graph.isClosed(station)) continue;
+            ranking.add(new Criticality(graph.getStationName(station), disconnected[station].sum(), extraTime[station].sum()));
+        }
+        // Losing routes is worse than any delay, so stations are ranked by disconnected journeys first
+        ranking.sort(Comparator.comparingLong((Criticality c) -> c.disconnected).reversed()
+                .thenComparing(Comparator.comparingDouble((Criticality c) -> c.extraTime).reversed())
+                .thenComparing(c -> c.station));
+        return ranking;
+    }
+
+
+    /**
+     * Stops a running scan after the origins already started, it can be called from any thread
+     */
+    public void cancel(){
+        cancelled.set(true);
+    }
+
+    /**
+     * Checks if the scan was cancelled before every origin was searched
+     * @return true if the totals are only partial
+     */
+    public boolean isCancelled(){
+        return cancelled.get() && originsSearched.sum() < graph.getStationCount();
+    }
+
+
+    /**
+     * Helper method which tries closing every station inside the shortest path tree of one origin
+     * @param source the index of the origin
+     * @param base the search to use without extra closures
+     * @param tree the buffers for the tree of the origin
+     * @param repair the buffers for the search with a station closed
+     */
+    private void scanOrigin(int source, OneToAllSearch base, Tree tree, Repair repair){
+        base.run(source);
+        originsSearched.increment();
+        if(graph.isClosed(source)) return;
+        tree.build(base, source);
+
+        for(int station = 0; station < graph.getStationCount(); station++){
+            if(station == source || !tree.hasDescendants(station)) continue;
+            repair.run(base, tree, source, station);
+            repairs.increment();
+
+            // Only the stations below the closed station in the tree can change their times
+            double extra = 0;
+            long lost = 0;
+            for(int i = 0; i < repair.stationCount; i++){
+                int target = repair.stations[i];
+                float before = base.getTime(target);
+                float after = repair.getStationTime(target);
+                if(after == Float.POSITIVE_INFINITY) lost++;
+                else extra += after - before;
+            }
+            extraTime[station].add(extra);
+            disconnected[station].add(lost);
+        }
+    }
+
+
+    /**
+     * getter for the number of closures which needed a search, which pruning keeps well below
+     * the number of stations squared
+     * @return the number of searches
+     */
+    public long getSearchCount(){
+        return repairs.sum();
+    }
+
+
+    /**
+     * Writes the ranking found by the last run as a report, the most critical station first
+     * @param limit the most stations to list
+     * @return the report text
+     */
+    public String formatReport(int limit){
+        StringBuilder report = new StringBuilder("*** Closure Criticality ***\n");
+        if(isCancelled()){
+            report.append("The scan was cancelled after " + originsSearched.sum() + " of " + graph.getStationCount()
+                    + " origins, so the totals are only partial\n");
+        }
+        for(int i = 0; i < Math.min(limit, ranking.size()); i++){
+            report.append((i + 1) + ". " + ranking.get(i) + "\n");
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * Helper method which scans a range of origins, as one leaf of the task over every origin
+     * @param first the first origin
+     * @param last the origin after the last
+     * @return null, the totals are added up as the origins are scanned
+     */
+    private Void scanOrigins(int first, int last){
+        // The search, the tree and the repair are reused for every origin in the range
+        OneToAllSearch base = new OneToAllSearch(graph);
+        Tree tree = new Tree();
+        Repair repair = new Repair();
+        for(int source = first; source < last && !cancelled.get(); source++){
+            scanOrigin(source, base, tree, repair);
+        }
+        return null;
+    }
+
+
+    /**
+     * The shortest path tree of one origin over every state it reaches.
+     * The states are numbered in depth first order, so the states below any state are one range of numbers
+     */
+    private class Tree {
+        private int[] firstChild = new int[graph.getStateCount()];
+        private int[] nextSibling = new int[graph.getStateCount()];
+        private int[] order = new int[graph.getStateCount()]; // The states of the tree in depth first order
+        private int[] position = new int[graph.getStateCount()]; // The position of each state in the order, -1 if unreached
+        private int[] end = new int[graph.getStateCount()]; // The position after the last state below each state
+        private int[] stack = new int[graph.getStateCount()];
+
+        /**
+         * Builds the tree from a finished search
+         * @param search the search from the origin, run over the whole network
+         * @param source the index of the origin
+         */
+        void build(OneToAllSearch search, int source){
+            Arrays.fill(firstChild, -1);
+            int roots = -1;
+            for(int state = graph.getStateCount() - 1; state >= 0; state--){
+                position[state] = -1;
+                if(search.getParentEdge(state) < 0) continue;
+                int parent = search.getPreviousState(state);
+                if(parent < 0){
+                    nextSibling[state] = roots;
+                    roots = state;
+                }else{
+                    nextSibling[state] = firstChild[parent];
+                    firstChild[parent] = state;
+                }
+            }
+
+            // Number the states depth first, taking each child off its parent's list as it is visited
+            int size = 0;
+            for(int root = roots; root >= 0; root = nextSibling[root]){
+                int top = 0;
+                stack[top++] = root;
+                position[root] = size;
+                order[size++] = root;
+                while(top > 0){
+                    int state = stack[top - 1];
+                    int child = firstChild[state];
+                    if(child >= 0){
+                        firstChild[state] = nextSibling[child];
+                        position[child] = size;
+                        order[size++] = child;
+                        stack[top++] = child;
+                    }else{
+                        end[state] = size;
+                        top--;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks if any state is below a state of a station in the tree
+         * @param station the index of the station
+         * @return true if closing the station could change a time
+         */
+        boolean hasDescendants(int station){
+            for(int state = graph.getFirstState(station); state < graph.getFirstState(station + 1); state++){
+                if(position[state] >= 0 && end[state] > position[state] + 1) return true;
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * The search again from one origin with one station closed, over only the states below that station in the tree.
+     * Every other state keeps its time, since closing a station can't make a route faster.
+     * An instance must only be used by one thread
+     */
+    private class Repair {
+        private float[] stateTime = new float[graph.getStateCount()]; // The new time of each state below the closed station
+        private int[] cut = new int[graph.getStateCount()]; // Equal to stamp for the states below the closed station
+        private int stamp;
+        private int[] states = new int[graph.getStateCount()]; // The states below the closed station
+        private int stateCount;
+        private int[] stations = new int[graph.getStationCount()]; // The other stations with a state below the closed station
+        private int stationCount;
+        private int[] stationStamp = new int[graph.getStationCount()];
+        private StateHeap heap = new StateHeap(); // The cut states reached but not yet settled, by time
+        private OneToAllSearch base;
+        private int closed;
+
+        /**
+         * Finds the new times of the states below a station in the tree when it is closed
+         * @param base the finished search from the origin
+         * @param tree the tree of the search
+         * @param source the index of the origin
+         * @param closed the index of the station to close
+         */
+        void run(OneToAllSearch base, Tree tree, int source, int closed){
+            this.base = base;
+            this.closed = closed;
+            stamp++;
+            stateCount = 0;
+            stationCount = 0;
+            heap.clear();
+
+            // Cut every state below the closed station off the tree
+            for(int state = graph.getFirstState(closed); state < graph.getFirstState(closed + 1); state++){
+                if(tree.position[state] < 0) continue;
+                for(int i = tree.position[state]; i < tree.end[state]; i++){
+                    int below = tree.order[i];
+                    if(cut[below] == stamp) continue;
+                    cut[below] = stamp;
+                    stateTime[below] = Float.POSITIVE_INFINITY;
+                    states[stateCount++] = below;
+                    int station = graph.getStateStation(below);
+                    if(station != closed && station != source && stationStamp[station] != stamp){
+                        stationStamp[station] = stamp;
+                        stations[stationCount++] = station;
+                    }
+                }
+            }
+
+            // Start from the edges into the cut states from states which keep their times
+            for(int i = 0; i < stateCount; i++){
+                int state = states[i];
+                if(graph.getStateStation(state) == closed) continue;
+                for(int j = firstInEdge[state]; j < firstInEdge[state + 1]; j++){
+                    int edge = inEdges[j];
+                    int from = edgeSource[edge];
+                    if(from == closed) continue;
+                    if(from == source){
+                        // The first edge from the source never counts as a change of line
+                        relax(state, graph.getTime(edge));
+                        continue;
+                    }
+                    for(int s = graph.getFirstState(from); s < graph.getFirstState(from + 1); s++){
+                        if(cut[s] == stamp || base.getParentEdge(s) < 0) continue;
+                        relax(state, base.getStateTime(s) + cost(s, edge));
+                    }
+                }
+            }
+
+            while(!heap.isEmpty()){
+                int state = heap.peekState();
+                float time = heap.peekTime();
+                heap.pop();
+                // Skip entries left behind by a shorter time to the same state
+                if(time > stateTime[state]) continue;
+
+                int station = graph.getStateStation(state);
+                for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+                    int next = graph.getArrivalState(edge);
+                    // States which weren't cut already have their shortest times
+                    if(cut[next] != stamp || graph.getTarget(edge) == closed) continue;
+                    relax(next, time + cost(state, edge));
+                }
+            }
+        }
+
+        /**
+         * Helper method which finds the time of an edge taken from a state, with the change of line if there is one
+         * @param state the state the edge is taken from
+         * @param edge the index of the edge
+         * @return the time in minutes
+         */
+        private float cost(int state, int edge){
+            float time = graph.getTime(edge);
+            if(graph.getStateLine(state) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+            return time;
+        }
+
+        /**
+         * Helper method which lowers the time of a cut state if the new time is shorter
+         * @param state the index of the state
+         * @param time the new time
+         */
+        private void relax(int state, float time){
+            if(time >= stateTime[state]) return;
+            stateTime[state] = time;
+            heap.push(state, time);
+        }
+
+        /**
+         * getter for the new time of a station below the closed station, over all its states
+         * @param station the index of the station
+         * @return the journey time in minutes, Float.POSITIVE_INFINITY if the station can't be reached
+         */
+        float getStationTime(int station){
+            float time = Float.POSITIVE_INFINITY;
+            for(int state = graph.getFirstState(station); state < graph.getFirstState(station + 1); state++){
+                if(cut[state] == stamp) time = Math.min(time, stateTime[state]);
+                else if(base.getParentEdge(state) >= 0) time = Math.min(time, base.getStateTime(state));
+            }
+            return time;
+        }
+    }
+
+
+    /**
+     * The effect of closing one station
+     */
+    public static class Criticality {
+        String station;
+        long disconnected;
+        double extraTime;
+
+        public Criticality(String station, long disconnected, double extraTime){
+            this.station = station;
+            this.disconnected = disconnected;
+            this.extraTime = extraTime;
+        }
+
+        @Override
+        public String toString(){
+            return station + ": " + disconnected + " journeys without a route, "
+                    + String.format("%.1f", extraTime) + " extra minutes over all other journeys";
+        }
+    }
+
+
+    /**
+     * Scans a network from a CSV file and prints the most critical stations
+     * @param args the CSV file and optionally the number of stations to list
+     */
+    public static void main(String[] args){
+        if(args.length < 1){
+            System.out.println("Usage: java ClosureCriticality <network.csv> [stations to list]");
+            return;
+        }
+        JTextArea errors = new JTextArea();
+        Graph graph = new CSVReader().getGraph(args[0], errors);
+        if(!errors.getText().isEmpty()){
+            System.out.print(errors.getText());
+            return;
+        }
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        long start = System.nanoTime();
+        ClosureCriticality scan = new ClosureCriticality(graph);
+        scan.run();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.print(scan.formatReport(limit));
+        System.out.println(graph.getSize() + " stations scanned in " + millis + " ms with " + scan.getSearchCount() + " searches");
+    }
+
+}
@@ -0,0 +1,520 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Finds the shortest journey time from one station to every state of a packed network on several threads,
+ * with the same costs as OneToAllSearch, by delta-stepping. States wait in buckets of times delta minutes wide,
+ * about the time of a typical connection. The states of the lowest bucket are relaxed together on the fork-join pool,
+ * and the bucket is emptied again until relaxing it adds nothing to it, before moving on to the next one.
+ * The time and parent edge of each state are packed into one long, so a thread lowers both together with a
+ * compare and swap, without locks. Each thread collects the states it improved in its own buffer, and the buffers are
+ * sorted into buckets between steps.
+ * The times are exactly those OneToAllSearch finds, since both add the same numbers along the same routes.
+ * Where two routes take exactly the same time the parent is the one through the lowest numbered edge, which can
+ * differ from OneToAllSearch, whose parent depends on the order it settled the states in.
+ * An instance must only be used by one thread at a time, which then uses the pool
+ */
+public class DeltaSteppingSearch {
+
+    private static final int STATES_PER_TASK = 256; // states relaxed by one task before the frontier is split
+    private static final int MAX_BUCKETS = 1 << 16; // the most buckets the ring may have, narrower buckets are widened to fit
+    private static final long UNREACHED = pack(Float.POSITIVE_INFINITY, -1);
+
+    private PackedNetwork graph;
+    private ForkJoinPool pool;
+    private float delta; // The width of a bucket in minutes
+    private AtomicLongArray best; // The time of each state in the high 32 bits and its parent edge in the low 32 bits
+    private int[] edgeSource; // The station each edge leaves from
+    private int[] previousState;
+    private float[] stationTime;
+    private boolean[] reached;
+    private int[] touchedStates; // The states reached by the current search, so they can be reset
+    private int touchedCount;
+    private int[][] buckets; // A ring of buckets, wide enough for the longest connection plus a change
+    private int[] bucketSize;
+    private int[] stamp; // The step a state was last put in a bucket or the frontier, so it only goes in once per step
+    private int step;
+    private int[] frontier = new int[64]; // The states of the bucket being relaxed
+    private int frontierSize;
+    private ConcurrentLinkedQueue<RequestBuffer> buffers = new ConcurrentLinkedQueue<>(); // The buffers of the threads working on this search
+    private ThreadLocal<RequestBuffer> localBuffer = ThreadLocal.withInitial(RequestBuffer::new);
+    private int searches; // The number of searches started, so a buffer knows if it joined this one
+    private int source = -1;
+    private int phases; // The number of times the last search relaxed a frontier
+
+
+    /**
+     * Creates an instance of DeltaSteppingSearch on the common fork-join pool,
+     * with buckets as wide as the average time of a connection
+     * @param graph the network to search
+     */
+    public DeltaSteppingSearch(PackedNetwork graph){
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an instance of DeltaSteppingSearch on the given fork-join pool,
+     * with buckets as wide as the average time of a connection
+     * @param graph the network to search
+     * @param pool the pool the states of a bucket are relaxed on
+     */
+    public DeltaSteppingSearch(PackedNetwork graph, ForkJoinPool pool){
+        this(graph, averageTime(graph), pool);
+    }
+
+    /**
+     * Creates an instance of DeltaSteppingSearch
+     * @param graph the network to search
+     * @param delta the width of a bucket in minutes. Small buckets relax fewer states more than once but
+     *              have less to do in parallel, and a bucket as wide as every journey is the Bellman-Ford algorithm.
+     *              Buckets so narrow that the longest connection would span more than MAX_BUCKETS of them are widened
+     * @param pool the pool the states of a bucket are relaxed on
+     * @throws IllegalArgumentException if delta isn't a positive finite number
+     */
+    public DeltaSteppingSearch(PackedNetwork graph, float delta, ForkJoinPool pool){
+        if(!(delta > 0) || Float.isInfinite(delta)) throw new IllegalArgumentException("The bucket width must be positive and finite, not " + delta);
+        this.graph = graph;
+        this.pool = pool;
+        int states = graph.getStateCount();
+        best = new AtomicLongArray(states);
+        for(int state = 0; state < states; state++) best.set(state, UNREACHED);
+        previousState = new int[states];
+        reached = new boolean[states];
+        touchedStates = new int[states];
+        stamp = new int[states];
+        stationTime = new float[graph.getStationCount()];
+        Arrays.fill(stationTime, Float.POSITIVE_INFINITY);
+
+        edgeSource = new int[graph.getEdgeCount()];
+        float longest = 0;
+        for(int station = 0; station < graph.getStationCount(); station++){
+            for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+                edgeSource[edge] = station;
+                longest = Math.max(longest, graph.getTime(edge));
+            }
+        }
+        // A relaxed state lands at most this many buckets after the one being relaxed, so the ring never wraps onto itself
+        float longestStep = longest + OneToAllSearch.CHANGE_TIME;
+        if(longestStep / delta > MAX_BUCKETS - 2) delta = longestStep / (MAX_BUCKETS - 2);
+        this.delta = delta;
+        int ring = (int) Math.ceil(longestStep / delta) + 2;
+        buckets = new int[ring][];
+        bucketSize = new int[ring];
+        for(int i = 0; i < ring; i++) buckets[i] = new int[16];
+    }
+
+
+    /**
+     * Helper method which works out the default bucket width
+     * @param graph the network
+     * @return the average time of an edge, 1 minute if it has none
+     */
+    private static float averageTime(PackedNetwork graph){
+        double total = 0;
+        for(int edge = 0; edge < graph.getEdgeCount(); edge++) total += graph.getTime(edge);
+        return total > 0 ? (float) (total / graph.getEdgeCount()) : 1;
+    }
+
+
+    /**
+     * Finds the shortest time from a station to every station and state.
+     * A closed source reaches nothing, not even itself
+     * @param source the index of the station to start at
+     */
+    public void run(int source){
+        reset();
+        this.source = source;
+        if(graph.isClosed(source)) return;
+        stationTime[source] = 0;
+        searches++;
+        buffers.clear();
+
+        // The first edge from the source never counts as a change of line
+        relaxEdges(source, -1, 0f, buffer());
+        collect();
+        long current = 0;
+        int empty = 0;
+        while(empty < buckets.length){
+            int slot = (int) (current % buckets.length);
+            if(bucketSize[slot] == 0){
+                current++;
+                empty++;
+                continue;
+            }
+            empty = 0;
+            takeFrontier(slot, current);
+            if(frontierSize == 0) continue;
+            // A small frontier is relaxed on this thread, as handing it to the pool would cost more than it saves
+            if(frontierSize > STATES_PER_TASK){
+                pool.invoke(new RangeTask<Void>(0, frontierSize, STATES_PER_TASK, this::relaxFrontier));
+            }else{
+                relaxFrontier(0, frontierSize);
+            }
+            phases++;
+            // States improved into the current bucket go back into it, and it is relaxed again
+            collect();
+        }
+        // Pool threads come and go, so the buffers of the ones that have gone aren't kept
+        buffers.clear();
+        findParents();
+    }
+
+    /**
+     * Helper method which gets this thread's buffer, adding it to the buffers of the search the first time
+     * the thread improves a state in it
+     * @return the thread's buffer, empty if it has just joined the search
+     */
+    private RequestBuffer buffer(){
+        RequestBuffer buffer = localBuffer.get();
+        if(buffer.search != searches){
+            buffer.search = searches;
+            buffer.size = 0;
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+
+    /**
+     * Helper method which moves the live states of a bucket into the frontier, leaving the bucket empty.
+     * A state whose time has since dropped into an earlier bucket was put in that bucket too, so it is dropped here
+     * @param slot the position of the bucket in the ring
+     * @param current the number of the bucket
+     */
+    private void takeFrontier(int slot, long current){
+        step++;
+        frontierSize = 0;
+        int[] bucket = buckets[slot];
+        for(int i = 0; i < bucketSize[slot]; i++){
+            int state = bucket[i];
+            if(stamp[state] == step || bucketOf(getStateTime(state)) != current) continue;
+            stamp[state] = step;
+            if(frontierSize == frontier.length) frontier = Arrays.copyOf(frontier, frontierSize * 2);
+            frontier[frontierSize++] = state;
+        }
+        bucketSize[slot] = 0;
+    }
+
+    /**
+     * Helper method which empties every thread's buffer into the buckets of the states' new times
+     */
+    private void collect(){
+        step++;
+        for(RequestBuffer buffer : buffers){
+            for(int i = 0; i < buffer.size; i++){
+                int state = buffer.states[i];
+                if(stamp[state] == step) continue;
+                stamp[state] = step;
+                if(!reached[state]){
+                    reached[state] = true;
+                    touchedStates[touchedCount++] = state;
+                }
+                int slot = (int) (bucketOf(getStateTime(state)) % buckets.length);
+                if(bucketSize[slot] == buckets[slot].length) buckets[slot] = Arrays.copyOf(buckets[slot], bucketSize[slot] * 2);
+                buckets[slot][bucketSize[slot]++] = state;
+            }
+            buffer.size = 0;
+        }
+    }
+
+
+    /**
+     * Helper method which relaxes every edge leaving a station, from any thread
+     * @param station the index of the station
+     * @param line the line the station was reached on, -1 at the source
+     * @param time the time the station was reached at
+     * @param buffer where the states whose time dropped are added
+     */
+    private void relaxEdges(int station, int line, float time, RequestBuffer buffer){
+        int last = graph.getFirstEdge(station + 1);
+        for(int edge = graph.getFirstEdge(station); edge < last; edge++){
+            if(graph.isClosed(graph.getTarget(edge))) continue;
+            float newTime = time + graph.getTime(edge);
+            if(line >= 0 && line != graph.getLine(edge)){
+                newTime += OneToAllSearch.CHANGE_TIME;
+            }
+            int next = graph.getArrivalState(edge);
+            long packed = pack(newTime, edge);
+            long current = best.get(next);
+            // Lowering the packed value keeps the shortest time, and the lowest edge among equal times
+            while(packed < current && !best.compareAndSet(next, current, packed)){
+                current = best.get(next);
+            }
+            if(packed < current && newTime < Float.intBitsToFloat((int) (current >>> 32))) buffer.add(next);
+        }
+    }
+
+
+    /**
+     * Helper method which works out the state each reached state was reached from, in parallel.
+     * It is the first state of the parent edge's station which gives the state its time through that edge,
+     * or the source itself when the edge leaves the source without a change
+     */
+    private void findParents(){
+        if(touchedCount > STATES_PER_TASK * 4){
+            pool.invoke(new RangeTask<Void>(0, touchedCount, STATES_PER_TASK * 4, this::findPreviousStates));
+        }else{
+            findPreviousStates(0, touchedCount);
+        }
+        for(int i = 0; i < touchedCount; i++){
+            int state = touchedStates[i];
+            int station = graph.getStateStation(state);
+            stationTime[station] = Math.min(stationTime[station], getStateTime(state));
+        }
+        stationTime[source] = 0;
+    }
+
+    /**
+     * Helper method which finds the state one reached state was reached from
+     * @param state the index of the state
+     * @return the index of the previous state, -1 if it was reached straight from the source
+     */
+    private int findPrevious(int state){
+        int edge = getParentEdge(state);
+        int station = edgeSource[edge];
+        float time = getStateTime(state);
+        if(station == source && 0f + graph.getTime(edge) == time) return -1;
+        for(int from = graph.getFirstState(station); from < graph.getFirstState(station + 1); from++){
+            float fromTime = getStateTime(from);
+            if(fromTime == Float.POSITIVE_INFINITY) continue;
+            float newTime = fromTime + graph.getTime(edge);
+            if(graph.getStateLine(from) != graph.getLine(edge)){
+                newTime += OneToAllSearch.CHANGE_TIME;
+            }
+            if(newTime == time) return from;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Helper method which clears the results of the last search
+     */
+    private void reset(){
+        for(int i = 0; i < touchedCount; i++){
+            int state = touchedStates[i];
+            best.set(state, UNREACHED);
+            reached[state] = false;
+            stationTime[graph.getStateStation(state)] = Float.POSITIVE_INFINITY;
+        }
+        touchedCount = 0;
+        phases = 0;
+        if(source >= 0) stationTime[source] = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Helper method which works out the bucket of a time
+     * @param time the time in minutes
+     * @return the number of the bucket, counting from the source
+     */
+    private long bucketOf(float time){
+        return (long) (time / delta);
+    }
+
+    /**
+     * Helper method which packs a time and an edge so that comparing the longs compares the times first.
+     * Times are never negative, and the bits of positive floats are in the same order as the floats
+     * @param time the time in minutes
+     * @param edge the index of the edge, -1 for none
+     * @return the packed time and edge
+     */
+    private static long pack(float time, int edge){
+        return ((long) Float.floatToRawIntBits(time) << 32) | (edge & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * The states one thread improved during a step, grown as needed and kept between searches
+     */
+    private static class RequestBuffer {
+        int[] states = new int[64];
+        int size;
+        int search = -1; // The search the buffer was last added to
+
+        void add(int state){
+            if(size == states.length) states = Arrays.copyOf(states, size * 2);
+            states[size++] = state;
+        }
+    }
+
+    /**
+     * Helper method which relaxes a range of the frontier on this thread, as one leaf of the task over the frontier
+     * @param first the position of the first state
+     * @param last the position after the last state
+     * @return null, the improved states go to this thread's buffer
+     */
+    private Void relaxFrontier(int first, int last){
+        RequestBuffer buffer = buffer();
+        for(int i = first; i < last; i++){
+            int state = frontier[i];
+            relaxEdges(graph.getStateStation(state), graph.getStateLine(state), getStateTime(state), buffer);
+        }
+        return null;
+    }
+
+    /**
+     * Helper method which finds the previous state of a range of the reached states, as one leaf of the task over them
+     * @param first the position of the first reached state
+     * @param last the position after the last reached state
+     * @return null, the previous states are stored
+     */
+    private Void findPreviousStates(int first, int last){
+        for(int i = first; i < last; i++){
+            int state = touchedStates[i];
+            previousState[state] = findPrevious(state);
+        }
+        return null;
+    }
+
+
+    /**
+     * getter for the shortest time to a station found by the last search
+     * @param station the index of the station
+     * @return the journey time in minutes, Float.POSITIVE_INFINITY if the station can't be reached
+     */
+    public float getTime(int station){
+        return stationTime[station];
+    }
+
+    /**
+     * getter for the shortest time to a state found by the last search
+     * @param state the index of the state
+     * @return the time in minutes, Float.POSITIVE_INFINITY if the state can't be reached
+     */
+    public float getStateTime(int state){
+        return Float.intBitsToFloat((int) (best.get(state) >>> 32));
+    }
+
+    /**
+     * getter for the edge a state is reached by on its shortest route
+     * @param state the index of the state
+     * @return the index of the edge, -1 if the state can't be reached
+     */
+    public int getParentEdge(int state){
+        return (int) best.get(state);
+    }
+
+    /**
+     * getter for the state a state is reached from on its shortest route
+     * @param state the index of the state
+     * @return the index of the previous state, -1 if the state is reached straight from the source
+     */
+    public int getPreviousState(int state){
+        return previousState[state];
+    }
+
+    /**
+     * getter for the number of states the last search reached
+     * @return the number of reached states
+     */
+    public int getReachedCount(){
+        return touchedCount;
+    }
+
+    /**
+     * getter for the number of steps the last search took, each relaxing one frontier in parallel
+     * @return the number of steps
+     */
+    public int getPhaseCount(){
+        return phases;
+    }
+
+    /**
+     * getter for the width of the buckets, which is wider than asked for if the ring would have needed too many
+     * @return the width in minutes
+     */
+    public float getDelta(){
+        return delta;
+    }
+
+    /**
+     * getter for the network being searched
+     * @return the PackedNetwork
+     */
+    public PackedNetwork getGraph(){
+        return this.graph;
+    }
+
+
+    /**
+     * Checks the parallel search against OneToAllSearch from a sample of stations, with a station closed,
+     * and times both
+     * @param args the network CSV file, then optionally the number of sources, the bucket width and the number of threads.
+     *             It exits with status 1 if any time or parent differs
+     * @throws IOException if the network file can't be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java DeltaSteppingSearch <network.csv> [sources] [delta] [threads]");
+            return;
+        }
+        Graph network = new LazyGraphReader().getGraph(args[0]);
+        int sources = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(3);
+        Node closed = network.getHeaNode();
+        for(int i = random.nextInt(network.getSize()); i > 0; i--) closed = closed.getNxtNode();
+        network.addClosure(closed.getID());
+        CompactGraph graph = new CompactGraph(network);
+        float delta = args.length > 2 ? Float.parseFloat(args[2]) : averageTime(graph);
+        ForkJoinPool pool = args.length > 3 ? new ForkJoinPool(Integer.parseInt(args[3])) : ForkJoinPool.commonPool();
+
+        OneToAllSearch dijkstra = new OneToAllSearch(graph);
+        DeltaSteppingSearch parallel;
+        try{
+            parallel = new DeltaSteppingSearch(graph, delta, pool);
+        } catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            return;
+        }
+        long dijkstraTime = 0;
+        long parallelTime = 0;
+        long phases = 0;
+        int mismatches = 0;
+        for(int i = 0; i < sources; i++){
+            int source = random.nextInt(graph.getStationCount());
+            long t0 = System.nanoTime();
+            dijkstra.run(source);
+            long t1 = System.nanoTime();
+            parallel.run(source);
+            long t2 = System.nanoTime();
+            dijkstraTime += t1 - t0;
+            parallelTime += t2 - t1;
+            phases += parallel.getPhaseCount();
+            for(int station = 0; station < graph.getStationCount(); station++){
+                if(Float.compare(dijkstra.getTime(station), parallel.getTime(station)) != 0) mismatches++;
+            }
+            for(int state = 0; state < graph.getStateCount(); state++){
+                if(Float.compare(dijkstra.getStateTime(state), parallel.getStateTime(state)) != 0) mismatches++;
+                else if(parallel.getParentEdge(state) >= 0 && !isTight(graph, parallel, state)) mismatches++;
+            }
+        }
+        System.out.printf("Buckets of %.2f minutes on %d threads, %d steps per search%n", delta, pool.getParallelism(), phases / sources);
+        System.out.printf("OneToAllSearch: %.2f ms per search%n", dijkstraTime / 1e6 / sources);
+        System.out.printf("DeltaSteppingSearch: %.2f ms per search%n", parallelTime / 1e6 / sources);
+        System.out.println(mismatches + " times differ from OneToAllSearch or parents are off a shortest route, over " + sources + " searches");
+        if(mismatches > 0) System.exit(1);
+    }
+
+    /**
+     * Helper method which checks a state's parent edge and previous state give exactly its time
+     * @param graph the network
+     * @param search the search which reached the state
+     * @param state the index of the state
+     * @return true if the parent is on a shortest route
+     */
+    private static boolean isTight(PackedNetwork graph, DeltaSteppingSearch search, int state){
+        int edge = search.getParentEdge(state);
+        int previous = search.getPreviousState(state);
+        if(graph.getArrivalState(edge) != state) return false;
+        if(previous < 0) return search.edgeSource[edge] == search.source && graph.getTime(edge) == search.getStateTime(state);
+        float time = search.getStateTime(previous) + graph.getTime(edge);
+        if(graph.getStateLine(previous) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+        return search.edgeSource[edge] == graph.getStateStation(previous) && time == search.getStateTime(state);
+    }
+
+}
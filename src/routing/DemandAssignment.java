@@ -0,0 +1,286 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import javax.swing.JTextArea;
+
+
+/**
+ * Assigns the trips of a demand CSV to the network: every trip takes the shortest route, with the same costs
+ * as ShortestRoute, and the trips using each edge and each line are added up.
+ * The demand is read one origin at a time by DemandReader and each group is routed with one search from its origin,
+ * whose shortest path tree serves every destination in the group. Only a few groups are held at once,
+ * so the whole matrix never has to be in memory.
+ * Groups are routed on a fork-join pool while the next ones are read, and the totals are kept in adders
+ * which the threads add to without locking
+ */
+public class DemandAssignment {
+
+    private static final int PAIRS_PER_GROUP = 65536; // the most pairs routed from one search
+    private static final int GROUPS_PER_THREAD = 4; // groups read ahead for each thread of the pool
+
+    private Graph network; // The graph the stations of the demand are looked up in
+    private CompactGraph graph;
+    private LineTransferIndex lines;
+    private int[] edgeIndex; // The index in the CompactGraph of each Edge, by edge id
+    private DoubleAdder[] edgeTrips; // The trips using each edge
+    private DoubleAdder[] lineTrips; // The trips using each edge of each line, added over its edges
+    private DoubleAdder[] boardings; // The trips boarding each line, at the origin or at a change of line
+    private DoubleAdder assigned = new DoubleAdder();
+    private DoubleAdder unrouted = new DoubleAdder(); // Trips with no route, because of closures or a disconnected network
+    private ConcurrentLinkedQueue<Buffers> idle = new ConcurrentLinkedQueue<>(); // Buffers not in use by any thread
+
+
+    /**
+     * Creates an instance of DemandAssignment for the network with its current delays and closures
+     * @param graph the graph to route on
+     */
+    public DemandAssignment(Graph graph){
+        this.network = graph;
+        this.graph = new CompactGraph(graph);
+        this.lines = graph.getLineTransferIndex();
+        edgeIndex = new int[graph.getEdgeIdCount()];
+        Arrays.fill(edgeIndex, -1);
+        edgeTrips = new DoubleAdder[this.graph.getEdgeCount()];
+        for(int edge = 0; edge < edgeTrips.length; edge++){
+            edgeIndex[this.graph.getEdgeId(edge)] = edge;
+            edgeTrips[edge] = new DoubleAdder();
+        }
+        lineTrips = new DoubleAdder[lines.getLineCount()];
+        boardings = new DoubleAdder[lines.getLineCount()];
+        for(int line = 0; line < lineTrips.length; line++){
+            lineTrips[line] = new DoubleAdder();
+            boardings[line] = new DoubleAdder();
+        }
+    }
+
+
+    /**
+     * Assigns the trips of a demand CSV on the common fork-join pool, adding to the totals of earlier calls
+     * @param demand the CSV to read
+     * @throws IOException if the demand can't be read
+     */
+    public void assign(Reader demand) throws IOException{
+        assign(demand, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Assigns the trips of a demand CSV on the given fork-join pool, adding to the totals of earlier calls
+     * @param demand the CSV to read
+     * @param pool the pool to run the searches on
+     * @throws IOException if the demand can't be read
+     */
+    public void assign(Reader demand, ForkJoinPool pool) throws IOException{
+        assign(new DemandReader(demand, network, PAIRS_PER_GROUP), pool);
+    }
+
+    /**
+     * Assigns the trips of a DemandReader on the given fork-join pool, adding to the totals of earlier calls
+     * @param reader the reader of the demand
+     * @param pool the pool to run the searches on
+     * @throws IOException if the demand can't be read
+     */
+    public void assign(DemandReader reader, ForkJoinPool pool) throws IOException{
+        // Reading stops while every permit is taken, so only a few groups are in memory at once
+        int permits = pool.getParallelism() * GROUPS_PER_THREAD;
+        Semaphore inFlight = new Semaphore(permits);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try{
+            DemandReader.OriginTrips group;
+            while(failure.get() == null && (group = reader.readGroup()) != null){
+                inFlight.acquireUninterruptibly();
+                DemandReader.OriginTrips trips = group;
+                pool.execute(() -> {
+                    try{
+                        route(trips);
+                    } catch(RuntimeException e){
+                        failure.compareAndSet(null, e);
+                    } finally{
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally{
+            // Wait for the groups still being routed
+            inFlight.acquireUninterruptibly(permits);
+            inFlight.release(permits);
+        }
+        if(failure.get() != null) throw failure.get();
+    }
+
+
+    /**
+     * Helper method which routes the trips of one group from the shortest path tree of its origin
+     * @param group the trips from one origin
+     */
+    private void route(DemandReader.OriginTrips group){
+        Buffers buffers = idle.poll();
+        if(buffers == null) buffers = new Buffers();
+        OneToAllSearch search = buffers.search;
+        double[] stateTrips = buffers.stateTrips;
+
+        int source = group.getOrigin();
+        search.run(source);
+        // Each trip ends in the state with the shortest time at its destination
+        double routed = 0;
+        double noRoute = 0;
+        for(int i = 0; i < group.getCount(); i++){
+            int destination = group.getDestination(i);
+            float trips = group.getTrips(i);
+            float time = search.getTime(destination);
+            if(time == Float.POSITIVE_INFINITY){
+                noRoute += trips;
+                continue;
+            }
+            routed += trips;
+            if(destination == source) continue;
+            int state = graph.getFirstState(destination);
+            while(search.getStateTime(state) != time) state++;
+            stateTrips[state] += trips;
+        }
+        assigned.add(routed);
+        unrouted.add(noRoute);
+
+        // Pass the trips back up the tree from the last settled state, so each edge is added to once
+        for(int i = search.getSettledCount() - 1; i >= 0; i--){
+            int state = search.getSettledState(i);
+            double trips = stateTrips[state];
+            if(trips == 0) continue;
+            stateTrips[state] = 0;
+            int edge = search.getParentEdge(state);
+            int line = graph.getLine(edge);
+            edgeTrips[edge].add(trips);
+            lineTrips[line].add(trips);
+            int previous = search.getPreviousState(state);
+            if(previous < 0 || graph.getStateLine(previous) != line) boardings[line].add(trips);
+            if(previous >= 0) stateTrips[previous] += trips;
+        }
+        idle.offer(buffers);
+    }
+
+
+    /**
+     * getter for the trips assigned to an edge
+     * @param edge the edge of the graph
+     * @return the number of trips using the edge, 0 if the edge was added after the assignment was created
+     */
+    public double getTrips(Edge edge){
+        if(edge.getId() < 0 || edge.getId() >= edgeIndex.length || edgeIndex[edge.getId()] < 0) return 0;
+        return edgeTrips[edgeIndex[edge.getId()]].sum();
+    }
+
+    /**
+     * getter for the trips using the edges of a line, added over its edges
+     * @param line the name of the line
+     * @return the number of trips times the edges they use on the line
+     */
+    public double getLineTrips(String line){
+        int id = lines.getLineId(line);
+        return id < 0 || id >= lineTrips.length ? 0 : lineTrips[id].sum();
+    }
+
+    /**
+     * getter for the trips boarding a line, at their origin or at a change of line
+     * @param line the name of the line
+     * @return the number of boardings
+     */
+    public double getBoardings(String line){
+        int id = lines.getLineId(line);
+        return id < 0 || id >= boardings.length ? 0 : boardings[id].sum();
+    }
+
+    /**
+     * getter for the trips given a route
+     * @return the number of trips
+     */
+    public double getAssignedTrips(){
+        return assigned.sum();
+    }
+
+    /**
+     * getter for the trips with no route, because a station is closed or can't be reached
+     * @return the number of trips
+     */
+    public double getUnroutedTrips(){
+        return unrouted.sum();
+    }
+
+
+    /**
+     * Writes the totals as a report, with every line and the busiest edges
+     * @param limit the most edges to list
+     * @return the report text
+     */
+    public String formatReport(int limit){
+        StringBuilder report = new StringBuilder("*** Demand Assignment ***\n");
+        report.append(String.format("%.0f trips assigned, %.0f trips without a route\n", getAssignedTrips(), getUnroutedTrips()));
+        for(int line = 0; line < lineTrips.length; line++){
+            // A line left without edges has no name in the snapshot
+            if(graph.getLineName(line) == null) continue;
+            report.append(String.format("%s line: %.0f boardings, %.0f trips over its edges\n",
+                    graph.getLineName(line), boardings[line].sum(), lineTrips[line].sum()));
+        }
+
+        List<Integer> busiest = new ArrayList<>();
+        for(int edge = 0; edge < edgeTrips.length; edge++){
+            if(edgeTrips[edge].sum() > 0) busiest.add(edge);
+        }
+        busiest.sort((a, b) -> Double.compare(edgeTrips[b].sum(), edgeTrips[a].sum()));
+        for(int i = 0; i < Math.min(limit, busiest.size()); i++){
+            int edge = busiest.get(i);
+            int from = 0;
+            while(graph.getFirstEdge(from + 1) <= edge) from++;
+            report.append(String.format("%d. %s to %s (%s): %.0f trips\n", i + 1, graph.getStationName(from),
+                    graph.getStationName(graph.getTarget(edge)), graph.getLineName(graph.getLine(edge)), edgeTrips[edge].sum()));
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * The buffers one thread uses for a group, which are handed to the next group once it is done
+     */
+    private class Buffers {
+        private OneToAllSearch search = new OneToAllSearch(graph);
+        private double[] stateTrips = new double[graph.getStateCount()]; // The trips ending at or passing each state
+    }
+
+
+    /**
+     * Assigns the trips of a demand CSV to a network from a CSV file and prints the totals
+     * @param args the network CSV file, the demand CSV file and optionally the number of edges to list
+     */
+    public static void main(String[] args){
+        if(args.length < 2){
+            System.out.println("Usage: java DemandAssignment <network.csv> <demand.csv> [edges to list]");
+            return;
+        }
+        JTextArea errors = new JTextArea();
+        Graph graph = new CSVReader().getGraph(args[0], errors);
+        if(!errors.getText().isEmpty()){
+            System.out.print(errors.getText());
+            return;
+        }
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        long start = System.nanoTime();
+        DemandAssignment assignment = new DemandAssignment(graph);
+        try(FileReader demand = new FileReader(args[1])){
+            assignment.assign(demand);
+        } catch(IOException e){
+            System.out.println("The demand matrix can't be read: " + e.getMessage());
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.print(assignment.formatReport(limit));
+        System.out.println("Assigned in " + millis + " ms");
+    }
+
+}
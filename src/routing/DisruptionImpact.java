@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Finds which journeys a proposed disruption makes slower, by comparing the shortest journey time
+ * between every pair of stations before and after it.
+ * The proposed disruption is an overlay, so the graph is not changed.
+ * The search from each origin runs on a fork-join pool. When the disruption only adds delays and closures,
+ * an origin whose shortest routes use no delayed edge and no newly closed station keeps all its times,
+ * so it is not searched again after the disruption
+ */
+public class DisruptionImpact {
+
+    private static final int SOURCES_PER_TASK = 8; // origins searched by one task before it stops splitting
+    private static final float EPSILON = 1e-4f; // smaller differences in time are rounding, not delays
+
+    private CompactGraph before;
+    private CompactGraph after;
+    private boolean[] delayedEdges; // Edges which are slower after the disruption
+    private boolean[] newlyClosed; // Stations which are only closed after the disruption
+    private boolean canPrune; // false if the disruption also makes something faster or reopens a station
+    private List<Impact> impacts = new ArrayList<>();
+    private AtomicInteger searchedAgain = new AtomicInteger();
+
+
+    /**
+     * Creates an instance of DisruptionImpact
+     * @param graph the network with its current delays and closures
+     * @param proposed the network with the proposed disruption added, as an overlay of the graph
+     */
+    public DisruptionImpact(Graph graph, NetworkOverlay proposed){
+        // Both snapshots are taken in one hold of the graph, so no update comes between them and their edges line up
+        synchronized(graph){
+            this.before = new CompactGraph(graph);
+            this.after = new CompactGraph(graph, proposed);
+        }
+
+        // Compare the two snapshots to find what the disruption changes
+        canPrune = true;
+        delayedEdges = new boolean[before.getEdgeCount()];
+        for(int edge = 0; edge < delayedEdges.length; edge++){
+            delayedEdges[edge] = after.getTime(edge) > before.getTime(edge);
+            if(after.getTime(edge) < before.getTime(edge)) canPrune = false;
+        }
+        newlyClosed = new boolean[before.getStationCount()];
+        for(int station = 0; station < newlyClosed.length; station++){
+            newlyClosed[station] = after.isClosed(station) && !before.isClosed(station);
+            if(before.isClosed(station) && !after.isClosed(station)) canPrune = false;
+        }
+    }
+
+
+    /**
+     * Compares every pair of stations on the common fork-join pool
+     * @return the journeys which are slower, the most delayed first
+     */
+    public List<Impact> run(){
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compares every pair of stations on the given fork-join pool
+     * @param pool the pool to run the searches on
+     * @return the journeys which are slower, the most delayed first
+     */
+    public List<Impact> run(ForkJoinPool pool){
+        searchedAgain.set(0);
+        impacts = pool.invoke(new RangeTask<>(0, before.getStationCount(), SOURCES_PER_TASK, this::compareOrigins,
+                (left, right) -> {
+                    right.addAll(left);
+                    return right;
+                }));
+        impacts.sort(Comparator.comparingDouble((Impact impact) -> impact.getIncrease()).reversed()
+                .thenComparing(impact -> impact.from)
+                .thenComparing(impact -> impact.to));
+        return impacts;
+    }
+
+
+    /**
+     * Helper method which checks if a disruption can change any journey time from an origin
+     * @param search the search from the origin before the disruption
+     * @param source the index of the origin
+     * @param marks the marks of the states on the shortest routes, equal to source + 1 once marked
+     * @return true if the shortest route to some station uses a delayed edge or a newly closed station
+     */
+    private boolean isAffected(OneToAllSearch search, int source, int[] marks){
+        if(!canPrune || newlyClosed[source]) return true;
+        // Times can only grow, so a station keeps its time if one of its shortest routes is unchanged.
+        // Follow the tree back from the best state of every station, checking each edge once
+        for(int station = 0; station < before.getStationCount(); station++){
+            float time = search.getTime(station);
+            if(station == source || time == Float.POSITIVE_INFINITY) continue;
+            int state = before.getFirstState(station);
+            while(search.getStateTime(state) != time) state++;
+
+            while(state >= 0 && marks[state] != source + 1){
+                marks[state] = source + 1;
+                int edge = search.getParentEdge(state);
+                if(delayedEdges[edge] || newlyClosed[before.getStateStation(state)]) return true;
+                // The parent edge leaves the station of the state it was relaxed from, which is on the route too
+                state = search.getPreviousState(state);
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Helper method which compares the journeys from one origin
+     * @param source the index of the origin
+     * @param beforeSearch the search to use on the network before the disruption
+     * @param afterSearch the search to use on the network after the disruption
+     * @param marks the marks used by isAffected
+     * @param found the list the slower journeys are added to
+     */
+    private void compare(int source, OneToAllSearch beforeSearch, OneToAllSearch afterSearch, int[] marks, List<Impact> found){
+        beforeSearch.run(source);
+        if(!isAffected(beforeSearch, source, marks)) return;
+
+        afterSearch.run(source);
+        searchedAgain.incrementAndGet();
+        for(int station = 0; station < before.getStationCount(); station++){
+            if(station == source) continue;
+            float oldTime = beforeSearch.getTime(station);
+            float newTime = afterSearch.getTime(station);
+            if(oldTime != Float.POSITIVE_INFINITY && newTime > oldTime + EPSILON){
+                found.add(new Impact(before.getStationName(source), before.getStationName(station), oldTime, newTime));
+            }
+        }
+    }
+
+
+    /**
+     * getter for the number of origins searched again after the disruption
+     * @return the number of origins which could be affected, the others were pruned
+     */
+    public int getSearchedAgain(){
+        return searchedAgain.get();
+    }
+
+    /**
+     * getter for the number of origins
+     * @return the number of stations
+     */
+    public int getOriginCount(){
+        return before.getStationCount();
+    }
+
+
+    /**
+     * Writes the slower journeys found by the last run as a report, the most delayed first
+     * @param limit the most journeys to list
+     * @return the report text
+     */
+    public String formatReport(int limit){
+        StringBuilder report = new StringBuilder("*** Disruption Impact ***\n");
+        report.append(impacts.size() + " journeys are slower. " + getSearchedAgain() + " of " + getOriginCount()
+                + " origins could be affected, the others were not searched again\n");
+        for(int i = 0; i < Math.min(limit, impacts.size()); i++){
+            report.append(impacts.get(i) + "\n");
+        }
+        if(impacts.size() > limit){
+            report.append("... and " + (impacts.size() - limit) + " more\n");
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * Helper method which compares the journeys from a range of origins, as one leaf of the task over every origin
+     * @param first the first origin
+     * @param last the origin after the last
+     * @return the journeys from the range which are slower
+     */
+    private List<Impact> compareOrigins(int first, int last){
+        // The searches are reused for every origin in the range
+        OneToAllSearch beforeSearch = new OneToAllSearch(before);
+        OneToAllSearch afterSearch = new OneToAllSearch(after);
+        int[] marks = new int[before.getStateCount()];
+        List<Impact> found = new ArrayList<>();
+        for(int source = first; source < last; source++){
+            compare(source, beforeSearch, afterSearch, marks, found);
+        }
+        return found;
+    }
+
+
+    /**
+     * A journey which is slower after the disruption
+     */
+    public static class Impact {
+        String from;
+        String to;
+        float before;
+        float after;
+
+        public Impact(String from, String to, float before, float after){
+            this.from = from;
+            this.to = to;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * getter for the extra time of the journey
+         * @return the increase in minutes, Float.POSITIVE_INFINITY if there is no route any more
+         */
+        public float getIncrease(){
+            return after - before;
+        }
+
+        @Override
+        public String toString(){
+            if(after == Float.POSITIVE_INFINITY){
+                return from + " to " + to + ": " + before + " mins, no route any more";
+            }
+            return from + " to " + to + ": " + before + " -> " + after + " mins (+" + String.format("%.1f", getIncrease()) + ")";
+        }
+    }
+
+}
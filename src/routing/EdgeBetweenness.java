@@ -0,0 +1,306 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.swing.JTextArea;
+
+
+/**
+ * Estimates the load on every tram segment as its edge betweenness: the share of the shortest journeys between
+ * every pair of stations which use it. Journeys are found with the same costs as ShortestRoute, over the
+ * (station, line) states of a CompactGraph, so a change of line costs two minutes.
+ * When several routes are equally short, a journey is split between them evenly.
+ * Each pair of stations counts as one journey, or as its number of trips when a demand matrix is given.
+ *
+ * This is Brandes' algorithm: one search from each origin counts the shortest routes to every state,
+ * then the states are visited from the last settled back to the origin, passing each journey's share
+ * back along the edges it arrived by. Origins are spread over a fork-join pool, each task adds up its loads
+ * in its own array, and the arrays are added together as the tasks finish
+ */
+public class EdgeBetweenness {
+
+    private static final int SOURCES_PER_TASK = 8; // origins searched by one task before it stops splitting
+    private static final float EPSILON = 1e-4f; // smaller differences in time are rounding, so the routes are equally short
+
+    private CompactGraph graph;
+    private DemandMatrix demand; // null to count every pair of stations once
+    private double[] load = new double[0]; // The journeys using each edge, found by the last run
+    private List<Segment> segments = new ArrayList<>();
+
+
+    /**
+     * Creates an instance of EdgeBetweenness counting every pair of stations as one journey
+     * @param graph the network with its current delays and closures
+     */
+    public EdgeBetweenness(Graph graph){
+        this(graph, null);
+    }
+
+    /**
+     * Creates an instance of EdgeBetweenness weighting each pair of stations by its trips
+     * @param graph the network with its current delays and closures
+     * @param demand the trips between the stations of the graph, null to count every pair once
+     */
+    public EdgeBetweenness(Graph graph, DemandMatrix demand){
+        this.graph = new CompactGraph(graph);
+        this.demand = demand;
+    }
+
+
+    /**
+     * Finds the load on every segment on the common fork-join pool
+     * @return the segments with any load, the busiest first
+     */
+    public List<Segment> run(){
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the load on every segment on the given fork-join pool
+     * @param pool the pool to run the searches on
+     * @return the segments with any load, the busiest first
+     */
+    public List<Segment> run(ForkJoinPool pool){
+        load = pool.invoke(new RangeTask<>(0, graph.getStationCount(), SOURCES_PER_TASK, this::loadOrigins,
+                (left, right) -> {
+                    for(int edge = 0; edge < right.length; edge++) right[edge] += left[edge];
+                    return right;
+                }));
+
+        segments = new ArrayList<>();
+        for(int station = 0; station < graph.getStationCount(); station++){
+            for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+                if(load[edge] <= 0) continue;
+                segments.add(new Segment(graph.getStationName(station), graph.getStationName(graph.getTarget(edge)),
+                        graph.getLineName(graph.getLine(edge)), load[edge]));
+            }
+        }
+        segments.sort(Comparator.comparingDouble((Segment segment) -> segment.load).reversed()
+                .thenComparing(segment -> segment.from)
+                .thenComparing(segment -> segment.to));
+        return segments;
+    }
+
+
+    /**
+     * Helper method which adds the journeys from one origin to the load of each edge
+     * @param source the index of the origin
+     * @param search the search to use
+     * @param buffers the buffers of the task
+     * @param load the loads of the task, by edge
+     */
+    private void addOrigin(int source, OneToAllSearch search, Buffers buffers, double[] load){
+        if(graph.isClosed(source) || (demand != null && demand.getDestinationCount(source) == 0)) return;
+        search.run(source);
+        double[] routes = buffers.routes;
+        double[] share = buffers.share;
+        float[] trips = buffers.trips;
+        if(demand != null) demand.getRow(source, trips);
+
+        // Count the shortest routes to each state in the order they were settled, so every
+        // state before it on a shortest route is already counted
+        for(int i = 0; i < search.getSettledCount(); i++){
+            routes[search.getSettledState(i)] = 0;
+        }
+        for(int edge = graph.getFirstEdge(source); edge < graph.getFirstEdge(source + 1); edge++){
+            int next = graph.getArrivalState(edge);
+            // The first edge from the source never counts as a change of line
+            if(isTight(search, graph.getTime(edge), next)) routes[next]++;
+        }
+        for(int i = 0; i < search.getSettledCount(); i++){
+            int state = search.getSettledState(i);
+            int station = graph.getStateStation(state);
+            if(station == source) continue;
+            for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+                int next = graph.getArrivalState(edge);
+                if(isTight(search, search.getStateTime(state) + cost(state, edge), next)) routes[next] += routes[state];
+            }
+        }
+
+        // A station is reached on its shortest routes through each of its states with the shortest time
+        double[] stationRoutes = buffers.stationRoutes;
+        for(int i = 0; i < search.getSettledCount(); i++){
+            stationRoutes[graph.getStateStation(search.getSettledState(i))] = 0;
+        }
+        for(int i = 0; i < search.getSettledCount(); i++){
+            int state = search.getSettledState(i);
+            if(isBest(search, state)) stationRoutes[graph.getStateStation(state)] += routes[state];
+        }
+
+        // Pass the journeys back from the last settled state, splitting them by the number of routes
+        for(int i = search.getSettledCount() - 1; i >= 0; i--){
+            int state = search.getSettledState(i);
+            int station = graph.getStateStation(state);
+            double passing = 0;
+            if(station != source){
+                if(isBest(search, state)){
+                    float journeys = demand == null ? 1 : trips[station];
+                    passing += journeys * routes[state] / stationRoutes[station];
+                }
+                for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+                    int next = graph.getArrivalState(edge);
+                    if(!isTight(search, search.getStateTime(state) + cost(state, edge), next)) continue;
+                    double part = share[next] * routes[state] / routes[next];
+                    load[edge] += part;
+                    passing += part;
+                }
+            }
+            share[state] = passing;
+        }
+        for(int edge = graph.getFirstEdge(source); edge < graph.getFirstEdge(source + 1); edge++){
+            int next = graph.getArrivalState(edge);
+            if(isTight(search, graph.getTime(edge), next)) load[edge] += share[next] / routes[next];
+        }
+    }
+
+
+    /**
+     * Helper method which checks if an edge is on a shortest route to the state it arrives in
+     * @param search the finished search
+     * @param time the time the state is reached at by the edge
+     * @param state the index of the state
+     * @return true if the time is the shortest time to the state
+     */
+    private boolean isTight(OneToAllSearch search, float time, int state){
+        float best = search.getStateTime(state);
+        return best != Float.POSITIVE_INFINITY && Math.abs(time - best) <= EPSILON;
+    }
+
+    /**
+     * Helper method which checks if a state has the shortest time of its station, so journeys can end there
+     * @param search the finished search
+     * @param state the index of the state
+     * @return true if the state is on a shortest route to its station
+     */
+    private boolean isBest(OneToAllSearch search, int state){
+        return search.getStateTime(state) <= search.getTime(graph.getStateStation(state)) + EPSILON;
+    }
+
+    /**
+     * Helper method which finds the time of an edge taken from a state, with the change of line if there is one
+     * @param state the state the edge is taken from
+     * @param edge the index of the edge
+     * @return the time in minutes
+     */
+    private float cost(int state, int edge){
+        float time = graph.getTime(edge);
+        if(graph.getStateLine(state) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+        return time;
+    }
+
+
+    /**
+     * getter for the load on an edge found by the last run
+     * @param edge the index of the edge in the CompactGraph, which is the order of the edges in the graph
+     * @return the number of journeys using the edge
+     */
+    public double getLoad(int edge){
+        return load[edge];
+    }
+
+
+    /**
+     * Writes the segments found by the last run as a report, the busiest first
+     * @param limit the most segments to list
+     * @return the report text
+     */
+    public String formatReport(int limit){
+        StringBuilder report = new StringBuilder("*** Segment Load ***\n");
+        report.append(demand == null ? "Every pair of stations counts as one journey\n"
+                : String.format("Weighted by %.0f trips of demand\n", demand.getTotalTrips()));
+        for(int i = 0; i < Math.min(limit, segments.size()); i++){
+            report.append((i + 1) + ". " + segments.get(i) + "\n");
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * The buffers one task reuses for every origin
+     */
+    private class Buffers {
+        private double[] routes = new double[graph.getStateCount()]; // The number of shortest routes to each state
+        private double[] share = new double[graph.getStateCount()]; // The journeys passing through each state
+        private double[] stationRoutes = new double[graph.getStationCount()]; // The number of shortest routes to each station
+        private float[] trips = new float[graph.getStationCount()]; // The trips from the origin to each station
+    }
+
+
+    /**
+     * Helper method which adds up the loads from a range of origins, as one leaf of the task over every origin
+     * @param first the first origin
+     * @param last the origin after the last
+     * @return the load on each edge from the origins of the range
+     */
+    private double[] loadOrigins(int first, int last){
+        // The search and the buffers are reused for every origin in the range
+        OneToAllSearch search = new OneToAllSearch(graph);
+        Buffers buffers = new Buffers();
+        double[] load = new double[graph.getEdgeCount()];
+        for(int source = first; source < last; source++){
+            addOrigin(source, search, buffers, load);
+        }
+        return load;
+    }
+
+
+    /**
+     * The load on one segment, in one direction on one line
+     */
+    public static class Segment {
+        String from;
+        String to;
+        String line;
+        double load;
+
+        public Segment(String from, String to, String line, double load){
+            this.from = from;
+            this.to = to;
+            this.line = line;
+            this.load = load;
+        }
+
+        @Override
+        public String toString(){
+            return from + " to " + to + " (" + line + "): " + String.format("%.1f", load) + " journeys";
+        }
+    }
+
+
+    /**
+     * Finds the busiest segments of a network from a CSV file and prints them
+     * @param args the network CSV file, optionally a demand CSV file and the number of segments to list
+     */
+    public static void main(String[] args){
+        if(args.length < 1){
+            System.out.println("Usage: java EdgeBetweenness <network.csv> [demand.csv] [segments to list]");
+            return;
+        }
+        JTextArea errors = new JTextArea();
+        Graph graph = new CSVReader().getGraph(args[0], errors);
+        if(!errors.getText().isEmpty()){
+            System.out.print(errors.getText());
+            return;
+        }
+        DemandMatrix demand = null;
+        if(args.length > 1){
+            try(FileReader input = new FileReader(args[1])){
+                demand = DemandMatrix.read(input, graph);
+            } catch(IOException e){
+                System.out.println("The demand matrix can't be read: " + e.getMessage());
+                return;
+            }
+        }
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        long start = System.nanoTime();
+        EdgeBetweenness betweenness = new EdgeBetweenness(graph, demand);
+        betweenness.run();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.print(betweenness.formatReport(limit));
+        System.out.println(graph.getSize() + " origins searched in " + millis + " ms");
+    }
+
+}
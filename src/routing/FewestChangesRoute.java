@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -10,6 +11,8 @@ import javax.swing.JTextArea;
 /**
  * This class finds the route with the fewest line changes using a modified Dijkstra algorithm.
  * If multiple paths have the same number of changes, the one with the lower overall time is chosen.
+ * States are kept in buckets by the number of changes they will need at least, found from the
+ * LineTransferIndex of the graph, and each bucket is searched in order of time.
  */
 
 public class FewestChangesRoute {
@@ -49,6 +52,38 @@ public class FewestChangesRoute {
      * @param end the name of the destination
      */
     public void findRoute(Graph graph, String start, String end){
+        findRoute(graph, start, end, graph.getClosedStations());
+    }
+
+
+    /**
+     * Finds the path with fewest changes between two stations in the graph and modify the maps needed
+     * to print the path, treating the given stations as closed so closures can be tried out
+     * without changing the graph
+     * @param graph the graph in which the stations are 
+     * @param start the name of the station to strat at
+     * @param end the name of the destination
+     * @param closed the indexes of the stations to treat as closed, instead of the closures of the graph
+     */
+    public void findRoute(Graph graph, String start, String end, BitSet closed){
+        findRoute(graph, start, end, new NetworkOverlay(graph, closed));
+    }
+
+
+    /**
+     * Finds the path with fewest changes between two stations in the graph and modify the maps needed
+     * to print the path, using the delays and closures of an overlay instead of those of the graph,
+     * so disruptions can be tried out without changing the graph
+     * @param graph the graph in which the stations are 
+     * @param start the name of the station to strat at
+     * @param end the name of the destination
+     * @param overlay the what-if delays and closures, which must be for the same graph
+     */
+    public void findRoute(Graph graph, String start, String end, NetworkOverlay overlay){
+        if(overlay.getGraph() != graph) throw new IllegalArgumentException("The overlay is for a different graph");
+        // Time the phases for the request being traced on this thread, if there is one
+        RequestTrace trace = RequestTrace.current();
+        if(trace != null) trace.phase(RequestTrace.Phase.LOOKUP);
 
         // Reset maps and sets before computing a new route
         this.distances.clear();
@@ -63,24 +98,52 @@ public class FewestChangesRoute {
         this.previousStationLine.put(makeKey(start, null), null);
 
         
-        // Use the priority queue to get the StationChanges with smallest value for changes
-        PriorityQueue<StationChanges> queue = new PriorityQueue<>();
-        queue.add(new StationChanges(start, 0, 0f,null));
+        // The line table gives, for every line, the fewest changes still needed to reach the end
+        LineTransferIndex transfers = graph.getLineTransferIndex();
+        int[] changesLeft = transfers.changesToStation(end);
+
+        // States are kept in buckets by their changes so far plus the changes they still need at least.
+        // Staying on a line keeps a state in its bucket and changing line moves it at most two buckets on,
+        // so the buckets are taken in order and each one is searched in order of time.
+        // The first route to reach the end has the fewest changes and the shortest time among the routes
+        // with that many changes, and routes on lines which need more changes are never looked at
+        ArrayList<PriorityQueue<StationChanges>> buckets = new ArrayList<>();
+        buckets.add(new PriorityQueue<>());
+        int bucket = 0;
+
+        // No route exists if no sequence of lines links the stations, so only search if there is one.
+        // Closed stations never enter the queue, so a closed start has no route either
+        if(transfers.minChanges(start, end) != LineTransferIndex.UNREACHABLE && !overlay.isClosed(graph.findNode(start))){
+            buckets.get(0).add(new StationChanges(start, 0, 0f,null));
+        }
+        if(trace != null) trace.phase(RequestTrace.Phase.SEARCH);
+
+        // Work counters, handed to RouteMetrics when it is enabled
+        boolean recording = RouteMetrics.enabled();
+        long startTime = recording ? System.nanoTime() : 0;
+        int settled = 0, relaxations = 0, pushes = buckets.get(0).size(), pops = 0, stalePops = 0;
+
+        while(bucket < buckets.size()){
+            // Move on to the next bucket once the current one is empty
+            PriorityQueue<StationChanges> queue = buckets.get(bucket);
+            if(queue.isEmpty()){
+                bucket++;
+                continue;
+            }
 
-        while(!queue.isEmpty()){
-            // Get the next unvisited StationChanges with fewest changes
+            // Get the next unvisited StationChanges with the shortest time in the current bucket
             StationChanges current = queue.poll();
+            pops++;
             // use (stationName, line) as a key to check all possible paths to avoid marking the station as visited when it is first reached
             String currentKey = makeKey(current.station, current.line); 
 
-            // Check if the station is open
-            if(!graph.findNode(current.station).getOpen()){
+            // Skip visited keys
+            if (visited.contains(currentKey)){
+                stalePops++;
                 continue;
             }
-            
-            // Skip visited keys
-            if (visited.contains(currentKey)) continue;
             visited.add(currentKey);
+            settled++;
 
             // When end is reached the fewest changes path is found; set endKey to currentKey
             if(current.station.equals(end)){
@@ -91,32 +154,61 @@ public class FewestChangesRoute {
             Node node = graph.findNode(current.station);
             // Check all the neighbours of the node
             for(Edge edge : node.getEdges()){
+                relaxations++;
+                // Skip closed stations before they enter the queue
+                if(overlay.isClosed(edge.getEndNode())) continue;
                 String currentLine = current.line;  
                
                 // Get the time needed to get for the neighbor via the current edge
-                float newTime = distances.getOrDefault(currentKey, Float.POSITIVE_INFINITY) + edge.getTime();
+                float newTime = current.time + overlay.getTime(edge);
                 // Changes in lines needed to get to the neighbour
-                int newChanges = changes.getOrDefault(currentKey, Integer.MAX_VALUE);
+                int newChanges = current.changes;
                 // When line changes add two mins and increase linechanges
                 if(currentLine != null && !currentLine.equals(edge.getLine())){
                     newTime +=2;
                     newChanges++;
                 }   
                 
+                // Skip lines which can't reach the end
+                int lineId = transfers.getLineId(edge.getLine());
+                if(changesLeft[lineId] == LineTransferIndex.UNREACHABLE) continue;
+
                 String neighbor = edge.getEndNode().getID();
                 String nKey = makeKey(neighbor, edge.getLine()); 
-                // If the newChanges is less than the currentchanges modify the maps and add neighbor to the queue
-                if(newChanges < changes.getOrDefault(nKey, Integer.MAX_VALUE)){
+                // If the route has fewer changes, or as many changes in less time, modify the maps and add neighbor to its bucket
+                int oldChanges = changes.getOrDefault(nKey, Integer.MAX_VALUE);
+                if(newChanges < oldChanges || (newChanges == oldChanges && newTime < distances.get(nKey))){
                     this.distances.put(nKey, newTime);
                     this.changes.put(nKey, newChanges);
                     this.previousStationLine.put(nKey, currentKey);
-                    queue.add(new StationChanges(neighbor, newChanges,newTime, edge.getLine()));
+                    int nextBucket = newChanges + changesLeft[lineId];
+                    while(buckets.size() <= nextBucket) buckets.add(new PriorityQueue<>());
+                    buckets.get(nextBucket).add(new StationChanges(neighbor, newChanges,newTime, edge.getLine()));
+                    pushes++;
                 }
                 
             }
         }
-        
-        
+
+        if(recording){
+            RouteMetrics.fewestChanges().record(System.nanoTime() - startTime, settled, relaxations, pushes, pops, stalePops);
+        }
+    }
+
+    /**
+     * getter for the journey time of the route found by the last search
+     * @return the overall journey time in minutes, Float.POSITIVE_INFINITY if no route was found
+     */
+    public float getJourneyTime(){
+        return endKey == null ? Float.POSITIVE_INFINITY : distances.get(endKey);
+    }
+
+    /**
+     * getter for the line changes of the route found by the last search
+     * @return the number of changes, -1 if no route was found
+     */
+    public int getChanges(){
+        return endKey == null ? -1 : changes.get(endKey);
     }
 
     /**
@@ -145,17 +237,37 @@ public class FewestChangesRoute {
      * @param resultArea the JTextArea in the GUI on which the result will appear
      */
     public void displayRoute(Graph graph, String start, String end, JTextArea resultArea){
+        RequestTrace trace = RequestTrace.begin("fewestChanges", graph, start, end);
+        try{
+            showRoute(graph, start, end, resultArea, trace);
+        } finally{
+            if(trace != null) trace.end();
+        }
+    }
+
+    /**
+     * Helper method which finds and displays the route with fewest changes, timing its phases
+     * @param graph the graph that represents the metrolink
+     * @param start the name of start station
+     * @param end the name of the destination
+     * @param resultArea the JTextArea in the GUI on which the result will appear
+     * @param trace the trace of the request, null if it isn't traced
+     */
+    private void showRoute(Graph graph, String start, String end, JTextArea resultArea, RequestTrace trace){
         // Call findRoute to the path with fewest changes
         findRoute(graph, start, end);
 
         // Check if no path exists
         if(endKey == null){
+            if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
             resultArea.setText("No path found between " + start + " and " + end + ".");
             return;
         }
 
         // Get the list of the keys that build the path
+        if(trace != null) trace.phase(RequestTrace.Phase.BUILD);
         ArrayList<String> finalPath = buildPath();
+        if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
 
         //StirngBuilder to build the final result
         StringBuilder resultString = new StringBuilder("*** Fewest Changes Route ***\n");
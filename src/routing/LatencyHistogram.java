@@ -0,0 +1,113 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A fixed size histogram of latencies in nanoseconds.
+ * Values are grouped by their highest bit and each group is split into linear buckets,
+ * so every recorded value is kept to within about 6% while the whole range of a long needs fewer than 2000 counters
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // values below this get a bucket each
+
+    private AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private AtomicLong total = new AtomicLong(); // the number of recorded values
+    private AtomicLong sum = new AtomicLong(); // the sum of the recorded values
+    private AtomicLong max = new AtomicLong(); // the largest recorded value
+
+
+    /**
+     * Records a value in the histogram
+     * @param nanos the latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+
+    /**
+     * Finds the value below which the given percentage of the recorded values fall
+     * @param percentile a value between 0 and 100
+     * @return the upper bound of the bucket which holds the percentile, zero if nothing was recorded
+     */
+    public long percentile(double percentile){
+        long count = total.get();
+        if(count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++){
+            seen += counts.get(i);
+            if(seen >= rank) return Math.min(upperBoundOf(i), max.get());
+        }
+        return max.get();
+    }
+
+
+    /**
+     * getter for the number of recorded values
+     * @return the number of values recorded since the last reset
+     */
+    public long getCount(){
+        return total.get();
+    }
+
+    /**
+     * getter for the mean of the recorded values
+     * @return the mean in nanoseconds, zero if nothing was recorded
+     */
+    public double getMean(){
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * getter for the largest recorded value
+     * @return the largest value in nanoseconds
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+
+    /**
+     * Clears all the recorded values
+     */
+    public void reset(){
+        for(int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+
+    /**
+     * Helper method which finds the bucket of a value
+     * @param value a non-negative value
+     * @return the index of the bucket
+     */
+    private int bucketOf(long value){
+        if(value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Helper method which finds the largest value that falls in a bucket
+     * @param bucket the index of the bucket
+     * @return the upper bound of the bucket
+     */
+    private long upperBoundOf(int bucket){
+        if(bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS;
+        long lower = (long) (bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+}
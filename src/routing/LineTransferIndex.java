@@ -0,0 +1,309 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Summarises the network at the level of lines: which lines serve each station, the interchange stations
+ * where two lines meet, and the fewest changes needed to get from any line to any other.
+ * The fewest changes between two stations only depends on the lines serving them, so it is a table lookup.
+ * Closures are not taken into account, so the table is a lower bound once stations are closed
+ */
+public class LineTransferIndex {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    public static final int STORE_VERSION = 1; // the version of the format of toBuffer, changed if it or the line ids change
+
+    private Map<String, Integer> lineIds = new HashMap<>(); // Maps each line name to its index
+    private List<String> lineNames = new ArrayList<>(); // The line names by index
+    private Map<String, int[]> stationLines = new HashMap<>(); // Maps each station to the indexes of the lines serving it
+    private Map<String, List<String>> interchanges = new HashMap<>(); // Maps "line::line" to the stations where both lines stop
+    private int[][] changes; // changes[a][b] is the fewest changes to get from line a to line b
+
+
+    /**
+     * Creates an instance of LineTransferIndex for the lines of the graph
+     * @param graph the graph to index
+     */
+    public LineTransferIndex(Graph graph){
+        // Find the lines serving each station
+        Map<String, LinkedHashSet<Integer>> lines = new HashMap<>();
+        for(Node node = graph.getHeaNode(); node != null; node = node.getNxtNode()){
+            LinkedHashSet<Integer> served = new LinkedHashSet<>();
+            for(Edge edge : node.getEdges()){
+                served.add(lineIds.computeIfAbsent(edge.getLine(), line -> {
+                    lineNames.add(line);
+                    return lineNames.size() - 1;
+                }));
+            }
+            lines.put(node.getID(), served);
+        }
+
+        // Two lines are adjacent if they both stop at a station
+        int lineCount = lineNames.size();
+        boolean[][] adjacent = new boolean[lineCount][lineCount];
+        for(Map.Entry<String, LinkedHashSet<Integer>> station : lines.entrySet()){
+            int[] served = station.getValue().stream().mapToInt(Integer::intValue).toArray();
+            stationLines.put(station.getKey(), served);
+            for(int a : served){
+                for(int b : served){
+                    if(a == b) continue;
+                    adjacent[a][b] = true;
+                    interchanges.computeIfAbsent(makeKey(lineNames.get(a), lineNames.get(b)), k -> new ArrayList<>())
+                            .add(station.getKey());
+                }
+            }
+        }
+
+        // Breadth first search from every line over the line adjacency
+        changes = new int[lineCount][lineCount];
+        for(int from = 0; from < lineCount; from++){
+            Arrays.fill(changes[from], UNREACHABLE);
+            changes[from][from] = 0;
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(from);
+            while(!queue.isEmpty()){
+                int line = queue.poll();
+                for(int next = 0; next < lineCount; next++){
+                    if(adjacent[line][next] && changes[from][next] == UNREACHABLE){
+                        changes[from][next] = changes[from][line] + 1;
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Creates an instance of LineTransferIndex from the data written by toBuffer
+     * @param data the saved index, read from its position
+     * @throws IllegalArgumentException if the data holds counts, line ids or changes which can't be right
+     */
+    public LineTransferIndex(ByteBuffer data){
+        int lineCount = data.getInt();
+        if(lineCount < 0 || (long) lineCount * lineCount * Integer.BYTES > data.remaining()){
+            throw new IllegalArgumentException("The saved index has " + lineCount + " lines, which don't fit in it");
+        }
+        for(int line = 0; line < lineCount; line++){
+            lineNames.add(readString(data));
+            lineIds.put(lineNames.get(line), line);
+        }
+        changes = new int[lineCount][lineCount];
+        for(int from = 0; from < lineCount; from++){
+            data.asIntBuffer().get(changes[from]);
+            data.position(data.position() + lineCount * Integer.BYTES);
+            for(int to = 0; to < lineCount; to++){
+                int count = changes[from][to];
+                boolean valid = count == UNREACHABLE ? from != to : count >= 0 && count < lineCount && (count == 0) == (from == to);
+                if(!valid){
+                    throw new IllegalArgumentException("The saved index has " + count + " changes from line " + from + " to " + to);
+                }
+            }
+        }
+
+        int stationCount = data.getInt();
+        if(stationCount < 0) throw new IllegalArgumentException("The saved index has " + stationCount + " stations");
+        for(int i = 0; i < stationCount; i++){
+            String station = readString(data);
+            int[] served = new int[data.getInt()];
+            for(int j = 0; j < served.length; j++){
+                served[j] = data.getInt();
+                if(served[j] < 0 || served[j] >= lineCount){
+                    throw new IllegalArgumentException("The saved index has line " + served[j] + " at " + station);
+                }
+            }
+            stationLines.put(station, served);
+            for(int a : served){
+                for(int b : served){
+                    if(a == b) continue;
+                    interchanges.computeIfAbsent(makeKey(lineNames.get(a), lineNames.get(b)), k -> new ArrayList<>())
+                            .add(station);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes the index so it can be saved and read back by the ByteBuffer constructor.
+     * The interchanges are not written, since they are found again from the lines serving each station
+     * @return the data, in native byte order, ready to be read
+     */
+    public ByteBuffer toBuffer(){
+        int size = Integer.BYTES * (2 + lineNames.size() * (1 + lineNames.size()));
+        for(String line : lineNames) size += line.getBytes(StandardCharsets.UTF_8).length;
+        for(Map.Entry<String, int[]> station : stationLines.entrySet()){
+            size += Integer.BYTES * (2 + station.getValue().length) + station.getKey().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        data.putInt(lineNames.size());
+        for(String line : lineNames) writeString(data, line);
+        for(int[] row : changes){
+            for(int count : row) data.putInt(count);
+        }
+        data.putInt(stationLines.size());
+        for(Map.Entry<String, int[]> station : stationLines.entrySet()){
+            writeString(data, station.getKey());
+            data.putInt(station.getValue().length);
+            for(int line : station.getValue()) data.putInt(line);
+        }
+        return data.flip();
+    }
+
+    /**
+     * Helper method which writes a string as its length in bytes and its UTF-8 bytes
+     * @param data the buffer to write to
+     * @param text the string to write
+     */
+    private static void writeString(ByteBuffer data, String text){
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        data.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Helper method which reads a string written by writeString
+     * @param data the buffer to read from
+     * @return the string
+     */
+    private static String readString(ByteBuffer data){
+        int length = data.getInt();
+        if(length < 0 || length > data.remaining()) throw new IllegalArgumentException("The saved index has a string of " + length + " bytes");
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Helper method which creates a key made up of two line names
+     * @param line1 the first line
+     * @param line2 the second line
+     * @return the combined key as "line1::line2"
+     */
+    private String makeKey(String line1, String line2){
+        return line1 + "::" + line2;
+    }
+
+
+    /**
+     * Checks the index was built from the edges of a graph: every station is served by the same lines,
+     * and every line of an edge has an id
+     * @param graph the graph
+     * @return true if the index is the one the graph would build
+     */
+    public boolean matches(Graph graph){
+        int stations = 0;
+        LinkedHashSet<Integer> served = new LinkedHashSet<>();
+        for(Node node = graph.getHeaNode(); node != null; node = node.getNxtNode()){
+            // The constructor keeps the last node of a duplicate name, which isn't in the station index
+            if(graph.findNode(node.getID()) != node) continue;
+            stations++;
+            int[] lines = stationLines.get(node.getID());
+            if(lines == null) return false;
+            served.clear();
+            for(Edge edge : node.getEdges()){
+                int line = getLineId(edge.getLine());
+                if(line < 0) return false;
+                served.add(line);
+            }
+            if(served.size() != lines.length) return false;
+            for(int line : lines){
+                if(!served.contains(line)) return false;
+            }
+        }
+        return stations == stationLines.size();
+    }
+
+
+    /**
+     * getter for the number of lines
+     * @return the number of distinct lines in the graph
+     */
+    public int getLineCount(){
+        return lineNames.size();
+    }
+
+    /**
+     * Finds the index of a line
+     * @param line the name of the line
+     * @return the index of the line, -1 if no edge uses it
+     */
+    public int getLineId(String line){
+        return lineIds.getOrDefault(line, -1);
+    }
+
+    /**
+     * Finds the stations where two lines meet
+     * @param line1 the name of the first line
+     * @param line2 the name of the second line
+     * @return the interchange stations, empty if the lines don't meet
+     */
+    public List<String> getInterchanges(String line1, String line2){
+        return interchanges.getOrDefault(makeKey(line1, line2), Collections.emptyList());
+    }
+
+    /**
+     * Finds the fewest changes needed to get from one line to another
+     * @param line1 the name of the line to start on
+     * @param line2 the name of the line to end on
+     * @return the number of changes, UNREACHABLE if the lines aren't connected
+     */
+    public int getChanges(String line1, String line2){
+        int a = getLineId(line1);
+        int b = getLineId(line2);
+        return a < 0 || b < 0 ? UNREACHABLE : changes[a][b];
+    }
+
+
+    /**
+     * Finds the fewest changes needed between two stations by looking them up in the line table
+     * @param start the name of the start station
+     * @param end the name of the destination
+     * @return the number of changes, UNREACHABLE if there is no route
+     */
+    public int minChanges(String start, String end){
+        if(start.equals(end)) return 0;
+        int[] startLines = stationLines.get(start);
+        int[] endLines = stationLines.get(end);
+        if(startLines == null || endLines == null) return UNREACHABLE;
+
+        int best = UNREACHABLE;
+        for(int a : startLines){
+            for(int b : endLines){
+                best = Math.min(best, changes[a][b]);
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Finds, for every line, the fewest changes needed to reach a line serving the destination
+     * @param end the name of the destination
+     * @return an array indexed by line, holding UNREACHABLE for lines which can't reach the destination
+     */
+    public int[] changesToStation(String end){
+        int[] result = new int[getLineCount()];
+        Arrays.fill(result, UNREACHABLE);
+        int[] endLines = stationLines.get(end);
+        if(endLines == null) return result;
+
+        for(int line = 0; line < result.length; line++){
+            for(int b : endLines){
+                result[line] = Math.min(result[line], changes[line][b]);
+            }
+        }
+        return result;
+    }
+
+}
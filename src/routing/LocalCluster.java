@@ -0,0 +1,167 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Starts several PlannerWorker processes on this machine, each in its own JVM with the same classpath,
+ * for trying out and testing a PlannerCoordinator without real nodes.
+ * Running it checks the cluster against a planner in this process: it sends random delays, closures and queries
+ * through a coordinator, compares every answer, then stops a worker and checks the queries move to the others
+ */
+public class LocalCluster implements AutoCloseable {
+
+    private static final long START_TIMEOUT_MILLIS = 60000; // how long a worker may take to load the network
+
+    private List<Process> processes = new ArrayList<>();
+    private List<InetSocketAddress> addresses = new ArrayList<>();
+
+
+    /**
+     * Starts the workers, waiting until each one is listening
+     * @param networkFile the network CSV file every worker loads
+     * @param workers the number of workers
+     * @throws IOException if a worker can't be started or doesn't start listening in time
+     */
+    public LocalCluster(String networkFile, int workers) throws IOException{
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        try{
+            for(int i = 0; i < workers; i++){
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "PlannerWorker", networkFile, "0")
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                processes.add(process);
+            }
+            // The workers load the network at the same time, then each prints the port it got
+            for(Process process : processes){
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), waitForPort(process)));
+            }
+        } catch(IOException e){
+            close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Helper method which waits for a worker to print its port, then keeps reading what it prints so it never blocks
+     * @param process the worker
+     * @return the port the worker listens on
+     * @throws IOException if the worker ends or takes too long
+     */
+    private static int waitForPort(Process process) throws IOException{
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        String line;
+        while((line = output.readLine()) != null){
+            if(line.startsWith("Worker ready on port ")){
+                int port = Integer.parseInt(line.substring("Worker ready on port ".length()).trim());
+                Thread drain = new Thread(() -> {
+                    try{
+                        while(output.readLine() != null){
+                            // Discard the rest of the worker's output
+                        }
+                    } catch(IOException e){
+                        // The worker ended
+                    }
+                }, "planner-worker-output");
+                drain.setDaemon(true);
+                drain.start();
+                return port;
+            }
+            if(System.currentTimeMillis() > deadline) break;
+        }
+        throw new IOException("A worker did not start");
+    }
+
+
+    /**
+     * getter for the addresses of the workers, to give to a PlannerCoordinator
+     * @return the address of each worker, in the order they were started
+     */
+    public List<InetSocketAddress> getAddresses(){
+        return addresses;
+    }
+
+    /**
+     * Stops one worker, as if its node had failed
+     * @param worker the position of the worker
+     */
+    public void stopWorker(int worker){
+        processes.get(worker).destroy();
+        try{
+            processes.get(worker).waitFor();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops every worker
+     */
+    @Override
+    public void close(){
+        for(Process process : processes) process.destroy();
+    }
+
+
+    /**
+     * Starts a cluster and checks its answers against a planner in this process
+     * @param args the network CSV file, then optionally the number of workers and the number of queries per round
+     * @throws IOException if the network file can't be read or the cluster can't be started
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java LocalCluster <network.csv> [workers] [queries]");
+            return;
+        }
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Graph local = new LazyGraphReader().getGraph(args[0]);
+        String[] stations = new String[local.getSize()];
+        for(Node node = local.getHeaNode(); node != null; node = node.getNxtNode()) stations[node.getIndex()] = node.getID();
+
+        try(LocalCluster cluster = new LocalCluster(args[0], workers)){
+            System.out.println(workers + " workers started on " + cluster.getAddresses());
+            PlannerCoordinator coordinator = new PlannerCoordinator(cluster.getAddresses());
+            Random random = new Random(7);
+            int mismatches = 0;
+            int answered = 0;
+            for(int round = 0; round < 4; round++){
+                if(round == 2){
+                    cluster.stopWorker(0);
+                    System.out.println("Stopped the worker on " + cluster.getAddresses().get(0));
+                }
+                // Each round starts with a delay and a closure, applied to the cluster and the local planner alike
+                Node node = local.findNode(stations[random.nextInt(stations.length)]);
+                Edge edge = node.getEdges().iterator().next();
+                coordinator.addDelay(node.getID(), edge.getEndNode().getID(), edge.getLine(), 5);
+                local.addDelay(node.getID(), edge.getEndNode().getID(), edge.getLine(), 5);
+                String closed = stations[random.nextInt(stations.length)];
+                coordinator.addClosure(closed);
+                local.addClosure(closed);
+
+                // Half the queries repeat earlier pairs, which their worker answers from its cache
+                Random pairs = new Random(round);
+                for(int i = 0; i < queries; i++){
+                    if(i == queries / 2) pairs = new Random(round);
+                    String from = stations[pairs.nextInt(stations.length)];
+                    String to = stations[pairs.nextInt(stations.length)];
+                    boolean changes = pairs.nextBoolean();
+                    String answer = coordinator.route(from, to, changes);
+                    answered++;
+                    if(!answer.equals(HeadlessPlanner.plan(local, from, to, changes))) mismatches++;
+                }
+                System.out.println("Round " + round + " at version " + coordinator.getVersion() + ":");
+                for(String stat : coordinator.getStats()) System.out.println("  " + stat);
+            }
+            System.out.println(mismatches + " of " + answered + " answers differ from the local planner");
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/**
+ * Finds the shortest journey time from one station to every other station of a packed network,
+ * with the same costs as ShortestRoute: the time of each edge plus two minutes for every change of line.
+ * The arrays are kept between searches and only the entries a search touched are reset, so one instance
+ * can run a search from every station without allocating. An instance must only be used by one thread
+ */
+public class OneToAllSearch {
+
+    public static final float CHANGE_TIME = 2; // minutes added for every change of line
+
+    private PackedNetwork graph;
+    private float[] stateTime; // The shortest time to each (station, line) state
+    private int[] parentEdge; // The edge each state was last reached by, -1 if it hasn't been reached
+    private int[] previousState; // The state each state was last reached from, -1 if it was reached from the source
+    private float[] stationTime; // The shortest time to each station, over all its states
+    private int[] touchedStates; // The states reached by the current search, so they can be reset
+    private int touchedCount;
+    private int[] settledStates; // The states in the order the current search settled them
+    private int settledCount;
+    private StateHeap heap = new StateHeap(); // The states reached but not yet settled, by time
+    private int source = -1;
+    private RelaxKernel kernel; // Relaxes the edges of busy stations, null to relax every station edge by edge
+    private CompactGraph packed; // The graph as a CompactGraph when a kernel is used, so it can read the arrays
+    private int[] improved; // The improving edges the kernel found at the current station
+    private float[] improvedTime;
+
+
+    /**
+     * Creates an instance of OneToAllSearch for a packed network, such as a CompactGraph snapshot or an OffHeapGraph.
+     * Busy stations of a CompactGraph are relaxed with the vector kernel when the JVM runs with
+     * --add-modules jdk.incubator.vector, and edge by edge otherwise
+     * @param graph the network to search
+     */
+    public OneToAllSearch(PackedNetwork graph){
+        this(graph, RelaxKernel.preferred());
+    }
+
+    /**
+     * Creates an instance of OneToAllSearch which relaxes the edges of busy stations with a kernel.
+     * The kernel reads the edge arrays of a CompactGraph, so on any other network it isn't used
+     * @param graph the network to search
+     * @param kernel the kernel for stations with at least RelaxKernel.MIN_DEGREE edges, null to relax every station edge by edge
+     */
+    public OneToAllSearch(PackedNetwork graph, RelaxKernel kernel){
+        this.graph = graph;
+        if(kernel != null && graph instanceof CompactGraph){
+            this.kernel = kernel;
+            this.packed = (CompactGraph) graph;
+            int maxDegree = 0;
+            for(int s = 0; s < graph.getStationCount(); s++){
+                maxDegree = Math.max(maxDegree, graph.getFirstEdge(s + 1) - graph.getFirstEdge(s));
+            }
+            improved = new int[maxDegree];
+            improvedTime = new float[maxDegree];
+        }
+        stateTime = new float[graph.getStateCount()];
+        parentEdge = new int[graph.getStateCount()];
+        previousState = new int[graph.getStateCount()];
+        stationTime = new float[graph.getStationCount()];
+        touchedStates = new int[graph.getStateCount()];
+        settledStates = new int[graph.getStateCount()];
+        Arrays.fill(stateTime, Float.POSITIVE_INFINITY);
+        Arrays.fill(parentEdge, -1);
+        Arrays.fill(stationTime, Float.POSITIVE_INFINITY);
+    }
+
+
+    /**
+     * Finds the shortest time from a station to every station and state.
+     * A closed source reaches nothing, not even itself
+     * @param source the index of the station to start at
+     */
+    public void run(int source){
+        run(source, null);
+    }
+
+    /**
+     * Finds the shortest time from a station to every station and state, stopping once every target station
+     * has its time. Stations not settled by then are left unreached, and states still in the queue don't have their final times
+     * @param source the index of the station to start at
+     * @param targets the indexes of the stations to find, null to search the whole network
+     */
+    public void run(int source, BitSet targets){
+        reset();
+        this.source = source;
+        if(graph.isClosed(source)) return;
+        stationTime[source] = 0;
+        int remaining = targets == null ? -1 : targets.cardinality() - (targets.get(source) ? 1 : 0);
+        if(remaining == 0) return;
+
+        // The first edge from the source never counts as a change of line
+        relaxEdges(source, -1, -1, 0f);
+        while(!heap.isEmpty()){
+            int state = heap.peekState();
+            float time = heap.peekTime();
+            heap.pop();
+            // Skip entries left behind by a shorter time to the same state
+            if(time > stateTime[state]) continue;
+
+            settledStates[settledCount++] = state;
+            // States are settled in order of time, so the first state of a station gives its time
+            int station = graph.getStateStation(state);
+            if(stationTime[station] == Float.POSITIVE_INFINITY){
+                stationTime[station] = time;
+                if(targets != null && targets.get(station) && --remaining == 0) return;
+            }
+            relaxEdges(station, state, graph.getStateLine(state), time);
+        }
+    }
+
+
+    /**
+     * Helper method which relaxes every edge leaving a station
+     * @param station the index of the station
+     * @param state the state the station was reached in, -1 at the source
+     * @param line the line the station was reached on, -1 at the source
+     * @param time the time the station was reached at
+     */
+    private void relaxEdges(int station, int state, int line, float time){
+        int first = graph.getFirstEdge(station);
+        int last = graph.getFirstEdge(station + 1);
+        if(kernel != null && last - first >= RelaxKernel.MIN_DEGREE){
+            relaxWithKernel(first, last, state, line, time);
+            return;
+        }
+        for(int edge = first; edge < last; edge++){
+            if(graph.isClosed(graph.getTarget(edge))) continue;
+            float newTime = time + graph.getTime(edge);
+            if(line >= 0 && line != graph.getLine(edge)){
+                newTime += CHANGE_TIME;
+            }
+            int next = graph.getArrivalState(edge);
+            if(newTime < stateTime[next]){
+                if(parentEdge[next] < 0) touchedStates[touchedCount++] = next;
+                stateTime[next] = newTime;
+                parentEdge[next] = edge;
+                previousState[next] = state;
+                heap.push(next, newTime);
+            }
+        }
+    }
+
+
+    /**
+     * Helper method which relaxes the edges of a busy station with the kernel. The kernel only finds the edges
+     * which improve on the times before the station, so each one is checked again as it is applied, in edge order,
+     * which gives the same times and parents as relaxing edge by edge
+     * @param first the first edge of the station
+     * @param last the end of the edges of the station
+     * @param state the state the station was reached in, -1 at the source
+     * @param line the line the station was reached on, -1 at the source
+     * @param time the time the station was reached at
+     */
+    private void relaxWithKernel(int first, int last, int state, int line, float time){
+        int count = kernel.relax(packed.getEdgeTimes(), packed.getEdgeLines(), packed.getArrivalStates(), stateTime,
+                first, last, line, time, improved, improvedTime);
+        for(int i = 0; i < count; i++){
+            int edge = improved[i];
+            if(graph.isClosed(graph.getTarget(edge))) continue;
+            int next = graph.getArrivalState(edge);
+            float newTime = improvedTime[i];
+            if(newTime < stateTime[next]){
+                if(parentEdge[next] < 0) touchedStates[touchedCount++] = next;
+                stateTime[next] = newTime;
+                parentEdge[next] = edge;
+                previousState[next] = state;
+                heap.push(next, newTime);
+            }
+        }
+    }
+
+
+    /**
+     * Helper method which clears the results of the last search
+     */
+    private void reset(){
+        for(int i = 0; i < touchedCount; i++){
+            int state = touchedStates[i];
+            stateTime[state] = Float.POSITIVE_INFINITY;
+            parentEdge[state] = -1;
+            stationTime[graph.getStateStation(state)] = Float.POSITIVE_INFINITY;
+        }
+        touchedCount = 0;
+        settledCount = 0;
+        heap.clear();
+        if(source >= 0) stationTime[source] = Float.POSITIVE_INFINITY;
+    }
+
+
+
+
+    /**
+     * getter for the shortest time to a station found by the last search
+     * @param station the index of the station
+     * @return the journey time in minutes, Float.POSITIVE_INFINITY if the station can't be reached
+     */
+    public float getTime(int station){
+        return stationTime[station];
+    }
+
+    /**
+     * getter for the shortest time to a state found by the last search
+     * @param state the index of the state
+     * @return the time in minutes, Float.POSITIVE_INFINITY if the state can't be reached
+     */
+    public float getStateTime(int state){
+        return stateTime[state];
+    }
+
+    /**
+     * getter for the edge a state is reached by on its shortest route, which together form the shortest path tree
+     * @param state the index of the state
+     * @return the index of the edge, -1 if the state can't be reached
+     */
+    public int getParentEdge(int state){
+        return parentEdge[state];
+    }
+
+    /**
+     * getter for the state a state is reached from on its shortest route
+     * @param state the index of the state
+     * @return the index of the previous state, -1 if the state is reached straight from the source
+     */
+    public int getPreviousState(int state){
+        return previousState[state];
+    }
+
+    /**
+     * getter for the number of states the last search reached
+     * @return the number of settled states
+     */
+    public int getSettledCount(){
+        return settledCount;
+    }
+
+    /**
+     * getter for the states of the last search in the order they were settled, which is the order of their times
+     * @param i the position in the order, from 0 up to getSettledCount()
+     * @return the index of the state
+     */
+    public int getSettledState(int i){
+        return settledStates[i];
+    }
+
+    /**
+     * getter for the network being searched
+     * @return the PackedNetwork
+     */
+    public PackedNetwork getGraph(){
+        return this.graph;
+    }
+
+}
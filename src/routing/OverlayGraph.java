@@ -0,0 +1,363 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * An overlay of a network split into cells, for answering shortest time queries on networks too big to search whole.
+ * The stations are split with CellPartition. A state a connection from another cell arrives in is an entry of its cell,
+ * and a connection leaving the cell is an exit. For every cell the overlay keeps the shortest time from each entry,
+ * through the cell, along each exit and into the entry on the other side, so an OverlayQuery only searches the cells
+ * of its start and destination and jumps across every other cell in one step.
+ * Working out those times is the customisation. It is done for every cell when the overlay is built, and after that
+ * the overlay listens to the graph: a delay or closure only marks the cells the changed connection or station is in.
+ * Those cells are customised again on the fork-join pool when the next query asks for the times, so an update never
+ * holds the graph for longer than it takes to note the new times. Each customisation makes a new Metric, so queries
+ * which already started keep the times they began with
+ */
+public class OverlayGraph implements NetworkListener {
+
+    private static final int CELLS_PER_TASK = 16; // cells customised by one task before the range is split, when building
+
+    private Graph network;
+    private CompactGraph graph;
+    private CellPartition cells;
+    private int[] firstEntry; // The entries of cell c are entryState[firstEntry[c]] up to entryState[firstEntry[c + 1]]
+    private int[] entryState;
+    private int[] entryIndex; // The position of each state among the entries of its cell, -1 if it isn't an entry
+    private int[] firstExit; // The exits of cell c are exitEdge[firstExit[c]] up to exitEdge[firstExit[c + 1]]
+    private int[] exitEdge;
+    private int[] exitStation; // The station each exit leaves from
+    private ForkJoinPool pool;
+    private volatile Metric metric; // The latest customised times, only replaced while holding the overlay
+    private long customisations; // Cells customised since the overlay was built, counting the first customisation
+    private Object updates = new Object(); // Guards the times below, which the graph's updates are written into
+    private float[] latestTime; // The time of each edge after the graph's latest update
+    private boolean[] latestClosed; // Whether each station is closed after the graph's latest update
+    private BitSet dirtyCells; // The cells changed by updates since the last customisation
+    private volatile boolean stale; // True while dirtyCells has cells, so queries can skip the lock when it hasn't
+
+    /**
+     * The edge times and closures the overlay was customised for, with the times across each cell.
+     * A Metric is never changed once it is published, so a query can keep using the one it started with
+     */
+    static class Metric {
+        final float[] edgeTime; // The time of each edge of the snapshot
+        final boolean[] closed; // Whether each station is closed
+        final float[][] cliques; // For each cell, the time from entry i along exit j, at [i * exits + j]
+
+        Metric(float[] edgeTime, boolean[] closed, float[][] cliques){
+            this.edgeTime = edgeTime;
+            this.closed = closed;
+            this.cliques = cliques;
+        }
+    }
+
+
+    /**
+     * Creates an overlay of a graph, with cells of about twice the square root of the number of stations,
+     * and customises it on the common fork-join pool
+     * @param network the graph, whose delays and closures the overlay follows until it is detached
+     */
+    public OverlayGraph(Graph network){
+        this(network, Math.max(8, (int) (2 * Math.sqrt(network.getSize()))), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an overlay of a graph and customises it
+     * @param network the graph, whose delays and closures the overlay follows until it is detached
+     * @param maxCellSize the most stations a cell may hold
+     * @param pool the fork-join pool the cells are customised on, when building and after updates
+     */
+    public OverlayGraph(Graph network, int maxCellSize, ForkJoinPool pool){
+        this.network = network;
+        this.pool = pool;
+        float[] edgeTime;
+        boolean[] closed;
+        // Hold the graph while the snapshot is taken so no update is missed before the listener is added
+        synchronized(network){
+            graph = new CompactGraph(network);
+            cells = new CellPartition(graph, maxCellSize);
+            findBoundary();
+            edgeTime = new float[graph.getEdgeCount()];
+            for(int e = 0; e < edgeTime.length; e++) edgeTime[e] = graph.getTime(e);
+            closed = new boolean[graph.getStationCount()];
+            for(int s = 0; s < closed.length; s++) closed[s] = graph.isClosed(s);
+            latestTime = edgeTime.clone();
+            latestClosed = closed.clone();
+            dirtyCells = new BitSet();
+            network.addListener(this);
+        }
+
+        // Updates arriving from here on are only noted, and customised when the first query asks for the times
+        int[] all = new int[cells.getCellCount()];
+        for(int c = 0; c < all.length; c++) all[c] = c;
+        Metric base = new Metric(edgeTime, closed, new float[cells.getCellCount()][]);
+        pool.invoke(new RangeTask<Void>(0, all.length, CELLS_PER_TASK, (first, last) -> customiseCells(base, all, first, last)));
+        synchronized(this){
+            customisations += all.length;
+            metric = base;
+        }
+    }
+
+
+    /**
+     * Helper method which finds the entries and exits of every cell
+     */
+    private void findBoundary(){
+        int cellCount = cells.getCellCount();
+        entryIndex = new int[graph.getStateCount()];
+        Arrays.fill(entryIndex, -1);
+        boolean[] entry = new boolean[graph.getStateCount()];
+        firstEntry = new int[cellCount + 1];
+        firstExit = new int[cellCount + 1];
+        for(int s = 0; s < graph.getStationCount(); s++){
+            int cell = cells.getCell(s);
+            for(int e = graph.getFirstEdge(s); e < graph.getFirstEdge(s + 1); e++){
+                int target = graph.getTarget(e);
+                if(cells.getCell(target) == cell) continue;
+                firstExit[cell + 1]++;
+                int state = graph.getArrivalState(e);
+                if(!entry[state]){
+                    entry[state] = true;
+                    firstEntry[cells.getCell(target) + 1]++;
+                }
+            }
+        }
+        for(int c = 0; c < cellCount; c++){
+            firstEntry[c + 1] += firstEntry[c];
+            firstExit[c + 1] += firstExit[c];
+        }
+
+        entryState = new int[firstEntry[cellCount]];
+        exitEdge = new int[firstExit[cellCount]];
+        exitStation = new int[firstExit[cellCount]];
+        int[] nextEntry = firstEntry.clone();
+        int[] nextExit = firstExit.clone();
+        for(int state = 0; state < graph.getStateCount(); state++){
+            if(!entry[state]) continue;
+            int cell = cells.getCell(graph.getStateStation(state));
+            entryIndex[state] = nextEntry[cell] - firstEntry[cell];
+            entryState[nextEntry[cell]++] = state;
+        }
+        for(int s = 0; s < graph.getStationCount(); s++){
+            int cell = cells.getCell(s);
+            for(int e = graph.getFirstEdge(s); e < graph.getFirstEdge(s + 1); e++){
+                if(cells.getCell(graph.getTarget(e)) == cell) continue;
+                exitStation[nextExit[cell]] = s;
+                exitEdge[nextExit[cell]++] = e;
+            }
+        }
+    }
+
+
+    /**
+     * Notes the times and closures of an update to the graph and marks the cells it touched, which are
+     * customised when the next query asks for the times. It runs while the graph is held, so it does no searching
+     * @param network the graph which changed
+     * @param changes the changes made by the update
+     * @param version the version of the graph after the update
+     */
+    @Override
+    public void networkChanged(Graph network, List<NetworkDelta> changes, long version){
+        synchronized(updates){
+            for(NetworkDelta change : changes){
+                int station = findStation(change.getStation());
+                if(station < 0) continue;
+                if(change.getType() != NetworkDelta.Type.DELAY){
+                    latestClosed[station] = change.getType() == NetworkDelta.Type.CLOSURE;
+                    dirtyCells.set(cells.getCell(station));
+                    continue;
+                }
+                int other = findStation(change.getOtherStation());
+                if(other < 0) continue;
+                // A delay changes both directions, and each belongs to the cell it leaves from
+                if(setTime(latestTime, station, other, change.getLine(), change.getNewTime())) dirtyCells.set(cells.getCell(station));
+                if(setTime(latestTime, other, station, change.getLine(), change.getNewTime())) dirtyCells.set(cells.getCell(other));
+            }
+            if(!dirtyCells.isEmpty()) stale = true;
+        }
+    }
+
+
+    /**
+     * Helper method which customises the cells marked by updates on the pool, and publishes the new times.
+     * Only one customisation runs at a time, and updates noted while it runs wait for the next one
+     * @return the latest Metric
+     */
+    private synchronized Metric customiseUpdates(){
+        float[] edgeTime;
+        boolean[] closed;
+        int[] dirty;
+        synchronized(updates){
+            if(!stale) return metric;
+            edgeTime = latestTime.clone();
+            closed = latestClosed.clone();
+            dirty = dirtyCells.stream().toArray();
+            dirtyCells.clear();
+            stale = false;
+        }
+        Metric updated = new Metric(edgeTime, closed, metric.cliques.clone());
+        // A cell takes a search from each of its entries, so every dirty cell gets a task of its own
+        pool.invoke(new RangeTask<Void>(0, dirty.length, 1, (first, last) -> customiseCells(updated, dirty, first, last)));
+        customisations += dirty.length;
+        metric = updated;
+        return updated;
+    }
+
+
+    /**
+     * Helper method which customises some of the cells into a Metric, with one search reused for all of them
+     * @param metric the Metric whose cliques are filled in
+     * @param cellList the numbers of the cells to customise
+     * @param first the first position in cellList
+     * @param last the position after the last in cellList
+     * @return null, the cliques are written into the Metric
+     */
+    private Void customiseCells(Metric metric, int[] cellList, int first, int last){
+        OverlayQuery search = new OverlayQuery(this);
+        for(int i = first; i < last; i++){
+            metric.cliques[cellList[i]] = search.customise(metric, cellList[i]);
+        }
+        return null;
+    }
+
+
+    /**
+     * Helper method which sets the time of the edge between two stations on a line
+     * @param edgeTime the edge times being updated
+     * @param from the index of the station the edge leaves
+     * @param to the index of the station the edge arrives at
+     * @param line the name of the line
+     * @param time the new time
+     * @return true if the edge was found
+     */
+    private boolean setTime(float[] edgeTime, int from, int to, String line, float time){
+        boolean found = false;
+        for(int e = graph.getFirstEdge(from); e < graph.getFirstEdge(from + 1); e++){
+            if(graph.getTarget(e) == to && graph.getLineName(graph.getLine(e)).equals(line)){
+                edgeTime[e] = time;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Stops following the graph's updates, after which the overlay keeps the times it has
+     */
+    public void detach(){
+        network.removeListener(this);
+    }
+
+
+    /**
+     * Finds the index of a station in the snapshot
+     * @param name the name of the station
+     * @return the index, -1 if the snapshot has no such station
+     */
+    public int findStation(String name){
+        Node node = name == null ? null : network.findNode(name);
+        if(node == null || node.getIndex() >= graph.getStationCount()) return -1;
+        return node.getIndex();
+    }
+
+
+    /**
+     * getter for the snapshot the overlay was built on
+     * @return the CompactGraph whose stations, edges and states the overlay uses
+     */
+    public CompactGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * getter for the cells of the stations
+     * @return the CellPartition of the snapshot
+     */
+    public CellPartition getCells(){
+        return cells;
+    }
+
+    /**
+     * getter for the times the next query will use, customising first the cells changed since the last query
+     * @return the latest Metric
+     */
+    Metric getMetric(){
+        return stale ? customiseUpdates() : metric;
+    }
+
+    /**
+     * getter for the position of the first entry of a cell
+     * @param cell the number of the cell
+     * @return the position of its first entry, which is also the end of the entries of the cell before
+     */
+    public int getFirstEntry(int cell){
+        return firstEntry[cell];
+    }
+
+    /**
+     * getter for an entry
+     * @param entry the position of the entry
+     * @return the index of its state
+     */
+    public int getEntryState(int entry){
+        return entryState[entry];
+    }
+
+    /**
+     * getter for the position of a state among the entries of its cell
+     * @param state the index of the state
+     * @return the position, counted from the first entry of the cell, -1 if the state isn't an entry
+     */
+    public int getEntryIndex(int state){
+        return entryIndex[state];
+    }
+
+    /**
+     * getter for the position of the first exit of a cell
+     * @param cell the number of the cell
+     * @return the position of its first exit, which is also the end of the exits of the cell before
+     */
+    public int getFirstExit(int cell){
+        return firstExit[cell];
+    }
+
+    /**
+     * getter for the edge of an exit
+     * @param exit the position of the exit
+     * @return the index of the edge in the snapshot
+     */
+    public int getExitEdge(int exit){
+        return exitEdge[exit];
+    }
+
+    /**
+     * getter for the station an exit leaves from
+     * @param exit the position of the exit
+     * @return the index of the station
+     */
+    public int getExitStation(int exit){
+        return exitStation[exit];
+    }
+
+    /**
+     * getter for the number of entries of all the cells
+     * @return the number of entry states, which are the stops of the overlay
+     */
+    public int getEntryCount(){
+        return entryState.length;
+    }
+
+    /**
+     * getter for the number of cells customised so far, so the cost of updates can be watched
+     * @return the cells customised when the overlay was built plus the ones customised after updates,
+     *  which only counts updates a query has asked for the times of
+     */
+    public synchronized long getCustomisations(){
+        return customisations;
+    }
+
+}
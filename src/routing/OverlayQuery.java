@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Finds the shortest journey between two stations on an OverlayGraph, with the same costs as ShortestRoute.
+ * Only the cells of the start and destination are searched edge by edge. Any other cell is entered at one of its
+ * entries and left straight along one of its exits, using the times the overlay worked out for the cell.
+ * The route is found by searching again only the cells it jumped across.
+ * The arrays are kept between queries and only the entries a query touched are reset.
+ * An instance must only be used by one thread, but many instances can share one overlay
+ */
+public class OverlayQuery {
+
+    private OverlayGraph overlay;
+    private CompactGraph graph;
+    private float[] stateTime; // The shortest time to each (station, line) state
+    private int[] parentEdge; // The edge each state was last reached by, an exit edge if it was reached across a cell
+    private int[] previousState; // The state each state was last reached from, -1 if it was reached from the start
+    private boolean[] acrossCell; // Whether each state was last reached across a cell of the overlay
+    private int[] touchedStates; // The states reached by the current search, so they can be reset
+    private int touchedCount;
+    private StateHeap heap = new StateHeap(); // The states reached but not yet settled, by time
+    private int settledCount;
+    private float journeyTime = Float.POSITIVE_INFINITY;
+    private List<String> route = new ArrayList<>();
+
+
+    /**
+     * Creates an instance of OverlayQuery for an overlay
+     * @param overlay the overlay to search
+     */
+    public OverlayQuery(OverlayGraph overlay){
+        this.overlay = overlay;
+        this.graph = overlay.getGraph();
+        stateTime = new float[graph.getStateCount()];
+        parentEdge = new int[graph.getStateCount()];
+        previousState = new int[graph.getStateCount()];
+        acrossCell = new boolean[graph.getStateCount()];
+        touchedStates = new int[graph.getStateCount()];
+        Arrays.fill(stateTime, Float.POSITIVE_INFINITY);
+    }
+
+
+    /**
+     * Finds the shortest journey between two stations with the latest times of the overlay
+     * @param start the name of the start station
+     * @param end the name of the destination
+     */
+    public void findRoute(String start, String end){
+        journeyTime = Float.POSITIVE_INFINITY;
+        route = new ArrayList<>();
+        settledCount = 0;
+        int source = overlay.findStation(start);
+        int target = overlay.findStation(end);
+        if(source < 0 || target < 0) return;
+
+        OverlayGraph.Metric metric = overlay.getMetric();
+        if(metric.closed[source]) return;
+        if(source == target){
+            journeyTime = 0;
+            route.add(graph.getStationName(source));
+            return;
+        }
+        int state = search(metric, source, target);
+        if(state < 0) return;
+        journeyTime = stateTime[state];
+        route = unpack(metric, source, state);
+    }
+
+
+    /**
+     * Helper method which searches from a station until the destination is settled
+     * @param metric the times to use
+     * @param source the index of the start station
+     * @param target the index of the destination
+     * @return the state the destination is first reached in, -1 if it can't be reached
+     */
+    private int search(OverlayGraph.Metric metric, int source, int target){
+        reset();
+        CellPartition cells = overlay.getCells();
+        int sourceCell = cells.getCell(source);
+        int targetCell = cells.getCell(target);
+
+        // The first edge from the source never counts as a change of line
+        relaxEdges(metric, source, -1, -1, 0f, -1);
+        while(!heap.isEmpty()){
+            int state = heap.peekState();
+            float time = heap.peekTime();
+            heap.pop();
+            // Skip entries left behind by a shorter time to the same state
+            if(time > stateTime[state]) continue;
+
+            settledCount++;
+            int station = graph.getStateStation(state);
+            if(station == target) return state;
+            int cell = cells.getCell(station);
+            if(cell == sourceCell || cell == targetCell){
+                relaxEdges(metric, station, state, graph.getStateLine(state), time, -1);
+            }else{
+                // Every other cell is only ever entered at one of its entries
+                relaxCell(metric, cell, state, time);
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Helper method which relaxes the edges leaving a station
+     * @param metric the times to use
+     * @param station the index of the station
+     * @param state the state the station was reached in, -1 at the source
+     * @param line the line the station was reached on, -1 at the source
+     * @param time the time the station was reached at
+     * @param cell only edges staying in this cell are relaxed, -1 to relax every edge
+     */
+    private void relaxEdges(OverlayGraph.Metric metric, int station, int state, int line, float time, int cell){
+        for(int edge = graph.getFirstEdge(station); edge < graph.getFirstEdge(station + 1); edge++){
+            int next = graph.getTarget(edge);
+            if(metric.closed[next]) continue;
+            if(cell >= 0 && overlay.getCells().getCell(next) != cell) continue;
+            float newTime = time + metric.edgeTime[edge];
+            if(line >= 0 && line != graph.getLine(edge)){
+                newTime += OneToAllSearch.CHANGE_TIME;
+            }
+            reach(graph.getArrivalState(edge), newTime, edge, state, false);
+        }
+    }
+
+
+    /**
+     * Helper method which relaxes the jumps across a cell from one of its entries
+     * @param metric the times to use
+     * @param cell the number of the cell
+     * @param state the entry state the cell was reached in
+     * @param time the time the cell was reached at
+     */
+    private void relaxCell(OverlayGraph.Metric metric, int cell, int state, float time){
+        int firstExit = overlay.getFirstExit(cell);
+        int exits = overlay.getFirstExit(cell + 1) - firstExit;
+        float[] clique = metric.cliques[cell];
+        int row = overlay.getEntryIndex(state) * exits;
+        for(int j = 0; j < exits; j++){
+            float cost = clique[row + j];
+            int edge = overlay.getExitEdge(firstExit + j);
+            // Closures in the next cell don't customise this one again, so they are checked here
+            if(cost == Float.POSITIVE_INFINITY || metric.closed[graph.getTarget(edge)]) continue;
+            reach(graph.getArrivalState(edge), time + cost, edge, state, true);
+        }
+    }
+
+
+    /**
+     * Helper method which records a state as reached if the time is shorter than the one it has
+     * @param state the state reached
+     * @param time the time it is reached at
+     * @param edge the edge it is reached by
+     * @param previous the state it is reached from
+     * @param across true if it is reached across a cell
+     */
+    private void reach(int state, float time, int edge, int previous, boolean across){
+        if(time >= stateTime[state]) return;
+        if(stateTime[state] == Float.POSITIVE_INFINITY) touchedStates[touchedCount++] = state;
+        stateTime[state] = time;
+        parentEdge[state] = edge;
+        previousState[state] = previous;
+        acrossCell[state] = across;
+        heap.push(state, time);
+    }
+
+
+    /**
+     * Helper method which searches one cell from one of its states, without leaving the cell
+     * @param metric the times to use
+     * @param cell the number of the cell
+     * @param start the state to start from, whose line counts for the first change
+     */
+    private void searchCell(OverlayGraph.Metric metric, int cell, int start){
+        reset();
+        touchedStates[touchedCount++] = start;
+        stateTime[start] = 0;
+        parentEdge[start] = -1;
+        previousState[start] = -1;
+        heap.push(start, 0);
+        while(!heap.isEmpty()){
+            int state = heap.peekState();
+            float time = heap.peekTime();
+            heap.pop();
+            if(time > stateTime[state]) continue;
+            relaxEdges(metric, graph.getStateStation(state), state, graph.getStateLine(state), time, cell);
+        }
+    }
+
+
+    /**
+     * Helper method which finds the best way out of a cell along an exit after searchCell
+     * @param metric the times to use
+     * @param edge the exit edge
+     * @param station the station the exit leaves from
+     * @return the state of the station to leave from, -1 if the search didn't reach the station
+     */
+    private int bestExitState(OverlayGraph.Metric metric, int edge, int station){
+        int best = -1;
+        float bestTime = Float.POSITIVE_INFINITY;
+        for(int state = graph.getFirstState(station); state < graph.getFirstState(station + 1); state++){
+            float time = stateTime[state];
+            if(graph.getStateLine(state) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+            if(time < bestTime){
+                bestTime = time;
+                best = state;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Works out the times across a cell, from each entry along each exit, which is the customisation of the cell
+     * @param metric the edge times and closures to use
+     * @param cell the number of the cell
+     * @return the times, from entry i along exit j at [i * exits + j], Float.POSITIVE_INFINITY where there is no way through
+     */
+    float[] customise(OverlayGraph.Metric metric, int cell){
+        int firstEntry = overlay.getFirstEntry(cell);
+        int entries = overlay.getFirstEntry(cell + 1) - firstEntry;
+        int firstExit = overlay.getFirstExit(cell);
+        int exits = overlay.getFirstExit(cell + 1) - firstExit;
+        float[] clique = new float[entries * exits];
+        Arrays.fill(clique, Float.POSITIVE_INFINITY);
+        for(int i = 0; i < entries; i++){
+            int entry = overlay.getEntryState(firstEntry + i);
+            if(metric.closed[graph.getStateStation(entry)]) continue;
+            searchCell(metric, cell, entry);
+            for(int j = 0; j < exits; j++){
+                int edge = overlay.getExitEdge(firstExit + j);
+                int state = bestExitState(metric, edge, overlay.getExitStation(firstExit + j));
+                if(state < 0) continue;
+                float time = stateTime[state] + metric.edgeTime[edge];
+                if(graph.getStateLine(state) != graph.getLine(edge)) time += OneToAllSearch.CHANGE_TIME;
+                clique[i * exits + j] = time;
+            }
+        }
+        return clique;
+    }
+
+
+    /**
+     * Helper method which turns the result of a search into the stations of the route,
+     * searching again each cell the route jumped across to find the way through it
+     * @param metric the times the search used
+     * @param source the index of the start station
+     * @param last the state the destination was reached in
+     * @return the names of the stations from the start to the destination
+     */
+    private List<String> unpack(OverlayGraph.Metric metric, int source, int last){
+        // Copy the path out first, since searching the cells again clears it
+        ArrayList<int[]> steps = new ArrayList<>(); // {state, edge, previous state, 1 if across a cell}
+        for(int state = last; state >= 0; state = previousState[state]){
+            steps.add(new int[]{state, parentEdge[state], previousState[state], acrossCell[state] ? 1 : 0});
+        }
+
+        List<String> stations = new ArrayList<>();
+        stations.add(graph.getStationName(source));
+        for(int i = steps.size() - 1; i >= 0; i--){
+            int[] step = steps.get(i);
+            if(step[3] == 1){
+                int edge = step[1];
+                int from = graph.getStateStation(step[2]);
+                int cell = overlay.getCells().getCell(from);
+                searchCell(metric, cell, step[2]);
+                int exitStation = findExitStation(cell, edge);
+                ArrayList<String> inside = new ArrayList<>();
+                for(int state = bestExitState(metric, edge, exitStation); state != step[2]; state = previousState[state]){
+                    inside.add(graph.getStationName(graph.getStateStation(state)));
+                }
+                for(int j = inside.size() - 1; j >= 0; j--) stations.add(inside.get(j));
+            }
+            stations.add(graph.getStationName(graph.getStateStation(step[0])));
+        }
+        return stations;
+    }
+
+
+    /**
+     * Helper method which finds the station an exit edge of a cell leaves from
+     * @param cell the number of the cell
+     * @param edge the exit edge
+     * @return the index of the station
+     */
+    private int findExitStation(int cell, int edge){
+        for(int exit = overlay.getFirstExit(cell); exit < overlay.getFirstExit(cell + 1); exit++){
+            if(overlay.getExitEdge(exit) == edge) return overlay.getExitStation(exit);
+        }
+        throw new IllegalStateException("Edge " + edge + " is not an exit of cell " + cell);
+    }
+
+
+    /**
+     * Helper method which clears the results of the last search
+     */
+    private void reset(){
+        for(int i = 0; i < touchedCount; i++){
+            stateTime[touchedStates[i]] = Float.POSITIVE_INFINITY;
+        }
+        touchedCount = 0;
+        heap.clear();
+    }
+
+
+    /**
+     * getter for the journey time of the last query
+     * @return the time in minutes, Float.POSITIVE_INFINITY if there is no route
+     */
+    public float getJourneyTime(){
+        return journeyTime;
+    }
+
+    /**
+     * getter for the stations of the last query's route
+     * @return the names of the stations from the start to the destination, empty if there is no route
+     */
+    public List<String> getRoute(){
+        return route;
+    }
+
+    /**
+     * getter for the number of states the last query settled, which shows how much of the network it searched
+     * @return the number of settled states, counting stops of the overlay
+     */
+    public int getSettledCount(){
+        return settledCount;
+    }
+
+
+    /**
+     * Builds an overlay of a network and times queries on it against full searches
+     * @param args the network CSV file, then optionally the cell size and the number of queries
+     * @throws IOException if the network file can't be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java OverlayQuery <network.csv> [cell size] [queries]");
+            return;
+        }
+        Graph network = new LazyGraphReader().getGraph(args[0]);
+        int cellSize = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(8, (int) (2 * Math.sqrt(network.getSize())));
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        long start = System.nanoTime();
+        OverlayGraph overlay = new OverlayGraph(network, cellSize, ForkJoinPool.commonPool());
+        System.out.println(overlay.getCells().getCellCount() + " cells of at most " + cellSize + " stations, "
+                + overlay.getEntryCount() + " entries, built in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        CompactGraph graph = overlay.getGraph();
+        OverlayQuery query = new OverlayQuery(overlay);
+        OneToAllSearch full = new OneToAllSearch(graph);
+        Random random = new Random(1);
+        long overlayTime = 0;
+        long fullTime = 0;
+        long overlaySettled = 0;
+        long fullSettled = 0;
+        for(int i = 0; i < queries; i++){
+            int from = random.nextInt(graph.getStationCount());
+            int to = random.nextInt(graph.getStationCount());
+            long t0 = System.nanoTime();
+            query.findRoute(graph.getStationName(from), graph.getStationName(to));
+            long t1 = System.nanoTime();
+            BitSet target = new BitSet();
+            target.set(to);
+            full.run(from, target);
+            long t2 = System.nanoTime();
+            overlayTime += t1 - t0;
+            fullTime += t2 - t1;
+            overlaySettled += query.getSettledCount();
+            fullSettled += full.getSettledCount();
+        }
+        System.out.printf("Overlay: %.1f us and %d settled states per query%n", overlayTime / 1000.0 / queries, overlaySettled / queries);
+        System.out.printf("Full search: %.1f us and %d settled states per query%n", fullTime / 1000.0 / queries, fullSettled / queries);
+    }
+
+}
@@ -0,0 +1,370 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Spreads journey queries over several PlannerWorker processes, each holding a replica of the network.
+ * A query goes to the worker found by consistent hashing on its (start, end) pair, so the same journey always
+ * lands on the same worker and is answered from its cache, and adding or losing a worker only moves the
+ * queries that worker had. If that worker can't be reached the query moves on to the next worker of the ring.
+ * Delays, closures and reopenings get increasing version numbers and are sent to every worker in order.
+ * Each query carries the latest version, and a worker which missed updates, for example while it was down,
+ * answers BEHIND and is sent the updates it is missing from the coordinator's log before it answers
+ */
+public class PlannerCoordinator {
+
+    private static final int POINTS_PER_WORKER = 64; // places each worker takes on the ring, so the queries spread evenly
+    private static final long RETRY_MILLIS = 1000; // how long a worker which failed is left alone before it is tried again
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000; // how long a worker may take to accept a connection
+    private static final int READ_TIMEOUT_MILLIS = 30000; // how long a worker may take to answer, which covers the slowest search
+
+    private List<Worker> workers = new ArrayList<>();
+    private TreeMap<Integer, Worker> ring = new TreeMap<>(); // Maps points of the hash ring to the worker owning them
+    private List<String> updates = new ArrayList<>(); // The events of every update, update n at n - 1
+    private volatile long version; // the last update logged, which queries ask the workers to have applied
+
+    /**
+     * A worker and the connections to it which aren't in use
+     */
+    private static class Worker {
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+        private volatile long failedAt = -1; // when the worker last couldn't be reached, -1 if it is working
+
+        private Worker(InetSocketAddress address){
+            this.address = address;
+        }
+
+        private boolean isAvailable(){
+            return failedAt < 0 || System.currentTimeMillis() - failedAt >= RETRY_MILLIS;
+        }
+    }
+
+    /**
+     * One connection to a worker, used by one request at a time
+     */
+    private static class Connection {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        private Connection(InetSocketAddress address) throws IOException{
+            // A stalled worker or a half-open connection fails the request instead of blocking it for ever
+            socket = new Socket();
+            try{
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+            } catch(IOException e){
+                socket.close();
+                throw e;
+            }
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        private String request(String line) throws IOException{
+            out.println(line);
+            String answer = in.readLine();
+            if(answer == null) throw new IOException("The worker closed the connection");
+            return answer;
+        }
+    }
+
+
+    /**
+     * Creates an instance of PlannerCoordinator. The workers must have loaded the same network and not been updated yet
+     * @param addresses the address of each worker
+     */
+    public PlannerCoordinator(List<InetSocketAddress> addresses){
+        if(addresses.isEmpty()) throw new IllegalArgumentException("A coordinator needs at least one worker");
+        for(InetSocketAddress address : addresses){
+            Worker worker = new Worker(address);
+            workers.add(worker);
+            for(int point = 0; point < POINTS_PER_WORKER; point++){
+                ring.put(hash(address.toString() + "#" + point), worker);
+            }
+        }
+    }
+
+
+    /**
+     * Finds a journey on the worker owning its (start, end) pair, with every update sent so far applied
+     * @param from the name of the start station
+     * @param to the name of the destination
+     * @param changes true to find the fewest changes, false for the shortest time
+     * @return the answer as HeadlessPlanner prints it, From,To,minutes[,changes], none, or unknown station
+     * @throws IOException if no worker can answer
+     */
+    public String route(String from, String to, boolean changes) throws IOException{
+        String request = "ROUTE," + (changes ? "CHANGES," : "SHORTEST,") + version + "," + from + "," + to;
+        IOException failure = null;
+        for(Worker worker : findWorkers(from + "\n" + to)){
+            if(!worker.isAvailable()) continue;
+            try{
+                String answer = request(worker, request);
+                if(answer.startsWith("BEHIND,")){
+                    catchUp(worker, Long.parseLong(answer.substring(7)));
+                    answer = request(worker, request);
+                }
+                if(answer.startsWith("OK,")) return answer.substring(answer.indexOf(',', 3) + 1);
+                failure = new IOException("Worker " + worker.address + " answered " + answer);
+            } catch(IOException e){
+                worker.failedAt = System.currentTimeMillis();
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IOException("No worker is available");
+    }
+
+
+    /**
+     * Adds a delay on every replica
+     * @param from the name of the first station
+     * @param to the name of the second station
+     * @param line the line connecting the stations
+     * @param delay the delay time in minutes
+     * @return the version of the update
+     */
+    public long addDelay(String from, String to, String line, float delay){
+        return applyEvents("DELAY," + from + "," + to + "," + line + "," + delay);
+    }
+
+    /**
+     * Closes a station on every replica
+     * @param station the name of the station
+     * @return the version of the update
+     */
+    public long addClosure(String station){
+        return applyEvents("CLOSE," + station);
+    }
+
+    /**
+     * Reopens a station on every replica
+     * @param station the name of the station
+     * @return the version of the update
+     */
+    public long reopen(String station){
+        return applyEvents("REOPEN," + station);
+    }
+
+
+    /**
+     * Applies events as one update on every replica. Workers which can't be reached now get it when they are next used.
+     * The update is numbered and logged under the coordinator's lock, and sent to the workers outside it, so a slow
+     * worker only holds up the caller. A worker which gets a later update first answers BEHIND and is caught up from the log
+     * @param events the events, each a line of the disruption feed format
+     * @return the version of the update
+     */
+    public long applyEvents(String... events){
+        // Check the events here, since once the update has a version every worker must be able to read it
+        StringBuilder joined = new StringBuilder();
+        for(String event : events){
+            if(event.indexOf(';') >= 0 || event.indexOf('\n') >= 0) throw new IllegalArgumentException("Invalid event " + event);
+            if(joined.length() > 0) joined.append(';');
+            joined.append(event);
+        }
+        try{
+            DisruptionBatch batch = new DisruptionFeedReader(new StringReader(joined.toString().replace(';', '\n')), Integer.MAX_VALUE).readBatch();
+            if(batch == null || batch.getEventCount() != events.length) throw new IllegalArgumentException("The update has invalid events");
+        } catch(IOException e){
+            throw new IllegalStateException(e);
+        }
+
+        long next;
+        synchronized(this){
+            updates.add(joined.toString());
+            next = updates.size();
+            version = next;
+        }
+        for(Worker worker : workers){
+            if(!worker.isAvailable()) continue;
+            try{
+                String answer = request(worker, "UPDATE," + next + "," + joined);
+                if(answer.startsWith("BEHIND,")) catchUp(worker, Long.parseLong(answer.substring(7)));
+            } catch(IOException e){
+                worker.failedAt = System.currentTimeMillis();
+            }
+        }
+        return next;
+    }
+
+
+    /**
+     * Helper method which sends a worker the updates it is missing
+     * @param worker the worker
+     * @param applied the last update the worker has applied
+     * @throws IOException if the worker can't be reached
+     */
+    private void catchUp(Worker worker, long applied) throws IOException{
+        List<String> missing;
+        synchronized(this){
+            missing = new ArrayList<>(updates.subList((int) applied, updates.size()));
+        }
+        for(int i = 0; i < missing.size(); i++){
+            String answer = request(worker, "UPDATE," + (applied + i + 1) + "," + missing.get(i));
+            if(!answer.startsWith("OK,")) throw new IOException("Worker " + worker.address + " answered " + answer);
+        }
+    }
+
+
+    /**
+     * Helper method which sends one request on an idle connection to a worker, opening one if there is none
+     * @param worker the worker
+     * @param request the request line
+     * @return the answer line
+     * @throws IOException if the worker can't be reached
+     */
+    private String request(Worker worker, String request) throws IOException{
+        Connection connection = worker.idle.poll();
+        if(connection == null) connection = new Connection(worker.address);
+        try{
+            String answer = connection.request(request);
+            worker.idle.add(connection);
+            worker.failedAt = -1;
+            return answer;
+        } catch(IOException e){
+            connection.socket.close();
+            // The other idle connections are most likely broken too
+            for(Connection other; (other = worker.idle.poll()) != null; ) other.socket.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Helper method which lists the workers in the order of the ring, starting with the owner of a key
+     * @param key the key of the query
+     * @return every worker once, the owner first
+     */
+    private List<Worker> findWorkers(String key){
+        List<Worker> order = new ArrayList<>(workers.size());
+        int point = hash(key);
+        for(Map.Entry<Integer, Worker> entry : ring.tailMap(point, true).entrySet()){
+            if(!order.contains(entry.getValue())) order.add(entry.getValue());
+            if(order.size() == workers.size()) return order;
+        }
+        for(Worker worker : ring.values()){
+            if(!order.contains(worker)) order.add(worker);
+            if(order.size() == workers.size()) break;
+        }
+        return order;
+    }
+
+
+    /**
+     * Helper method which hashes a key onto the ring
+     * @param key the key
+     * @return the point of the ring
+     */
+    private static int hash(String key){
+        CRC32C crc = new CRC32C();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * Finds the number of queries each worker has answered and how many came from its cache
+     * @return a line for each worker, "address: version v, q queries, h from the cache", or why it can't be reached
+     */
+    public List<String> getStats(){
+        List<String> stats = new ArrayList<>();
+        for(Worker worker : workers){
+            try{
+                String[] values = request(worker, "STATS").split(",");
+                stats.add(worker.address + ": version " + values[1] + ", " + values[2] + " queries, " + values[3] + " from the cache");
+            } catch(IOException e){
+                worker.failedAt = System.currentTimeMillis();
+                stats.add(worker.address + ": not reachable");
+            }
+        }
+        return stats;
+    }
+
+
+    /**
+     * getter for the last update logged for the workers
+     * @return the version, 0 before any update
+     */
+    public long getVersion(){
+        return version;
+    }
+
+
+    /**
+     * Serves clients on a port, one request per line:
+     *   SHORTEST,From,To or CHANGES,From,To      answered as HeadlessPlanner prints it
+     *   DELAY,From,To,Line,Minutes, CLOSE,Station or REOPEN,Station   answered with the version of the update
+     *   STATS                                    answered with a line for each worker, then an empty line
+     * @param args the port, then host:port for each worker
+     * @throws IOException if the port can't be opened
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 2){
+            System.out.println("Usage: java PlannerCoordinator <port> <host:port>...");
+            return;
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for(int i = 1; i < args.length; i++){
+            int split = args[i].lastIndexOf(':');
+            addresses.add(new InetSocketAddress(args[i].substring(0, split), Integer.parseInt(args[i].substring(split + 1))));
+        }
+        PlannerCoordinator coordinator = new PlannerCoordinator(addresses);
+        try(ServerSocket server = new ServerSocket(Integer.parseInt(args[0]), 50, InetAddress.getLoopbackAddress())){
+            System.out.println("Coordinator ready on port " + server.getLocalPort());
+            while(true){
+                Socket socket = server.accept();
+                Thread client = new Thread(() -> coordinator.serve(socket), "planner-client");
+                client.setDaemon(true);
+                client.start();
+            }
+        }
+    }
+
+
+    /**
+     * Helper method which answers the requests of one client until it disconnects
+     * @param socket the connection to the client
+     */
+    private void serve(Socket socket){
+        try(Socket s = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8)){
+            String line;
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                String[] values = line.split(",");
+                try{
+                    if((values[0].equals("SHORTEST") || values[0].equals("CHANGES")) && values.length == 3){
+                        out.println(route(values[1], values[2], values[0].equals("CHANGES")));
+                    }else if(values[0].equals("STATS")){
+                        for(String stat : getStats()) out.println(stat);
+                        out.println();
+                    }else{
+                        out.println("version " + applyEvents(line));
+                    }
+                } catch(IllegalArgumentException | IOException e){
+                    out.println("ERROR," + e.getMessage());
+                }
+            }
+        } catch(IOException e){
+            // The client went away
+        }
+    }
+
+}
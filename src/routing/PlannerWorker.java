@@ -0,0 +1,244 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Holds one replica of the network and answers journey queries for a PlannerCoordinator over TCP, without the GUI.
+ * Each request and each answer is one line:
+ *   ROUTE,SHORTEST|CHANGES,minVersion,From,To   answered OK,version,From,To,minutes[,changes] as HeadlessPlanner prints it,
+ *                                               or BEHIND,version if the replica hasn't applied minVersion yet
+ *   UPDATE,version,event;event...               applies the events, in the disruption feed format, as update number version.
+ *                                               Answered OK,version, or BEHIND,version if an earlier update is missing
+ *   VERSION                                     answered OK,version
+ *   STATS                                       answered OK,version,queries,cacheHits
+ * Lines are UTF-8 like the coordinator's, whatever the locale of the worker.
+ * Updates are applied strictly in order, so every replica which reaches a version has the same delays and closures.
+ * Answers are cached until the next update, so queries the coordinator always sends here are answered from memory
+ */
+public class PlannerWorker {
+
+    private static final int CACHE_SIZE = 10000; // answers kept between updates
+
+    private Graph graph;
+    private long version; // the last update applied
+    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // queries share the graph, updates have it alone
+    private LinkedHashMap<String, String> cache = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest){
+            return size() > CACHE_SIZE;
+        }
+    };
+    private LongAdder queries = new LongAdder();
+    private LongAdder cacheHits = new LongAdder();
+    private ServerSocket server;
+
+
+    /**
+     * Creates an instance of PlannerWorker
+     * @param graph the replica of the network, at version 0
+     */
+    public PlannerWorker(Graph graph){
+        this.graph = graph;
+    }
+
+
+    /**
+     * Starts listening for the coordinator on the loopback address
+     * @param port the port to listen on, 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port can't be opened
+     */
+    public int start(int port) throws IOException{
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "planner-worker-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stops listening, which also ends the connections of the coordinator
+     * @throws IOException if the port can't be closed
+     */
+    public void stop() throws IOException{
+        server.close();
+    }
+
+
+    /**
+     * Helper method which accepts connections until the worker is stopped, serving each on its own thread
+     */
+    private void accept(){
+        while(!server.isClosed()){
+            try{
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> serve(socket), "planner-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch(IOException e){
+                // The server was closed
+            }
+        }
+    }
+
+
+    /**
+     * Helper method which answers the requests of one connection until it is closed
+     * @param socket the connection
+     */
+    private void serve(Socket socket){
+        try(Socket s = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8)){
+            String request;
+            while((request = in.readLine()) != null){
+                out.println(handle(request));
+            }
+        } catch(IOException e){
+            // The coordinator went away, which ends the connection
+        }
+    }
+
+
+    /**
+     * Answers one request
+     * @param request the request line
+     * @return the answer line
+     */
+    public String handle(String request){
+        String[] values = request.split(",", 3);
+        try{
+            switch(values[0]){
+                case "ROUTE":
+                    return route(values[2], values[1].equals("CHANGES"));
+                case "UPDATE":
+                    return update(Long.parseLong(values[1]), values[2]);
+                case "VERSION":
+                    return "OK," + getVersion();
+                case "STATS":
+                    return "OK," + getVersion() + "," + queries.sum() + "," + cacheHits.sum();
+                default:
+                    return "ERROR,unknown request";
+            }
+        } catch(ArrayIndexOutOfBoundsException | NumberFormatException e){
+            return "ERROR,malformed request";
+        }
+    }
+
+
+    /**
+     * Helper method which answers a journey query
+     * @param query minVersion,From,To
+     * @param changes true to find the fewest changes, false for the shortest time
+     * @return the answer line
+     */
+    private String route(String query, boolean changes){
+        String[] values = query.split(",");
+        long minVersion = Long.parseLong(values[0]);
+        String from = values[1];
+        String to = values[2];
+        lock.readLock().lock();
+        try{
+            if(version < minVersion) return "BEHIND," + version;
+            queries.increment();
+            String key = (changes ? "C," : "S,") + from + "," + to;
+            String answer;
+            synchronized(cache){
+                answer = cache.get(key);
+            }
+            if(answer != null){
+                cacheHits.increment();
+            }else{
+                answer = HeadlessPlanner.plan(graph, from, to, changes);
+                synchronized(cache){
+                    cache.put(key, answer);
+                }
+            }
+            return "OK," + version + "," + answer;
+        } finally{
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Helper method which applies an update if it is the next one
+     * @param next the version of the update
+     * @param events the events of the update, in the disruption feed format, separated by ';'
+     * @return the answer line
+     */
+    private String update(long next, String events){
+        lock.writeLock().lock();
+        try{
+            // An update already applied is sent again when the coordinator catches a replica up, so it is acknowledged
+            if(next <= version) return "OK," + version;
+            if(next > version + 1) return "BEHIND," + version;
+            try{
+                DisruptionBatch batch = new DisruptionFeedReader(new StringReader(events.replace(';', '\n')), Integer.MAX_VALUE).readBatch();
+                // A batch naming unknown stations is rejected by every replica alike, so the version still moves on
+                if(batch != null) graph.applyDisruptions(batch);
+            } catch(IOException e){
+                // A StringReader can't fail
+            }
+            version = next;
+            synchronized(cache){
+                cache.clear();
+            }
+            return "OK," + version;
+        } finally{
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * getter for the last update applied
+     * @return the version of the replica
+     */
+    public long getVersion(){
+        lock.readLock().lock();
+        try{
+            return version;
+        } finally{
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Loads a network and serves it until the process is stopped.
+     * Prints "Worker ready on port N" once it is listening, which LocalCluster waits for
+     * @param args the network CSV file, then optionally the port, 0 or none for any free port
+     * @throws IOException if the network file can't be read or the port can't be opened
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 1){
+            System.out.println("Usage: java PlannerWorker <network.csv> [port]");
+            return;
+        }
+        PlannerWorker worker = new PlannerWorker(new LazyGraphReader().getGraph(args[0]));
+        int port = worker.start(args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        System.out.println("Worker ready on port " + port);
+        System.out.flush();
+        // The acceptor is a daemon thread, so keep the process alive until it is killed
+        while(true){
+            try{
+                Thread.sleep(Long.MAX_VALUE);
+            } catch(InterruptedException e){
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+
+/**
+ * A fork-join task over a range of indexes, such as origins, cells or states, which splits in half until the range
+ * is no longer than a grain and then hands it to a leaf. The left half is forked and the right half runs on the
+ * current thread. When the leaves give results, each pair of halves is merged into one, so the task returns
+ * the result of the whole range
+ * @param <T> the result of a range, Void for leaves which only have side effects
+ */
+public class RangeTask<T> extends RecursiveTask<T> {
+
+    /**
+     * The work on a range small enough for one task
+     * @param <T> the result of the range
+     */
+    public interface Leaf<T> {
+        /**
+         * Does the work for a range, it is called from several threads but never twice for an index
+         * @param first the first index of the range
+         * @param last the index after the last of the range
+         * @return the result of the range, null if there is none
+         */
+        T compute(int first, int last);
+    }
+
+    private int first;
+    private int last;
+    private int grain;
+    private Leaf<T> leaf;
+    private BinaryOperator<T> merge;
+
+
+    /**
+     * Creates a task whose leaves only have side effects
+     * @param first the first index of the range
+     * @param last the index after the last of the range
+     * @param grain the largest range a leaf is given
+     * @param leaf the work on each small range
+     */
+    public RangeTask(int first, int last, int grain, Leaf<T> leaf){
+        this(first, last, grain, leaf, null);
+    }
+
+    /**
+     * Creates a task which merges the results of its leaves
+     * @param first the first index of the range
+     * @param last the index after the last of the range
+     * @param grain the largest range a leaf is given
+     * @param leaf the work on each small range
+     * @param merge combines the results of the left and right halves of a range, null if the leaves give none
+     */
+    public RangeTask(int first, int last, int grain, Leaf<T> leaf, BinaryOperator<T> merge){
+        this.first = first;
+        this.last = last;
+        this.grain = Math.max(1, grain);
+        this.leaf = leaf;
+        this.merge = merge;
+    }
+
+
+    @Override
+    protected T compute(){
+        if(last - first <= grain) return leaf.compute(first, last);
+        int middle = (first + last) >>> 1;
+        RangeTask<T> left = new RangeTask<>(first, middle, grain, leaf, merge);
+        left.fork();
+        T right = new RangeTask<>(middle, last, grain, leaf, merge).compute();
+        T leftResult = left.join();
+        return merge == null ? null : merge.apply(leftResult, right);
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Works out which edges leaving a station give a shorter time to the state they arrive in, for OneToAllSearch
+ * on stations with many edges such as the big interchanges. Over a range of edges it is a data parallel min of
+ * time + edge time + the change time where the line differs, against the current times of the arrival states.
+ * This class is the scalar version. When the JVM runs with --add-modules jdk.incubator.vector, create
+ * returns VectorRelaxKernel instead, which does the same with the Java Vector API
+ */
+public class RelaxKernel {
+
+    public static final int MIN_DEGREE = 16; // stations with fewer edges than this are relaxed edge by edge
+
+
+    /**
+     * Creates the fastest kernel the JVM supports
+     * @return a VectorRelaxKernel if the Vector API module is present and the kernel was compiled, otherwise a RelaxKernel
+     */
+    public static RelaxKernel create(){
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            try{
+                return (RelaxKernel) Class.forName("VectorRelaxKernel").getDeclaredConstructor().newInstance();
+            } catch(ReflectiveOperationException | LinkageError e){
+                // The vector kernel wasn't compiled in, or can't run here, so fall back to the scalar loop
+            }
+        }
+        return new RelaxKernel();
+    }
+
+
+    /**
+     * getter for the kernel OneToAllSearch uses unless it is given one, created once and shared, as kernels keep no state
+     * @return the VectorRelaxKernel if the JVM can run it, otherwise null, since the scalar kernel only adds a second
+     *         pass over the improving edges to the edge by edge loop
+     */
+    public static RelaxKernel preferred(){
+        return Preferred.KERNEL;
+    }
+
+    /**
+     * Holds the preferred kernel, so it is only looked up when the first search is created
+     */
+    private static class Preferred {
+        static final RelaxKernel KERNEL = vectorOrNull();
+
+        private static RelaxKernel vectorOrNull(){
+            RelaxKernel kernel = create();
+            return kernel.getName().equals("vector") ? kernel : null;
+        }
+    }
+
+
+    /**
+     * Finds the edges of a range which improve the time of their arrival state.
+     * Edges to closed stations are included, and several edges can improve the same state,
+     * so the caller checks each one again as it applies them in order
+     * @param edgeTime the travel time of each edge
+     * @param edgeLine the line of each edge
+     * @param edgeState the state each edge arrives in
+     * @param stateTime the current time of each state
+     * @param first the first edge of the range
+     * @param last the end of the range
+     * @param line the line the station was reached on, -1 at the source where no change is counted
+     * @param time the time the station was reached at
+     * @param improved filled with the edges which improve their state, in order
+     * @param improvedTime filled with the time each of those edges gives, at least as long as the range
+     * @return the number of improving edges
+     */
+    public int relax(float[] edgeTime, int[] edgeLine, int[] edgeState, float[] stateTime, int first, int last,
+                     int line, float time, int[] improved, float[] improvedTime){
+        return relaxScalar(edgeTime, edgeLine, edgeState, stateTime, first, last, line, time, improved, improvedTime, 0);
+    }
+
+
+    /**
+     * Helper method which relaxes a range of edges one at a time, adding to the improving edges already found
+     * @param edgeTime the travel time of each edge
+     * @param edgeLine the line of each edge
+     * @param edgeState the state each edge arrives in
+     * @param stateTime the current time of each state
+     * @param first the first edge of the range
+     * @param last the end of the range
+     * @param line the line the station was reached on, -1 at the source
+     * @param time the time the station was reached at
+     * @param improved the improving edges
+     * @param improvedTime the time each improving edge gives
+     * @param count the number of improving edges found before the range
+     * @return the number of improving edges after the range
+     */
+    protected int relaxScalar(float[] edgeTime, int[] edgeLine, int[] edgeState, float[] stateTime, int first, int last,
+                              int line, float time, int[] improved, float[] improvedTime, int count){
+        for(int edge = first; edge < last; edge++){
+            float newTime = time + edgeTime[edge];
+            if(line >= 0 && line != edgeLine[edge]){
+                newTime += OneToAllSearch.CHANGE_TIME;
+            }
+            if(newTime < stateTime[edgeState[edge]]){
+                improved[count] = edge;
+                improvedTime[count++] = newTime;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * getter for the name of the kernel, for reports and benchmarks
+     * @return "scalar" or "vector"
+     */
+    public String getName(){
+        return "scalar";
+    }
+
+}
@@ -0,0 +1,257 @@
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Times the phases of one route planning request, so a slow query can be put down to looking up its stations,
+ * the search, rebuilding the path or rendering the answer.
+ * A trace lives on the thread planning the request. The entry points start one with begin, the routers move it from
+ * phase to phase, and whoever started it ends it. Each phase is also a JFR event, and the request as a whole another,
+ * so a flight recording shows every request without a profiler attached. Tracing is on with -Dmetrolink.trace=true,
+ * or whenever a flight recording has the metrolink.RoutePhase event enabled, and when neither is on begin
+ * returns null after two volatile reads.
+ * A request that takes longer than -Dmetrolink.trace.slowMillis (100 by default) is a slow request. One in every
+ * -Dmetrolink.trace.sample slow requests (every one by default) is written to standard error with its stations,
+ * the version of the network and the time of each phase. Standard output is left to the answers of the headless planner
+ */
+public class RequestTrace {
+
+    /**
+     * The phases of a request, in the order they usually run
+     */
+    public enum Phase {
+        LOOKUP, // finding the start station and the tables the search starts from
+        SEARCH,
+        BUILD, // following the previous states back from the end to make the path
+        RENDER // writing the route out for the GUI or as an answer line
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("metrolink.trace");
+    private static volatile long slowNanos = Long.getLong("metrolink.trace.slowMillis", 100) * 1000000;
+    private static volatile int sample = Math.max(1, Integer.getInteger("metrolink.trace.sample", 1));
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong slowRequests = new AtomicLong();
+
+    private String mode;
+    private String start;
+    private String end;
+    private long version;
+    private long beginNanos;
+    private long[] phaseNanos = new long[Phase.values().length];
+    private Phase phase; // The phase running now, null between phases
+    private long phaseStart;
+    private PhaseEvent event; // The JFR event of the phase running now
+    private RequestEvent requestEvent = new RequestEvent();
+
+
+    /**
+     * Creates an instance of RequestTrace
+     * @param mode the name of the routing mode
+     * @param graph the network the request is planned on
+     * @param start the name of the start station
+     * @param end the name of the destination
+     */
+    private RequestTrace(String mode, Graph graph, String start, String end){
+        this.mode = mode;
+        this.start = start;
+        this.end = end;
+        this.version = graph.getVersion();
+        requestEvent.begin();
+        this.beginNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Starts tracing a request on this thread, unless one is already being traced
+     * @param mode the name of the routing mode
+     * @param graph the network the request is planned on
+     * @param start the name of the start station
+     * @param end the name of the destination
+     * @return the new trace, which the caller must end, or null if tracing is off or the thread is already tracing a request
+     */
+    public static RequestTrace begin(String mode, Graph graph, String start, String end){
+        if(!enabled && !recording()) return null;
+        if(CURRENT.get() != null) return null;
+        RequestTrace trace = new RequestTrace(mode, graph, start, end);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * getter for the request being traced on this thread, so a router can time its phases for whoever called it
+     * @return the trace, null if none is running
+     */
+    public static RequestTrace current(){
+        if(!enabled && !recording()) return null;
+        return CURRENT.get();
+    }
+
+    /**
+     * Helper method which checks if a flight recording wants the phase events.
+     * Looking up the event type starts JFR, which takes longer than the headless planner's whole startup,
+     * so it is only done once something else has started JFR
+     * @return true if the phase events are enabled in a running recording
+     */
+    private static boolean recording(){
+        return FlightRecorder.isInitialized() && Events.PHASE.isEnabled();
+    }
+
+
+    /**
+     * Ends the phase running now and starts another. A phase can run more than once in a request,
+     * in which case its times are added up
+     * @param next the phase to start
+     */
+    public void phase(Phase next){
+        long now = System.nanoTime();
+        finishPhase(now);
+        phase = next;
+        phaseStart = now;
+        event = new PhaseEvent();
+        event.begin();
+    }
+
+    /**
+     * Ends the request, writing it to standard error if it was slow and picked by the sample
+     */
+    public void end(){
+        long now = System.nanoTime();
+        finishPhase(now);
+        CURRENT.remove();
+        long total = now - beginNanos;
+        requestEvent.end();
+        if(requestEvent.shouldCommit()){
+            requestEvent.mode = mode;
+            requestEvent.start = start;
+            requestEvent.destination = end;
+            requestEvent.networkVersion = version;
+            requestEvent.commit();
+        }
+        if(enabled && total >= slowNanos && slowRequests.incrementAndGet() % sample == 0){
+            System.err.println(describe(total));
+        }
+    }
+
+    /**
+     * Helper method which adds the time of the phase running now to its total and commits its JFR event
+     * @param now the time the phase ended
+     */
+    private void finishPhase(long now){
+        if(phase == null) return;
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        event.end();
+        if(event.shouldCommit()){
+            event.mode = mode;
+            event.phase = phase.name();
+            event.start = start;
+            event.destination = end;
+            event.networkVersion = version;
+            event.commit();
+        }
+        phase = null;
+        event = null;
+    }
+
+
+    /**
+     * Describes the request for the slow request log
+     * @param total the time of the whole request in nanoseconds
+     * @return one line with the inputs, the network version and the time of each phase in milliseconds
+     */
+    public String describe(long total){
+        StringBuilder line = new StringBuilder(String.format("Slow route request: mode=%s from=\"%s\" to=\"%s\" version=%d total=%.3fms",
+                mode, start, end, version, total / 1e6));
+        for(Phase p : Phase.values()){
+            line.append(String.format(" %s=%.3fms", p.name().toLowerCase(), phaseNanos[p.ordinal()] / 1e6));
+        }
+        return line.toString();
+    }
+
+    /**
+     * getter for the time spent in a phase so far
+     * @param p the phase
+     * @return the time in nanoseconds
+     */
+    public long getPhaseNanos(Phase p){
+        return phaseNanos[p.ordinal()];
+    }
+
+    /**
+     * getter for the number of slow requests since the program started, whether or not the sample logged them
+     * @return the number of slow requests
+     */
+    public static long getSlowRequests(){
+        return slowRequests.get();
+    }
+
+    /**
+     * Turns tracing on or off, as -Dmetrolink.trace does at startup
+     * @param status true to trace requests
+     */
+    public static void setEnabled(boolean status){
+        enabled = status;
+    }
+
+    /**
+     * Sets which requests are logged as slow
+     * @param millis the time above which a request is slow
+     * @param every log one in this many slow requests
+     */
+    public static void setSlowLog(long millis, int every){
+        slowNanos = millis * 1000000;
+        sample = Math.max(1, every);
+    }
+
+
+    /**
+     * Holds the type of the phase events, so it is only looked up once JFR is running
+     */
+    private static class Events {
+        static final EventType PHASE = EventType.getEventType(PhaseEvent.class);
+    }
+
+    /**
+     * The JFR event of one phase of a request
+     */
+    @Name("metrolink.RoutePhase")
+    @Label("Route Phase")
+    @Category("Metrolink")
+    @Description("One phase of planning a route: lookup, search, build or render")
+    static class PhaseEvent extends Event {
+        @Label("Mode")
+        String mode;
+        @Label("Phase")
+        String phase;
+        @Label("Start")
+        String start;
+        @Label("Destination")
+        String destination;
+        @Label("Network Version")
+        long networkVersion;
+    }
+
+    /**
+     * The JFR event of a whole request
+     */
+    @Name("metrolink.RouteRequest")
+    @Label("Route Request")
+    @Category("Metrolink")
+    @Description("Planning one route, from looking up its stations to rendering it")
+    static class RequestEvent extends Event {
+        @Label("Mode")
+        String mode;
+        @Label("Start")
+        String start;
+        @Label("Destination")
+        String destination;
+        @Label("Network Version")
+        long networkVersion;
+    }
+
+}
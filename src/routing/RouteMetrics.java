@@ -0,0 +1,207 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Counts the work done by the routing searches and records their latencies.
+ * There is one instance per routing mode, each registered with JMX as "metrolink:type=RouteMetrics,mode=...".
+ * The searches count their work in local variables and only hand them over when metrics are enabled,
+ * so a disabled instance costs one volatile read per query.
+ * Metrics are enabled at startup with -Dmetrolink.metrics=true, which also prints a text dump on exit,
+ * or later through JMX
+ */
+public class RouteMetrics implements RouteMetricsMBean {
+
+    private static volatile boolean enabled = Boolean.getBoolean("metrolink.metrics");
+    private static final RouteMetrics SHORTEST = new RouteMetrics("shortest");
+    private static final RouteMetrics FEWEST_CHANGES = new RouteMetrics("fewestChanges");
+
+    static {
+        SHORTEST.register();
+        FEWEST_CHANGES.register();
+        // Print the text dump on exit when metrics were asked for at startup
+        if(enabled){
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(dumpAll())));
+        }
+    }
+
+    private String mode;
+    private LongAdder queries = new LongAdder();
+    private LongAdder settled = new LongAdder(); // (station, line) states taken off the queue and expanded
+    private LongAdder relaxations = new LongAdder(); // edges checked from expanded states
+    private LongAdder pushes = new LongAdder();
+    private LongAdder pops = new LongAdder();
+    private LongAdder stalePops = new LongAdder(); // pops of states that were already visited
+    private LatencyHistogram latency = new LatencyHistogram();
+
+
+    /**
+     * Creates an instance of RouteMetrics
+     * @param mode the name of the routing mode
+     */
+    private RouteMetrics(String mode){
+        this.mode = mode;
+    }
+
+    /**
+     * getter for the metrics of the shortest time search
+     * @return the RouteMetrics used by ShortestRoute
+     */
+    public static RouteMetrics shortest(){
+        return SHORTEST;
+    }
+
+    /**
+     * getter for the metrics of the fewest changes search
+     * @return the RouteMetrics used by FewestChangesRoute
+     */
+    public static RouteMetrics fewestChanges(){
+        return FEWEST_CHANGES;
+    }
+
+    /**
+     * Checks if metrics are being recorded
+     * @return true if the searches should record their work
+     */
+    public static boolean enabled(){
+        return enabled;
+    }
+
+
+    /**
+     * Records the work done by one query
+     * @param nanos the time taken by the query
+     * @param settledStates the number of (station, line) states expanded
+     * @param edgeRelaxations the number of edges checked
+     * @param queuePushes the number of states added to the queue
+     * @param queuePops the number of states taken off the queue
+     * @param staleQueuePops the number of popped states which were already visited
+     */
+    public void record(long nanos, int settledStates, int edgeRelaxations, int queuePushes, int queuePops, int staleQueuePops){
+        queries.increment();
+        settled.add(settledStates);
+        relaxations.add(edgeRelaxations);
+        pushes.add(queuePushes);
+        pops.add(queuePops);
+        stalePops.add(staleQueuePops);
+        latency.record(nanos);
+    }
+
+
+    /**
+     * Writes the metrics of all routing modes as text
+     * @return one block of lines per routing mode
+     */
+    public static String dumpAll(){
+        return SHORTEST.dump() + FEWEST_CHANGES.dump();
+    }
+
+
+    @Override
+    public String dump(){
+        StringBuilder result = new StringBuilder("[" + mode + "]" + (enabled ? "" : " (disabled)") + "\n");
+        result.append("queries = " + getQueries() + "\n");
+        result.append("settled states = " + getSettledStates() + "\n");
+        result.append("edge relaxations = " + getEdgeRelaxations() + "\n");
+        result.append("queue pushes = " + getQueuePushes() + "\n");
+        result.append("queue pops = " + getQueuePops() + "\n");
+        result.append("stale pops = " + getStalePops() + "\n");
+        result.append(String.format("latency (us) mean = %.1f, p50 = %d, p90 = %d, p99 = %d, max = %d%n",
+                getMeanLatencyMicros(), getP50LatencyMicros(), latency.percentile(90) / 1000,
+                getP99LatencyMicros(), getMaxLatencyMicros()));
+        return result.toString();
+    }
+
+    @Override
+    public long getQueries(){
+        return queries.sum();
+    }
+
+    @Override
+    public long getSettledStates(){
+        return settled.sum();
+    }
+
+    @Override
+    public long getEdgeRelaxations(){
+        return relaxations.sum();
+    }
+
+    @Override
+    public long getQueuePushes(){
+        return pushes.sum();
+    }
+
+    @Override
+    public long getQueuePops(){
+        return pops.sum();
+    }
+
+    @Override
+    public long getStalePops(){
+        return stalePops.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMicros(){
+        return latency.getMean() / 1000;
+    }
+
+    @Override
+    public long getP50LatencyMicros(){
+        return latency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getP99LatencyMicros(){
+        return latency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getMaxLatencyMicros(){
+        return latency.getMax() / 1000;
+    }
+
+    @Override
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off for all routing modes
+     * @param status true to record the work of the searches
+     */
+    @Override
+    public void setEnabled(boolean status){
+        enabled = status;
+    }
+
+    @Override
+    public void reset(){
+        queries.reset();
+        settled.reset();
+        relaxations.reset();
+        pushes.reset();
+        pops.reset();
+        stalePops.reset();
+        latency.reset();
+    }
+
+
+    /**
+     * Helper method which registers this instance with the platform MBean server
+     */
+    private void register(){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("metrolink:type=RouteMetrics,mode=" + mode);
+            if(!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch(JMException | SecurityException e){
+            System.out.println("Route metrics are not available through JMX: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/**
+ * The JMX view of the {@link RouteMetrics} of one routing mode
+ */
+public interface RouteMetricsMBean {
+
+    long getQueries();
+
+    long getSettledStates();
+
+    long getEdgeRelaxations();
+
+    long getQueuePushes();
+
+    long getQueuePops();
+
+    long getStalePops();
+
+    double getMeanLatencyMicros();
+
+    long getP50LatencyMicros();
+
+    long getP99LatencyMicros();
+
+    long getMaxLatencyMicros();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void reset();
+
+    String dump();
+
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -46,6 +47,38 @@ public class ShortestRoute{
      * @param end the name of the destination
      */
     public void findRoute(Graph graph, String start, String end){
+        findRoute(graph, start, end, graph.getClosedStations());
+    }
+
+
+    /**
+     * Finds the shortest path between two stations in the graph and modify the maps needed
+     * to print the path, treating the given stations as closed so closures can be tried out
+     * without changing the graph
+     * @param graph the graph in which the stations are 
+     * @param start the name of the station to start at
+     * @param end the name of the destination
+     * @param closed the indexes of the stations to treat as closed, instead of the closures of the graph
+     */
+    public void findRoute(Graph graph, String start, String end, BitSet closed){
+        findRoute(graph, start, end, new NetworkOverlay(graph, closed));
+    }
+
+
+    /**
+     * Finds the shortest path between two stations in the graph and modify the maps needed
+     * to print the path, using the delays and closures of an overlay instead of those of the graph,
+     * so disruptions can be tried out without changing the graph
+     * @param graph the graph in which the stations are 
+     * @param start the name of the station to start at
+     * @param end the name of the destination
+     * @param overlay the what-if delays and closures, which must be for the same graph
+     */
+    public void findRoute(Graph graph, String start, String end, NetworkOverlay overlay){
+        if(overlay.getGraph() != graph) throw new IllegalArgumentException("The overlay is for a different graph");
+        // Time the phases for the request being traced on this thread, if there is one
+        RequestTrace trace = RequestTrace.current();
+        if(trace != null) trace.phase(RequestTrace.Phase.LOOKUP);
 
         // Reset internal state before computing a new route
         this.distances.clear();
@@ -60,22 +93,31 @@ public class ShortestRoute{
 
         // Priority Queue to get the StationTime with lowest value for time
         PriorityQueue<StationTime> queue = new PriorityQueue<>();
-        queue.add(new StationTime(start, null,0f));
+        // Closed stations never enter the queue, so a closed start has no route
+        if(!overlay.isClosed(graph.findNode(start))){
+            queue.add(new StationTime(start, null,0f));
+        }
+        if(trace != null) trace.phase(RequestTrace.Phase.SEARCH);
+
+        // Work counters, handed to RouteMetrics when it is enabled
+        boolean recording = RouteMetrics.enabled();
+        long startTime = recording ? System.nanoTime() : 0;
+        int settled = 0, relaxations = 0, pushes = queue.size(), pops = 0, stalePops = 0;
         
         while(!queue.isEmpty()){
             // Get the next unvisited StationTime with the shortest time
             StationTime current = queue.poll();
+            pops++;
             // To avoid marking a station as visited before checking all lines that lead to it; use (stationName, line) as a key 
             String currentKey = makeKey(current.station, current.line);  
             
-            // Check if the station is open
-            if(!graph.findNode(current.station).getOpen()){
+            // Skip if this (station, line) pair has already been visited
+            if(visited.contains(currentKey)){
+                stalePops++;
                 continue;
             }
-            
-            // Skip if this (station, line) pair has already been visited
-            if(visited.contains(currentKey)) continue; 
             visited.add(currentKey);
+            settled++;
 
             // If end is reached shortest path is found; so break after saving the endKey
             if(current.station.equals(end)){
@@ -85,10 +127,13 @@ public class ShortestRoute{
             Node node = graph.findNode(current.station);
             //Check the neighbors of the node
             for(Edge edge : node.getEdges()){
+                relaxations++;
+                // Skip closed stations before they enter the queue
+                if(overlay.isClosed(edge.getEndNode())) continue;
                 String currentLine = current.line;  
             
                 // Find the time to reach the neighbor via this edge
-                float newTime  = this.distances.getOrDefault(currentKey, Float.POSITIVE_INFINITY) + edge.getTime();
+                float newTime  = this.distances.getOrDefault(currentKey, Float.POSITIVE_INFINITY) + overlay.getTime(edge);
                 // Line change needs two mins more
                 if(currentLine != null && !currentLine.equals(edge.getLine())){
                     newTime +=2;
@@ -100,12 +145,23 @@ public class ShortestRoute{
                     this.distances.put(neighborKey, newTime);
                     this.previousStationLine.put(neighborKey, currentKey);
                     queue.add(new StationTime(neighbor, edge.getLine(),newTime));
+                    pushes++;
                 }
                 
             }
         }
-        
-        
+
+        if(recording){
+            RouteMetrics.shortest().record(System.nanoTime() - startTime, settled, relaxations, pushes, pops, stalePops);
+        }
+    }
+
+    /**
+     * getter for the journey time of the route found by the last search
+     * @return the overall journey time in minutes, Float.POSITIVE_INFINITY if no route was found
+     */
+    public float getJourneyTime(){
+        return endKey == null ? Float.POSITIVE_INFINITY : distances.get(endKey);
     }
 
     /**
@@ -135,17 +191,37 @@ public class ShortestRoute{
      * @param resultArea the JTextArea UI component where the route will be displayed
      */
     public void diplayRoute(Graph graph, String start, String end, JTextArea resultArea){
+        RequestTrace trace = RequestTrace.begin("shortest", graph, start, end);
+        try{
+            showRoute(graph, start, end, resultArea, trace);
+        } finally{
+            if(trace != null) trace.end();
+        }
+    }
+
+    /**
+     * Helper method which finds and displays the shortest route, timing its phases
+     * @param graph the metro graph containing stations and edges
+     * @param start the name of the starting station
+     * @param end the name of the destination station
+     * @param resultArea the JTextArea UI component where the route will be displayed
+     * @param trace the trace of the request, null if it isn't traced
+     */
+    private void showRoute(Graph graph, String start, String end, JTextArea resultArea, RequestTrace trace){
         // Call findRoute method to get the shortest route
         findRoute(graph, start, end);
 
         // Check if the path exists
         if (endKey == null) {
+            if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
             resultArea.setText("No route found between " + start + " and " + end + ".");
             return;
         }
         
         // Get the list of the keys that build the path
+        if(trace != null) trace.phase(RequestTrace.Phase.BUILD);
         ArrayList<String> finalPath = buildRoute();
+        if(trace != null) trace.phase(RequestTrace.Phase.RENDER);
         //StirngBuilder to build the final result
         StringBuilder routeText = new StringBuilder("*** Shortest Route ***\n");
         
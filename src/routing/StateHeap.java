@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+
+/**
+ * A binary min-heap of states ordered by time, for the searches over packed networks.
+ * A state whose time drops is pushed again rather than moved, so the heap holds stale entries
+ * which the search skips when they come off the top. The arrays grow as needed and are kept after clear,
+ * so one heap serves every search of its owner. An instance must only be used by one thread
+ */
+public class StateHeap {
+
+    private int[] heapState = new int[64];
+    private float[] heapTime = new float[64];
+    private int heapSize;
+
+
+    /**
+     * Adds a state to the heap
+     * @param state the index of the state
+     * @param time the time the state is reached at
+     */
+    public void push(int state, float time){
+        if(heapSize == heapState.length){
+            heapState = Arrays.copyOf(heapState, heapSize * 2);
+            heapTime = Arrays.copyOf(heapTime, heapSize * 2);
+        }
+        int i = heapSize++;
+        while(i > 0){
+            int parent = (i - 1) / 2;
+            if(heapTime[parent] <= time) break;
+            heapState[i] = heapState[parent];
+            heapTime[i] = heapTime[parent];
+            i = parent;
+        }
+        heapState[i] = state;
+        heapTime[i] = time;
+    }
+
+    /**
+     * Removes the entry with the shortest time from the heap
+     */
+    public void pop(){
+        heapSize--;
+        int state = heapState[heapSize];
+        float time = heapTime[heapSize];
+        int i = 0;
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= heapSize) break;
+            if(child + 1 < heapSize && heapTime[child + 1] < heapTime[child]) child++;
+            if(heapTime[child] >= time) break;
+            heapState[i] = heapState[child];
+            heapTime[i] = heapTime[child];
+            i = child;
+        }
+        heapState[i] = state;
+        heapTime[i] = time;
+    }
+
+    /**
+     * getter for the state with the shortest time
+     * @return the index of the state at the top of the heap
+     */
+    public int peekState(){
+        return heapState[0];
+    }
+
+    /**
+     * getter for the shortest time in the heap
+     * @return the time of the entry at the top of the heap
+     */
+    public float peekTime(){
+        return heapTime[0];
+    }
+
+    /**
+     * Checks if the heap has no entries left
+     * @return true if the heap is empty
+     */
+    public boolean isEmpty(){
+        return heapSize == 0;
+    }
+
+    /**
+     * Removes every entry, keeping the arrays for the next search
+     */
+    public void clear(){
+        heapSize = 0;
+    }
+
+}
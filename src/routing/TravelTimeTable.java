@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import javax.swing.JTextArea;
+
+
+/**
+ * Finds the journey time between every origin and every destination of a table, in minutes with the same costs
+ * as ShortestRoute, so a cell holds what getJourneyTime would give for that pair.
+ * Each origin takes one search, which stops as soon as every destination has its time, instead of
+ * one search for every pair. Origins are spread over a fork-join pool and each task reuses its search.
+ * With delta stepping on, the origins are searched one at a time instead, each with a DeltaSteppingSearch of the
+ * whole network on every thread of the pool, which suits a few origins on a very large network
+ * The table is either returned as a float[][] or, when it is too big for the heap, written to a memory mapped file
+ */
+public class TravelTimeTable {
+
+    private static final int ORIGINS_PER_TASK = 8; // origins searched by one task before it stops splitting
+    private static final int HEADER_BYTES = 8; // the number of rows and columns at the start of a table file
+
+    private Graph network;
+    private CompactGraph graph;
+    private boolean deltaStepping; // Whether each origin is searched on every thread instead of one origin per thread
+
+
+    /**
+     * Creates an instance of TravelTimeTable for the network with its current delays and closures
+     * @param graph the graph to search
+     */
+    public TravelTimeTable(Graph graph){
+        this.network = graph;
+        this.graph = new CompactGraph(graph);
+    }
+
+
+    /**
+     * Finds the journey times of a table on the common fork-join pool
+     * @param origins the names of the stations of the rows
+     * @param destinations the names of the stations of the columns
+     * @return the journey times in minutes by origin then destination, Float.POSITIVE_INFINITY where there is no route
+     */
+    public float[][] compute(String[] origins, String[] destinations){
+        return compute(origins, destinations, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the journey times of a table on the given fork-join pool
+     * @param origins the names of the stations of the rows
+     * @param destinations the names of the stations of the columns
+     * @param pool the pool to run the searches on
+     * @return the journey times in minutes by origin then destination, Float.POSITIVE_INFINITY where there is no route
+     */
+    public float[][] compute(String[] origins, String[] destinations, ForkJoinPool pool){
+        float[][] table = new float[origins.length][destinations.length];
+        search(findStations(origins), findStations(destinations), 0, origins.length, pool,
+                (row, times) -> System.arraycopy(times, 0, table[row], 0, times.length));
+        return table;
+    }
+
+
+    /**
+     * Writes the journey times of a table to a file on the common fork-join pool. The file holds the number of rows
+     * and columns as two ints, then the journey times as floats by origin then destination, all in native byte order
+     * @param origins the names of the stations of the rows
+     * @param destinations the names of the stations of the columns
+     * @param file the path of the file to write, which is replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void write(String[] origins, String[] destinations, String file) throws IOException{
+        write(origins, destinations, file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes the journey times of a table to a file on the given fork-join pool, in the format of write
+     * @param origins the names of the stations of the rows
+     * @param destinations the names of the stations of the columns
+     * @param file the path of the file to write, which is replaced if it exists
+     * @param pool the pool to run the searches on
+     * @throws IOException if the file can't be written
+     */
+    public void write(String[] origins, String[] destinations, String file, ForkJoinPool pool) throws IOException{
+        int[] rows = findStations(origins);
+        int[] columns = findStations(destinations);
+        long rowBytes = (long) columns.length * Float.BYTES;
+        try(RandomAccessFile output = new RandomAccessFile(file, "rw"); FileChannel channel = output.getChannel()){
+            output.setLength(0);
+            output.setLength(HEADER_BYTES + rowBytes * rows.length);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            header.putInt(rows.length).putInt(columns.length).flip();
+            channel.write(header, 0);
+
+            // A mapping can't be over 2GB, so the rows are mapped in blocks
+            int rowsPerBlock = (int) Math.max(1, Math.min(rows.length, Integer.MAX_VALUE / Math.max(1, rowBytes)));
+            for(int first = 0; first < rows.length; first += rowsPerBlock){
+                int last = Math.min(rows.length, first + rowsPerBlock);
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + rowBytes * first,
+                        rowBytes * (last - first));
+                FloatBuffer cells = block.order(ByteOrder.nativeOrder()).asFloatBuffer();
+                int offset = first;
+                search(rows, columns, first, last, pool, (row, times) -> cells.put((row - offset) * columns.length, times));
+                block.force();
+            }
+        }
+    }
+
+
+    /**
+     * Helper method which finds the journey times from a range of origins, a few origins to each task of the pool
+     * or with DeltaSteppingSearch if delta stepping is on
+     * @param rows the indexes of the origin stations
+     * @param columns the indexes of the destination stations
+     * @param first the position of the first origin to search
+     * @param last the position after the last origin to search
+     * @param pool the pool to run the searches on
+     * @param writer where the journey times of each origin go
+     */
+    private void search(int[] rows, int[] columns, int first, int last, ForkJoinPool pool, RowWriter writer){
+        if(!deltaStepping){
+            pool.invoke(new RangeTask<Void>(first, last, ORIGINS_PER_TASK, (from, to) -> searchOrigins(rows, columns, from, to, writer)));
+            return;
+        }
+        DeltaSteppingSearch search = new DeltaSteppingSearch(graph, pool);
+        float[] times = new float[columns.length];
+        for(int row = first; row < last; row++){
+            search.run(rows[row]);
+            for(int column = 0; column < columns.length; column++){
+                times[column] = search.getTime(columns[column]);
+            }
+            writer.write(row, times);
+        }
+    }
+
+    /**
+     * setter for whether each origin is searched with a DeltaSteppingSearch on every thread of the pool,
+     * instead of one origin per thread
+     * @param status true to use delta stepping
+     */
+    public void setDeltaStepping(boolean status){
+        this.deltaStepping = status;
+    }
+
+    /**
+     * Helper method which finds the indexes of stations
+     * @param names the names of the stations
+     * @return the index of each station
+     */
+    private int[] findStations(String[] names){
+        int[] stations = new int[names.length];
+        for(int i = 0; i < names.length; i++){
+            Node node = network.findNode(names[i]);
+            if(node == null) throw new IllegalArgumentException("The station " + names[i] + " is not in the network");
+            stations[i] = node.getIndex();
+        }
+        return stations;
+    }
+
+
+    /**
+     * Takes the journey times from one origin as they are found
+     */
+    private interface RowWriter {
+        /**
+         * Stores the journey times from one origin, it is called from several threads but never twice for a row
+         * @param row the position of the origin in the table
+         * @param times the journey time to each destination, only valid during the call
+         */
+        void write(int row, float[] times);
+    }
+
+
+    /**
+     * Helper method which searches a range of origins on one thread, as one leaf of the task over the origins
+     * @param origins the indexes of the origin stations
+     * @param destinations the indexes of the destination stations
+     * @param first the position of the first origin to search
+     * @param last the position after the last origin to search
+     * @param writer where the journey times of each origin go
+     * @return null, the times go to the writer
+     */
+    private Void searchOrigins(int[] origins, int[] destinations, int first, int last, RowWriter writer){
+        // The search is reused for every origin in the range
+        OneToAllSearch search = new OneToAllSearch(graph);
+        BitSet targets = new BitSet(graph.getStationCount());
+        for(int destination : destinations) targets.set(destination);
+        float[] times = new float[destinations.length];
+        for(int row = first; row < last; row++){
+            search.run(origins[row], targets);
+            for(int column = 0; column < destinations.length; column++){
+                times[column] = search.getTime(destinations[column]);
+            }
+            writer.write(row, times);
+        }
+        return null;
+    }
+
+
+    /**
+     * Finds the journey times between every pair of a set of stations in a network from a CSV file,
+     * and writes them to a table file or prints a summary
+     * @param args the network CSV file, the number of stations to take from the start of the network,
+     *             and optionally the table file to write and --delta to search with DeltaSteppingSearch
+     */
+    public static void main(String[] args){
+        boolean deltaStepping = args.length > 0 && args[args.length - 1].equals("--delta");
+        if(deltaStepping) args = Arrays.copyOf(args, args.length - 1);
+        if(args.length < 2){
+            System.out.println("Usage: java TravelTimeTable <network.csv> <stations> [table.bin] [--delta]");
+            return;
+        }
+        JTextArea errors = new JTextArea();
+        Graph graph = new CSVReader().getGraph(args[0], errors);
+        if(!errors.getText().isEmpty()){
+            System.out.print(errors.getText());
+            return;
+        }
+        int count = Math.min(Integer.parseInt(args[1]), graph.getSize());
+        String[] stations = new String[count];
+        CompactGraph snapshot = new CompactGraph(graph);
+        for(int i = 0; i < count; i++) stations[i] = snapshot.getStationName(i);
+
+        long start = System.nanoTime();
+        TravelTimeTable table = new TravelTimeTable(graph);
+        table.setDeltaStepping(deltaStepping);
+        if(args.length > 2){
+            try{
+                table.write(stations, stations, args[2]);
+            } catch(IOException e){
+                System.out.println("The table can't be written: " + e.getMessage());
+                return;
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println(count + " x " + count + " table written to " + args[2] + " in " + millis + " ms");
+            return;
+        }
+        float[][] times = table.compute(stations, stations);
+        long millis = (System.nanoTime() - start) / 1000000;
+        int unreachable = 0;
+        float longest = 0;
+        for(float[] row : times){
+            for(float time : row){
+                if(time == Float.POSITIVE_INFINITY) unreachable++;
+                else longest = Math.max(longest, time);
+            }
+        }
+        System.out.println(count + " x " + count + " table in " + millis + " ms, longest journey " + longest
+                + " mins, " + unreachable + " pairs without a route");
+    }
+
+}
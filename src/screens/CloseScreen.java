@@ -8,11 +8,13 @@ import java.awt.event.ActionListener;
 /**
  * CloseScreen is dialog window which appears when the user clicks "Add Closure" on the main window
  * It allows user to input the name of a station which will be set as closed after submission
+ * The impact of the closure on every journey can be checked first without adding it
  */
 
 public class CloseScreen extends JDialog implements ActionListener{
     
     private JButton add = new JButton("Add Closure");
+    private JButton impact = new JButton("Check Impact");
     private JButton cancel = new JButton("Cancel");
     private JTextField stationTextField = new JTextField();
     private Graph metroLink = new Graph();
@@ -62,7 +64,9 @@ public class CloseScreen extends JDialog implements ActionListener{
         // Add listeners for the buttons and add them to buttons panel
         add.addActionListener(this);
         cancel.addActionListener(this);
+        impact.addActionListener(this);
         buttons.add(add);
+        buttons.add(impact);
         buttons.add(cancel);
         
         // Add form and buttons panels to the main panel
@@ -71,7 +75,7 @@ public class CloseScreen extends JDialog implements ActionListener{
         this.setContentPane(main);
         this.pack();
         this.setLocationRelativeTo(parent); // set the dialog to the middle of the parent
-        this.setSize(300,150);
+        this.setSize(400,150);
         this.setVisible(true);
 
 
@@ -81,7 +85,7 @@ public class CloseScreen extends JDialog implements ActionListener{
     @Override
     public void actionPerformed(ActionEvent e) {
         
-        if(e.getSource() == add){
+        if(e.getSource() == add || e.getSource() == impact){
             String stationName = stationTextField.getText().trim();
 
             // Check if stationTextField is not empty
@@ -104,6 +108,14 @@ public class CloseScreen extends JDialog implements ActionListener{
             }
             
             
+            if(e.getSource() == impact){
+                // Compare every journey with and without the closure, which is not added to the network
+                NetworkOverlay proposed = new NetworkOverlay(metroLink);
+                proposed.addClosure(stationName);
+                showImpact(new DisruptionImpact(metroLink, proposed));
+                return;
+            }
+
             metroLink.addClosure(stationName);
             JOptionPane.showMessageDialog(this, "Closure Added Successfully", "Action Message", JOptionPane.INFORMATION_MESSAGE);
             this.dispose();
@@ -115,5 +127,17 @@ public class CloseScreen extends JDialog implements ActionListener{
     }
 
 
+    /**
+     * Runs the impact analysis and shows its report in a scrollable message
+     * @param analysis the impact analysis of the proposed closure
+     */
+    private void showImpact(DisruptionImpact analysis){
+        analysis.run();
+        JTextArea report = new JTextArea(analysis.formatReport(50), 20, 50);
+        report.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(report), "Closure Impact", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+
 }
     
@@ -7,12 +7,14 @@ import java.awt.event.ActionListener;
  * DelayScreen is a dialog window that appears when the user clicks "Add Delay" on the main screen.
  * It allows the user to input two stations, a line color, and a delay time.
  * Once submitted, the delay time is added to the weight of the corresponding edge in the MetroLink graph.
+ * The impact of the delay on every journey can be checked first without adding it.
  */
 
 
 public class DelayScreen extends JDialog implements ActionListener {
     
     private JButton add = new JButton("Add Delay");
+    private JButton impact = new JButton("Check Impact");
     private JButton cancel = new JButton("Cancel");
     private JTextField station1 = new JTextField();
     private JTextField station2 = new JTextField();
@@ -77,8 +79,10 @@ public class DelayScreen extends JDialog implements ActionListener {
         JPanel buttons = new JPanel(new FlowLayout());
         buttons.setAlignmentX(Component.LEFT_ALIGNMENT);
         buttons.add(add);
+        buttons.add(impact);
         buttons.add(cancel);
         add.addActionListener(this);
+        impact.addActionListener(this);
         cancel.addActionListener(this);
 
     
@@ -88,7 +92,7 @@ public class DelayScreen extends JDialog implements ActionListener {
         setContentPane(main);
         pack(); // size just enough for content
         setLocationRelativeTo(parent); // center on parent
-        this.setSize(350,300);
+        this.setSize(400,300);
         this.setVisible(true);
         
     }
@@ -97,7 +101,7 @@ public class DelayScreen extends JDialog implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         
-        if(e.getSource() == add){
+        if(e.getSource() == add || e.getSource() == impact){
             String s1 = station1.getText().trim();
             String s2 = station2.getText().trim();
             String line = lineColour.getText().trim();
@@ -143,6 +147,14 @@ public class DelayScreen extends JDialog implements ActionListener {
                 return;
             }
 
+            if(e.getSource() == impact){
+                // Compare every journey with and without the delay, which is not added to the network
+                NetworkOverlay proposed = new NetworkOverlay(metroLink);
+                proposed.addDelay(s1, s2, line, delay);
+                showImpact(new DisruptionImpact(metroLink, proposed));
+                return;
+            }
+
             metroLink.addDelay(s1, s2, line, delay);
             JOptionPane.showMessageDialog(this, "Delay Added Successfully", "Successful Action",JOptionPane.INFORMATION_MESSAGE);
             dispose();
@@ -154,4 +166,16 @@ public class DelayScreen extends JDialog implements ActionListener {
     }
 
 
+    /**
+     * Runs the impact analysis and shows its report in a scrollable message
+     * @param analysis the impact analysis of the proposed delay
+     */
+    private void showImpact(DisruptionImpact analysis){
+        analysis.run();
+        JTextArea report = new JTextArea(analysis.formatReport(50), 20, 50);
+        report.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(report), "Delay Impact", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+
 }
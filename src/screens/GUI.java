@@ -2,6 +2,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 
 
 /**
@@ -60,6 +61,12 @@ public class GUI extends JFrame implements ActionListener {
          */
         CSVReader reader = new CSVReader();
         this.metroGraph = reader.getGraph(filePath, resultTextArea);
+        // Reuse the indexes saved by an earlier run on the same CSV, or save them for the next one
+        try{
+            new PrecomputeStore(filePath).restore(metroGraph);
+        } catch(IOException e){
+            System.out.println("The saved indexes can't be checked against the CSV file. They will be built instead");
+        }
 
         
 
@@ -250,6 +257,18 @@ public class GUI extends JFrame implements ActionListener {
             String input1 = startField.getText().trim();
             String input2 = endField.getText().trim();
 
+            // Correct misspelt station names to the closest station
+            Node startMatch = metroGraph.findClosestNode(input1);
+            if(startMatch != null && !startMatch.getID().equals(input1)){
+                input1 = startMatch.getID();
+                startField.setText(input1);
+            }
+            Node endMatch = metroGraph.findClosestNode(input2);
+            if(endMatch != null && !endMatch.getID().equals(input2)){
+                input2 = endMatch.getID();
+                endField.setText(input2);
+            }
+
             // Check if the names exist in the graph
             if (metroGraph.findNode(input1) == null || metroGraph.findNode(input2) == null){
                 resultTextArea.setText("");
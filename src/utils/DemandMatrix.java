@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+
+/**
+ * The number of trips wanted between pairs of stations, read from a demand CSV in the format of DemandReader.
+ * Only the pairs in the file are stored, grouped by origin, so a sparse matrix stays small
+ */
+public class DemandMatrix {
+
+    private int[][] destinations; // The destinations of the trips from each origin, by station index
+    private float[][] trips; // The trips to each of those destinations
+    private int[] counts; // The number of destinations stored for each origin
+    private double totalTrips;
+
+
+    /**
+     * Creates an empty instance of DemandMatrix
+     * @param stations the number of stations in the graph
+     */
+    public DemandMatrix(int stations){
+        destinations = new int[stations][];
+        trips = new float[stations][];
+        counts = new int[stations];
+    }
+
+
+    /**
+     * Reads a demand matrix for a graph. Trips listed twice for the same pair are added together
+     * @param input the CSV to read
+     * @param graph the graph whose stations the trips are between
+     * @return the demand matrix
+     * @throws IOException if the input can't be read
+     */
+    public static DemandMatrix read(Reader input, Graph graph) throws IOException{
+        DemandMatrix matrix = new DemandMatrix(graph.getSize());
+        DemandReader reader = new DemandReader(input, graph, Integer.MAX_VALUE);
+        DemandReader.OriginTrips group;
+        while((group = reader.readGroup()) != null){
+            for(int i = 0; i < group.getCount(); i++){
+                matrix.add(group.getOrigin(), group.getDestination(i), group.getTrips(i));
+            }
+        }
+        return matrix;
+    }
+
+
+    /**
+     * Adds trips between two stations, kept as a separate entry if the pair already has trips
+     * @param origin the index of the origin station
+     * @param destination the index of the destination station
+     * @param count the number of trips
+     */
+    public void add(int origin, int destination, float count){
+        if(destinations[origin] == null){
+            destinations[origin] = new int[4];
+            trips[origin] = new float[4];
+        }else if(counts[origin] == destinations[origin].length){
+            destinations[origin] = Arrays.copyOf(destinations[origin], counts[origin] * 2);
+            trips[origin] = Arrays.copyOf(trips[origin], counts[origin] * 2);
+        }
+        destinations[origin][counts[origin]] = destination;
+        trips[origin][counts[origin]++] = count;
+        totalTrips += count;
+    }
+
+
+    /**
+     * Writes the trips from an origin into an array indexed by destination
+     * @param origin the index of the origin station
+     * @param row the array to fill, which is cleared first
+     */
+    public void getRow(int origin, float[] row){
+        Arrays.fill(row, 0);
+        for(int i = 0; i < counts[origin]; i++){
+            row[destinations[origin][i]] += trips[origin][i];
+        }
+    }
+
+    /**
+     * getter for the number of entries with trips from an origin
+     * @param origin the index of the origin station
+     * @return the number of entries, counting a destination once for each time it was added
+     */
+    public int getDestinationCount(int origin){
+        return counts[origin];
+    }
+
+    /**
+     * getter for the total number of trips in the matrix
+     * @return the number of trips
+     */
+    public double getTotalTrips(){
+        return totalTrips;
+    }
+
+}
@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+
+/**
+ * Reads the trips of a demand CSV one origin at a time, so a matrix too big for memory can still be used.
+ * Each line is one pair of stations:
+ *   Origin,Destination,Trips
+ * A first line starting with Origin is taken as a header. Blank lines and lines starting with # are ignored,
+ * and lines with an unknown station or an invalid number of trips are reported and skipped.
+ * Consecutive lines with the same origin are read as one group, so the file is best sorted by origin,
+ * but an origin may appear in several groups
+ */
+public class DemandReader {
+
+    private BufferedReader input;
+    private Graph graph;
+    private int maxPairs; // the most pairs in one group, so one origin with huge demand is still read in parts
+    private int lineNumber;
+    private int nextOrigin = -1; // A pair read past the end of the last group, -1 if there is none
+    private int nextDestination;
+    private float nextTrips;
+
+
+    /**
+     * Creates an instance of DemandReader
+     * @param input the CSV to read
+     * @param graph the graph whose stations the trips are between
+     * @param maxPairs the most pairs in one group
+     */
+    public DemandReader(Reader input, Graph graph, int maxPairs){
+        this.input = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        this.graph = graph;
+        this.maxPairs = maxPairs;
+    }
+
+
+    /**
+     * Reads the pairs up to the next change of origin, the end of the input, or the group size limit
+     * @return the trips from one origin, null once the input has ended
+     * @throws IOException if the input can't be read
+     */
+    public OriginTrips readGroup() throws IOException{
+        OriginTrips group = null;
+        if(nextOrigin >= 0){
+            group = new OriginTrips(nextOrigin);
+            group.add(nextDestination, nextTrips);
+            nextOrigin = -1;
+        }
+
+        String line;
+        while((group == null || group.count < maxPairs) && (line = input.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.startsWith("Origin"))) continue;
+
+            String[] values = line.split(",");
+            if(values.length != 3){
+                System.out.println("Line " + lineNumber + " of the demand matrix is not a valid pair. It is skipped");
+                continue;
+            }
+            Node origin = graph.findNode(values[0].trim());
+            Node destination = graph.findNode(values[1].trim());
+            if(origin == null || destination == null){
+                System.out.println("Line " + lineNumber + " of the demand matrix has an unknown station. It is skipped");
+                continue;
+            }
+            float trips;
+            try{
+                trips = Float.parseFloat(values[2].trim());
+            } catch(NumberFormatException e){
+                System.out.println("Line " + lineNumber + " of the demand matrix has an invalid number of trips. It is skipped");
+                continue;
+            }
+
+            if(group == null){
+                group = new OriginTrips(origin.getIndex());
+            }else if(group.origin != origin.getIndex()){
+                // Keep the pair for the next group
+                nextOrigin = origin.getIndex();
+                nextDestination = destination.getIndex();
+                nextTrips = trips;
+                return group;
+            }
+            group.add(destination.getIndex(), trips);
+        }
+        return group;
+    }
+
+
+    /**
+     * The trips from one origin read as a group
+     */
+    public static class OriginTrips {
+        private int origin;
+        private int[] destinations = new int[16];
+        private float[] trips = new float[16];
+        private int count;
+
+        OriginTrips(int origin){
+            this.origin = origin;
+        }
+
+        /**
+         * Helper method which adds a pair to the group
+         * @param destination the index of the destination station
+         * @param count the number of trips
+         */
+        private void add(int destination, float count){
+            if(this.count == destinations.length){
+                destinations = Arrays.copyOf(destinations, this.count * 2);
+                trips = Arrays.copyOf(trips, this.count * 2);
+            }
+            destinations[this.count] = destination;
+            trips[this.count++] = count;
+        }
+
+        /**
+         * getter for the origin of the group
+         * @return the index of the origin station
+         */
+        public int getOrigin(){
+            return origin;
+        }
+
+        /**
+         * getter for the number of pairs in the group
+         * @return the number of pairs
+         */
+        public int getCount(){
+            return count;
+        }
+
+        /**
+         * getter for the destination of a pair
+         * @param i the position of the pair in the group
+         * @return the index of the destination station
+         */
+        public int getDestination(int i){
+            return destinations[i];
+        }
+
+        /**
+         * getter for the trips of a pair
+         * @param i the position of the pair in the group
+         * @return the number of trips
+         */
+        public float getTrips(int i){
+            return trips[i];
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+
+/**
+ * Reads disruption events from a feed, such as a file or a socket, and groups them into batches.
+ * Each line of the feed is one event:
+ *   DELAY,From,To,Line,Minutes
+ *   CLOSE,Station
+ *   REOPEN,Station
+ *   COMMIT                      ends the current batch
+ * Blank lines and lines starting with # are ignored, and malformed lines are reported and skipped
+ */
+public class DisruptionFeedReader {
+
+    private BufferedReader feed;
+    private int maxEvents; // the most events in one batch, so a feed without COMMIT lines is still applied in batches
+    private int lineNumber;
+
+
+    /**
+     * Creates an instance of DisruptionFeedReader
+     * @param feed the feed to read
+     * @param maxEvents the most events in one batch
+     */
+    public DisruptionFeedReader(Reader feed, int maxEvents){
+        this.feed = feed instanceof BufferedReader ? (BufferedReader) feed : new BufferedReader(feed);
+        this.maxEvents = maxEvents;
+    }
+
+
+    /**
+     * Reads the events up to the next COMMIT line, the end of the feed, or the batch size limit
+     * @return the batch of events, null once the feed has ended
+     * @throws IOException if the feed can't be read
+     */
+    public DisruptionBatch readBatch() throws IOException{
+        DisruptionBatch batch = new DisruptionBatch();
+        String line;
+        while(batch.getEventCount() < maxEvents && (line = feed.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            if(line.equalsIgnoreCase("COMMIT")){
+                if(!batch.isEmpty()) return batch;
+                continue;
+            }
+
+            String[] values = line.split(",");
+            String type = values[0].trim().toUpperCase();
+            try{
+                if(type.equals("DELAY") && values.length == 5){
+                    batch.addDelay(values[1].trim(), values[2].trim(), values[3].trim(), Float.parseFloat(values[4].trim()));
+                }else if(type.equals("CLOSE") && values.length == 2){
+                    batch.addClosure(values[1].trim());
+                }else if(type.equals("REOPEN") && values.length == 2){
+                    batch.addReopening(values[1].trim());
+                }else{
+                    System.out.println("Line " + lineNumber + " of the disruption feed is not a valid event. It is skipped");
+                }
+            } catch(NumberFormatException e){
+                System.out.println("Line " + lineNumber + " of the disruption feed has an invalid delay. It is skipped");
+            }
+        }
+        return batch.isEmpty() ? null : batch;
+    }
+
+
+    /**
+     * Reads the whole feed and applies each batch to the graph as it is read
+     * @param graph the graph to update
+     * @return the number of batches which were applied
+     * @throws IOException if the feed can't be read
+     */
+    public int replay(Graph graph) throws IOException{
+        int applied = 0;
+        DisruptionBatch batch;
+        while((batch = readBatch()) != null){
+            if(graph.applyDisruptions(batch)) applied++;
+        }
+        return applied;
+    }
+
+}
@@ -0,0 +1,83 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Reads a network CSV file, in the same format as CSVReader, for headless runs which must start quickly.
+ * Every station is added straight away, but the connections are only kept in arrays and each station's edges
+ * are created the first time something asks for them, so a short run only builds the part of the network it visits.
+ * It uses no Swing classes, so none of them are loaded
+ */
+public class LazyGraphReader {
+
+    private StringPool names; // Shares the station and line names with other graphs read with the same pool
+
+    /**
+     * Creates an instance of LazyGraphReader whose graphs share names only with each other
+     */
+    public LazyGraphReader(){
+        this(new StringPool());
+    }
+
+    /**
+     * Creates an instance of LazyGraphReader which takes its names from a pool, so graphs of several networks share them
+     * @param names the pool of station and line names
+     */
+    public LazyGraphReader(StringPool names){
+        this.names = names;
+    }
+
+    /**
+     * Reads a CSV file into a graph whose edges are created when first needed
+     * @param filePath the path of the CSV file
+     * @return a Graph with every station, which gives the same edges as CSVReader would once they are touched
+     * @throws IOException if the file can't be read
+     */
+    public Graph getGraph(String filePath) throws IOException{
+        Graph graph = new Graph();
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        String[] lineOf = new String[1024];
+        float[] time = new float[1024];
+        int rows = 0;
+
+        try(BufferedReader buffer = new BufferedReader(new FileReader(filePath))){
+            String line;
+            while((line = buffer.readLine()) != null){
+                if(line.startsWith("From")) continue;
+                int first = line.indexOf(',');
+                int second = line.indexOf(',', first + 1);
+                int third = line.indexOf(',', second + 1);
+                int fourth = line.indexOf(',', third + 1);
+                String start = names.intern(line.substring(0, first));
+                String end = names.intern(line.substring(first + 1, second));
+                String colour = names.intern(line.substring(second + 1, third));
+                float minutes = Float.parseFloat(fourth < 0 ? line.substring(third + 1) : line.substring(third + 1, fourth));
+
+                graph.addNode(start);
+                graph.addNode(end);
+                if(rows == from.length){
+                    from = Arrays.copyOf(from, rows * 2);
+                    to = Arrays.copyOf(to, rows * 2);
+                    lineOf = Arrays.copyOf(lineOf, rows * 2);
+                    time = Arrays.copyOf(time, rows * 2);
+                }
+                from[rows] = graph.findNode(start).getIndex();
+                to[rows] = graph.findNode(end).getIndex();
+                lineOf[rows] = colour;
+                time[rows] = minutes;
+                rows++;
+            }
+        }
+
+        Node[] nodes = new Node[graph.getSize()];
+        for(Node node = graph.getHeaNode(); node != null; node = node.getNxtNode()){
+            nodes[node.getIndex()] = node;
+        }
+        graph.setPendingEdges(new PendingAdjacency(nodes, from, to, lineOf, time, rows));
+        return graph;
+    }
+
+}
@@ -0,0 +1,250 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Generates synthetic tram networks in the same From,To,Line,Time format as the Metrolink CSV,
+ * for testing the loader and the routing searches on networks far bigger than the real one.
+ *
+ * The layout copies the shape of the Metrolink:
+ *   Radial lines run from a terminus on one side of the city to a terminus on the other side.
+ *   Radial lines share trunk corridors through the centre, like the Victoria - Piccadilly section,
+ *   and all trunks meet at the Central interchange.
+ *   Orbital lines circle the centre and interchange with every radial branch they cross.
+ *
+ * Rows are written as they are generated so networks with millions of edges don't need to fit in memory.
+ * The same station count, line count and seed always give the same network
+ */
+public class NetworkGenerator {
+
+    private static final String HEADER = "From ,To ,Line ,Time (mins)";
+    private static final String CENTRAL = "Central";
+    private static final int LINES_PER_TRUNK = 4; // radial lines sharing each trunk corridor
+    private static final int TRUNK_LENGTH = 7; // stations on each trunk, the middle one is Central
+    private static final double ORBITAL_SHARE = 0.2; // share of the branch stations used by the orbital lines
+
+    private int radials;
+    private int orbitals;
+    private int trunks;
+    private int[] branchLength; // stations on each branch, two branches per radial line
+    private double[] branchAngle; // direction of each branch from the centre
+    private int orbitalStations; // stations on each orbital line which are not interchanges
+    private float[][] trunkTimes; // travel time between neighbouring trunk stations, shared by the lines on the trunk
+    private Random random;
+
+
+    /**
+     * Creates an instance of NetworkGenerator and lays out the lines
+     * @param stations the number of stations in the network
+     * @param lines the number of lines in the network
+     * @param seed the seed for the random layout and times
+     */
+    public NetworkGenerator(int stations, int lines, long seed){
+        if(lines < 1) throw new IllegalArgumentException("The network needs at least one line");
+
+        this.random = new Random(seed);
+        this.orbitals = lines < 3 ? 0 : Math.max(1, lines / 4);
+        this.radials = lines - orbitals;
+        this.trunks = (radials + LINES_PER_TRUNK - 1) / LINES_PER_TRUNK;
+
+        int trunkStations = trunks * (TRUNK_LENGTH - 1) + 1;
+        int remaining = stations - trunkStations;
+        if(remaining < 2 * radials + 4 * orbitals){
+            throw new IllegalArgumentException("Too few stations for " + lines + " lines, at least "
+                    + (trunkStations + 2 * radials + 4 * orbitals) + " are needed");
+        }
+
+        // Set aside the orbital stations, then share the rest between the branches
+        this.orbitalStations = orbitals == 0 ? 0 : (int) (remaining * ORBITAL_SHARE) / orbitals;
+        int branchStations = remaining - orbitalStations * orbitals;
+        this.branchLength = new int[2 * radials];
+        this.branchAngle = new double[2 * radials];
+        for(int b = 0; b < branchLength.length; b++){
+            branchLength[b] = branchStations / branchLength.length + (b < branchStations % branchLength.length ? 1 : 0);
+            // Each radial line crosses the city, so its second branch points the opposite way
+            double angle = Math.PI * (b / 2) / radials + (random.nextDouble() - 0.5) * Math.PI / (2 * radials);
+            branchAngle[b] = b % 2 == 0 ? angle : angle + Math.PI;
+        }
+
+        this.trunkTimes = new float[trunks][TRUNK_LENGTH - 1];
+        for(float[] times : trunkTimes){
+            for(int i = 0; i < times.length; i++) times[i] = randomTime(1, 2.5);
+        }
+    }
+
+
+    /**
+     * Writes the network as CSV
+     * @param out where to write the rows
+     * @throws IOException if writing fails
+     */
+    public void write(Writer out) throws IOException{
+        out.write(HEADER + "\n");
+        for(int line = 0; line < radials; line++){
+            writeRadial(out, line);
+        }
+        for(int line = 0; line < orbitals; line++){
+            writeOrbital(out, line);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Helper method which writes a radial line: the first branch inwards, the shared trunk, then the second branch outwards
+     * @param out where to write the rows
+     * @param line the index of the radial line
+     * @throws IOException if writing fails
+     */
+    private void writeRadial(Writer out, int line) throws IOException{
+        String name = "R" + (line + 1);
+        int trunk = line % trunks;
+        int first = 2 * line;
+        int second = 2 * line + 1;
+
+        String previous = null;
+        for(int s = branchLength[first] - 1; s >= 0; s--){
+            previous = writeRow(out, previous, branchStation(first, s), name, randomTime(1, 4));
+        }
+        for(int s = 0; s < TRUNK_LENGTH; s++){
+            float time = s == 0 ? randomTime(1, 4) : trunkTimes[trunk][s - 1];
+            previous = writeRow(out, previous, trunkStation(trunk, s), name, time);
+        }
+        for(int s = 0; s < branchLength[second]; s++){
+            previous = writeRow(out, previous, branchStation(second, s), name, randomTime(1, 4));
+        }
+    }
+
+
+    /**
+     * Helper method which writes an orbital line, a ring which changes with every branch it crosses
+     * @param out where to write the rows
+     * @param line the index of the orbital line
+     * @throws IOException if writing fails
+     */
+    private void writeOrbital(Writer out, int line) throws IOException{
+        String name = "O" + (line + 1);
+        // Rings are spread evenly between the centre and the end of the average branch
+        int averageLength = Arrays.stream(branchLength).sum() / branchLength.length;
+        int radius = Math.max(0, (int) Math.round((line + 1.0) / (orbitals + 1) * averageLength) - 1);
+
+        // The interchanges, in the order the ring passes the branches
+        List<String> interchanges = new ArrayList<>();
+        Integer[] order = new Integer[branchAngle.length];
+        for(int b = 0; b < order.length; b++) order[b] = b;
+        Arrays.sort(order, (a, b) -> Double.compare(bearing(branchAngle[a]), bearing(branchAngle[b])));
+        for(int b : order){
+            if(branchLength[b] > radius) interchanges.add(branchStation(b, radius));
+        }
+
+        // Spread the line's own stations between the interchanges
+        int gaps = Math.max(1, interchanges.size());
+        String first = null;
+        String previous = null;
+        int station = 0;
+        for(int gap = 0; gap < gaps; gap++){
+            if(!interchanges.isEmpty()){
+                previous = writeRow(out, previous, interchanges.get(gap), name, randomTime(2, 5));
+                if(first == null) first = previous;
+            }
+            int inGap = orbitalStations / gaps + (gap < orbitalStations % gaps ? 1 : 0);
+            for(int s = 0; s < inGap; s++, station++){
+                previous = writeRow(out, previous, name + " " + (station + 1), name, randomTime(2, 5));
+                if(first == null) first = previous;
+            }
+        }
+        // Close the ring
+        writeRow(out, previous, first, name, randomTime(2, 5));
+    }
+
+
+    /**
+     * Helper method which writes the row joining two stations, unless there is no previous station yet
+     * @param out where to write the row
+     * @param from the previous station on the line, null at the start of the line
+     * @param to the next station on the line
+     * @param line the name of the line
+     * @param time the travel time between the stations
+     * @return the station the line has reached
+     * @throws IOException if writing fails
+     */
+    private String writeRow(Writer out, String from, String to, String line, float time) throws IOException{
+        if(from != null && !from.equals(to)){
+            out.write(from + "," + to + "," + line + "," + time + "\n");
+        }
+        return to;
+    }
+
+    /**
+     * Helper method which names a station on a branch
+     * @param branch the index of the branch
+     * @param index the position of the station counting outwards from the trunk
+     * @return the name of the station
+     */
+    private String branchStation(int branch, int index){
+        return "R" + (branch / 2 + 1) + (branch % 2 == 0 ? "A " : "B ") + (index + 1);
+    }
+
+    /**
+     * Helper method which names a station on a trunk
+     * @param trunk the index of the trunk
+     * @param index the position of the station along the trunk
+     * @return the name of the station, Central for the middle of every trunk
+     */
+    private String trunkStation(int trunk, int index){
+        return index == TRUNK_LENGTH / 2 ? CENTRAL : "Trunk " + (trunk + 1) + "-" + (index + 1);
+    }
+
+    /**
+     * Helper method which brings an angle into the range [0, 2 PI)
+     * @param angle the angle in radians
+     * @return the same direction as an angle between 0 and 2 PI
+     */
+    private double bearing(double angle){
+        double turn = 2 * Math.PI;
+        return ((angle % turn) + turn) % turn;
+    }
+
+    /**
+     * Helper method which picks a travel time in half minute steps
+     * @param min the shortest time
+     * @param max the longest time
+     * @return the travel time in minutes
+     */
+    private float randomTime(double min, double max){
+        int steps = (int) Math.round((max - min) * 2);
+        return (float) (min + random.nextInt(steps + 1) / 2.0);
+    }
+
+
+    /**
+     * Writes a generated network to a file, or to the standard output when no file is given
+     * @param args the number of stations, the number of lines, the seed and optionally the output file
+     */
+    public static void main(String[] args){
+        if(args.length < 3){
+            System.out.println("Usage: java NetworkGenerator <stations> <lines> <seed> [output.csv]");
+            return;
+        }
+        try{
+            NetworkGenerator generator = new NetworkGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]));
+            try(Writer out = new BufferedWriter(args.length > 3 ? new FileWriter(args[3]) : new OutputStreamWriter(System.out), 1 << 16)){
+                generator.write(out);
+            }
+        } catch(NumberFormatException e){
+            System.out.println("The station count, line count and seed must be whole numbers");
+        } catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+        } catch(IOException e){
+            System.out.println("I/O Error: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+
+/**
+ * Hosts the graphs of several independent networks in one process, such as different tram systems or
+ * older versions of the same one, each known by an id.
+ * A network is read with LazyGraphReader the first time a query asks for it, and all of them take their
+ * station and line names from one StringPool, so a name used by many networks is only kept once.
+ * The loaded networks are kept within a budget of edges: when a load goes over it, the networks
+ * used least recently which no query is using are unloaded, and unloadIdle unloads the ones nobody asked for lately.
+ * An unloaded network is read again from its file when it is next asked for, so any delays or closures added to it are lost
+ */
+public class NetworkRegistry {
+
+    private final StringPool names = new StringPool(); // Shared by every network read by the registry
+    private final LinkedHashMap<String, Network> networks = new LinkedHashMap<>(); // Maps each id to its network, in the order they were registered
+    private final long maxEdges; // The most edges the loaded networks may have between them
+    private long loadedEdges; // The edges of the loaded networks
+
+    /**
+     * A registered network and whether it is loaded
+     */
+    private static class Network {
+        private final String filePath;
+        private Graph graph; // null while the network isn't loaded
+        private long edges; // the edge ids of the graph when it was loaded
+        private int users; // the queries running on the graph
+        private long lastUsed = System.nanoTime();
+
+        private Network(String filePath){
+            this.filePath = filePath;
+        }
+    }
+
+
+    /**
+     * Creates an instance of NetworkRegistry
+     * @param maxEdges the most edges the loaded networks may have between them, counting both directions of each connection.
+     * A network bigger than this on its own is still loaded while a query uses it
+     */
+    public NetworkRegistry(long maxEdges){
+        if(maxEdges <= 0) throw new IllegalArgumentException("The edge budget must be positive");
+        this.maxEdges = maxEdges;
+    }
+
+
+    /**
+     * Adds a network which will be read from a CSV file when it is first asked for
+     * @param id the id queries use to pick the network
+     * @param filePath the path of the network CSV file
+     */
+    public synchronized void register(String id, String filePath){
+        if(networks.containsKey(id)) throw new IllegalArgumentException("A network with id " + id + " is already registered");
+        networks.put(id, new Network(filePath));
+    }
+
+
+    /**
+     * Runs a query on a network, loading it first if it isn't loaded. The network stays loaded while the query runs
+     * @param <T> the type of the answer
+     * @param id the id of the network
+     * @param query the query, which is given the graph of the network
+     * @return the answer of the query
+     * @throws IOException if the network had to be loaded and its file can't be read
+     */
+    public <T> T query(String id, Function<Graph, T> query) throws IOException{
+        Network network = acquire(id);
+        try{
+            return query.apply(load(network));
+        } finally{
+            release(network);
+        }
+    }
+
+
+    /**
+     * Helper method which finds a network and marks it as used by one more query
+     * @param id the id of the network
+     * @return the network
+     */
+    private synchronized Network acquire(String id){
+        Network network = networks.get(id);
+        if(network == null) throw new IllegalArgumentException("No network with id " + id + " is registered");
+        network.users++;
+        return network;
+    }
+
+
+    /**
+     * Helper method which marks a network as used by one less query
+     * @param network the network
+     */
+    private synchronized void release(Network network){
+        network.users--;
+        network.lastUsed = System.nanoTime();
+    }
+
+
+    /**
+     * Helper method which reads the graph of a network if it isn't loaded, then makes room for it in the budget.
+     * Only one thread reads a given network, while others can read or query different ones
+     * @param network the network, which the calling query is using
+     * @return the graph of the network
+     * @throws IOException if the file of the network can't be read
+     */
+    private Graph load(Network network) throws IOException{
+        synchronized(network){
+            Graph graph;
+            synchronized(this){
+                graph = network.graph;
+            }
+            if(graph != null) return graph;
+
+            graph = new LazyGraphReader(names).getGraph(network.filePath);
+            synchronized(this){
+                network.graph = graph;
+                network.edges = graph.getEdgeIdCount();
+                loadedEdges += network.edges;
+                evict();
+            }
+            return graph;
+        }
+    }
+
+
+    /**
+     * Helper method which unloads the networks used least recently which no query is using,
+     * until the loaded networks fit in the budget or no more can be unloaded
+     */
+    private void evict(){
+        while(loadedEdges > maxEdges){
+            Network oldest = null;
+            for(Network network : networks.values()){
+                if(network.graph != null && network.users == 0 && (oldest == null || network.lastUsed < oldest.lastUsed)) oldest = network;
+            }
+            if(oldest == null) return;
+            unload(oldest);
+        }
+    }
+
+
+    /**
+     * Helper method which drops the graph of a network
+     * @param network the network, which must be loaded
+     */
+    private void unload(Network network){
+        network.graph = null;
+        loadedEdges -= network.edges;
+        network.edges = 0;
+    }
+
+
+    /**
+     * Unloads a network now, unless a query is using it
+     * @param id the id of the network
+     * @return true if the network was loaded and has been unloaded
+     */
+    public synchronized boolean unload(String id){
+        Network network = networks.get(id);
+        if(network == null || network.graph == null || network.users > 0) return false;
+        unload(network);
+        return true;
+    }
+
+
+    /**
+     * Unloads every network no query has used for a while
+     * @param idleMillis how long a network must have gone unused, in milliseconds
+     * @return the ids of the networks unloaded
+     */
+    public synchronized List<String> unloadIdle(long idleMillis){
+        long now = System.nanoTime();
+        List<String> unloaded = new ArrayList<>();
+        for(Map.Entry<String, Network> entry : networks.entrySet()){
+            Network network = entry.getValue();
+            if(network.graph != null && network.users == 0 && now - network.lastUsed >= idleMillis * 1000000){
+                unload(network);
+                unloaded.add(entry.getKey());
+            }
+        }
+        return unloaded;
+    }
+
+
+    /**
+     * Checks if a network is loaded
+     * @param id the id of the network
+     * @return true if its graph is in memory
+     */
+    public synchronized boolean isLoaded(String id){
+        Network network = networks.get(id);
+        return network != null && network.graph != null;
+    }
+
+
+    /**
+     * getter for the ids of the registered networks
+     * @return the ids, in the order they were registered
+     */
+    public synchronized List<String> getIds(){
+        return new ArrayList<>(networks.keySet());
+    }
+
+
+    /**
+     * getter for the edges of the loaded networks
+     * @return the edges counted against the budget
+     */
+    public synchronized long getLoadedEdges(){
+        return loadedEdges;
+    }
+
+
+    /**
+     * getter for the pool the station and line names of every network come from
+     * @return the shared pool
+     */
+    public StringPool getNames(){
+        return names;
+    }
+
+
+    /**
+     * Answers "network,From,To" queries from the standard input, as HeadlessPlanner does for one network.
+     * Each answer is "network,From,To,minutes", "none" when there is no route
+     * @param args the edge budget, then id=path for each network
+     * @throws IOException if a network file or the queries can't be read
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length < 2){
+            System.out.println("Usage: java NetworkRegistry <max edges> <id>=<network.csv>... < queries.csv");
+            return;
+        }
+        NetworkRegistry registry = new NetworkRegistry(Long.parseLong(args[0]));
+        for(int i = 1; i < args.length; i++){
+            int split = args[i].indexOf('=');
+            if(split <= 0){
+                System.err.println("Skipping \"" + args[i] + "\", a network is id=path");
+                continue;
+            }
+            registry.register(args[i].substring(0, split), args[i].substring(split + 1));
+        }
+
+        BufferedReader queries = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while((line = queries.readLine()) != null){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+            String[] values = line.split(",");
+            if(values.length != 3){
+                System.err.println("Skipping \"" + line + "\", a query is network,From,To");
+                continue;
+            }
+            String id = values[0].trim();
+            if(!registry.getIds().contains(id)){
+                System.out.println(id + ",unknown network");
+                continue;
+            }
+            String answer = registry.query(id, graph -> HeadlessPlanner.plan(graph, values[1].trim(), values[2].trim(), false));
+            System.out.println(id + "," + answer);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Keeps data derived from a network file on disk, so it survives a restart instead of being built again.
+ * Each entry is a file in a folder next to the network file, holding a header and the data:
+ *   magic, store version, entry version, checksum of the network file, length of the data, checksum of the data
+ * An entry is only loaded if its versions match and it was made from a network file with the same checksum,
+ * so a changed network or a changed format just makes the entry stale. The checksum of the data catches an entry
+ * damaged on disk, which is then built again like a stale one. Entries are written to a temporary file
+ * and then moved into place, so a crash never leaves half an entry, and they are read through a memory mapping
+ */
+public class PrecomputeStore {
+
+    private static final int MAGIC = 0x4D4C5053; // "MLPS"
+    private static final int STORE_VERSION = 2; // the version of the header, changed if its layout changes
+    private static final int HEADER_BYTES = 32;
+    private static final String LINE_TRANSFERS = "line-transfers";
+
+    private Path folder;
+    private long checksum; // The checksum of the network file the entries must have been made from
+
+
+    /**
+     * Creates an instance of PrecomputeStore for a network file, with its entries in a folder named after the file
+     * @param networkFile the path of the network CSV file
+     * @throws IOException if the network file can't be read
+     */
+    public PrecomputeStore(String networkFile) throws IOException{
+        this(networkFile, networkFile + ".index");
+    }
+
+    /**
+     * Creates an instance of PrecomputeStore for a network file
+     * @param networkFile the path of the network CSV file
+     * @param folder the folder to keep the entries in, which is created when the first entry is saved
+     * @throws IOException if the network file can't be read
+     */
+    public PrecomputeStore(String networkFile, String folder) throws IOException{
+        this.folder = Paths.get(folder);
+        this.checksum = checksum(Paths.get(networkFile));
+    }
+
+
+    /**
+     * Helper method which finds the checksum of a file
+     * @param file the path of the file
+     * @return the CRC32C of its bytes
+     * @throws IOException if the file can't be read
+     */
+    private static long checksum(Path file) throws IOException{
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[65536];
+        try(InputStream input = Files.newInputStream(file)){
+            int read;
+            while((read = input.read(buffer)) > 0) crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+
+    /**
+     * Loads an entry through a read only memory mapping
+     * @param name the name of the entry
+     * @param version the version of the entry's format
+     * @return the data of the entry in native byte order, null if there is no entry or it is stale or damaged
+     */
+    public ByteBuffer load(String name, int version){
+        Path file = folder.resolve(name + ".bin");
+        if(!Files.isRegularFile(file)) return null;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_BYTES) return null;
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+            if(mapped.getInt() != MAGIC || mapped.getInt() != STORE_VERSION || mapped.getInt() != version
+                    || mapped.getLong() != checksum) return null;
+            int length = mapped.getInt();
+            long dataChecksum = mapped.getLong();
+            if(length != mapped.remaining()) return null;
+            ByteBuffer data = mapped.slice().order(ByteOrder.nativeOrder());
+            CRC32C crc = new CRC32C();
+            crc.update(data.duplicate());
+            if(crc.getValue() != dataChecksum) return null;
+            return data;
+        } catch(IOException e){
+            return null;
+        }
+    }
+
+
+    /**
+     * Saves an entry, replacing any older entry of the same name in one step
+     * @param name the name of the entry
+     * @param version the version of the entry's format
+     * @param data the data to save, from its position to its limit
+     * @throws IOException if the entry can't be written
+     */
+    public void save(String name, int version, ByteBuffer data) throws IOException{
+        Files.createDirectories(folder);
+        Path file = folder.resolve(name + ".bin");
+        Path temporary = Files.createTempFile(folder, name, ".tmp");
+        try{
+            CRC32C crc = new CRC32C();
+            crc.update(data.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(STORE_VERSION).putInt(version).putLong(checksum).putInt(data.remaining())
+                    .putLong(crc.getValue()).flip();
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)){
+                while(header.hasRemaining()) channel.write(header);
+                ByteBuffer body = data.duplicate();
+                while(body.hasRemaining()) channel.write(body);
+                channel.force(true);
+            }
+            try{
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException e){
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally{
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+
+    /**
+     * Gives a graph the indexes saved for its network file, and builds and saves any which are missing or stale.
+     * Each entry is loaded or built on its own, so one bad entry doesn't stop the others being restored.
+     * Saving is only an optimisation, so an entry which can't be written is reported and skipped
+     * @param graph the graph read from the network file
+     */
+    public void restore(Graph graph){
+        restoreLineTransfers(graph);
+    }
+
+    /**
+     * Helper method which gives a graph its saved line transfer index, or builds and saves it.
+     * An entry which can't be decoded or doesn't match the graph's lines is built again
+     * @param graph the graph read from the network file
+     */
+    private void restoreLineTransfers(Graph graph){
+        ByteBuffer lines = load(LINE_TRANSFERS, LineTransferIndex.STORE_VERSION);
+        if(lines != null){
+            try{
+                graph.setLineTransferIndex(new LineTransferIndex(lines));
+                return;
+            } catch(RuntimeException e){
+                System.out.println("The saved line transfer index is damaged, so it is built again: " + e);
+            }
+        }
+        try{
+            save(LINE_TRANSFERS, LineTransferIndex.STORE_VERSION, graph.getLineTransferIndex().toBuffer());
+        } catch(IOException e){
+            System.out.println("The line transfer index can't be saved: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * getter for the checksum of the network file
+     * @return the CRC32C of the network file
+     */
+    public long getChecksum(){
+        return checksum;
+    }
+
+}
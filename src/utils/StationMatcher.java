@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Resolves misspelt station names to the closest known station.
+ * Station names are indexed by their trigrams, so a query only verifies the few stations
+ * that share enough trigrams with it instead of comparing against every station in the graph
+ */
+public class StationMatcher {
+
+    private static final int GRAM = 3; // length of the grams used by the index
+    private static final int MAX_EDITS = 3; // the largest number of typos that is ever corrected
+
+    private Map<String, List<String>> index = new HashMap<>(); // Maps each gram to the stations that contain it
+    private Map<String, String> normalisedNames = new HashMap<>(); // Maps each station to its normalised name
+
+
+    /**
+     * Adds a station to the index, stations which are already indexed are ignored
+     * @param station the name of the station
+     */
+    public void addStation(String station){
+        if(normalisedNames.containsKey(station)) return;
+
+        String normalised = normalise(station);
+        normalisedNames.put(station, normalised);
+        for(String gram : grams(normalised)){
+            index.computeIfAbsent(gram, g -> new ArrayList<>()).add(station);
+        }
+    }
+
+
+    /**
+     * Finds the station with the closest name to the query
+     * @param query the (possibly misspelt) name of the station
+     * @return the name of the closest station, null if no station is close enough
+     */
+    public String findClosest(String query){
+        String normalised = normalise(query);
+        if(normalised.isEmpty()) return null;
+
+        // Short names get fewer corrections so that they don't match everything
+        int maxEdits = Math.min(MAX_EDITS, Math.max(1, normalised.length() / 4));
+        LinkedHashSet<String> queryGrams = grams(normalised);
+
+        // Count the grams each station shares with the query
+        Map<String, Integer> shared = new HashMap<>();
+        for(String gram : queryGrams){
+            List<String> stations = index.get(gram);
+            if(stations == null) continue;
+            for(String station : stations){
+                shared.merge(station, 1, Integer::sum);
+            }
+        }
+
+        // Every edit destroys at most GRAM + 1 grams (a swap touches two letters),
+        // so stations sharing fewer grams can't be close enough
+        int minShared = queryGrams.size() - maxEdits * (GRAM + 1);
+
+        String best = null;
+        int bestEdits = maxEdits + 1;
+        int bestShared = 0;
+        for(Map.Entry<String, Integer> candidate : shared.entrySet()){
+            if(candidate.getValue() < minShared) continue;
+
+            int edits = boundedDistance(normalised, normalisedNames.get(candidate.getKey()), maxEdits);
+            // Prefer fewer edits, then more shared grams
+            if(edits < bestEdits || (edits == bestEdits && candidate.getValue() > bestShared)){
+                best = candidate.getKey();
+                bestEdits = edits;
+                bestShared = candidate.getValue();
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Helper method which lower cases the name and removes punctuation and extra spaces
+     * @param name the name to normalise
+     * @return the normalised name
+     */
+    private String normalise(String name){
+        StringBuilder result = new StringBuilder();
+        boolean space = false;
+        for(char c : name.toLowerCase().toCharArray()){
+            if(Character.isLetterOrDigit(c)){
+                if(space && result.length() > 0) result.append(' ');
+                result.append(c);
+                space = false;
+            }else if(Character.isWhitespace(c) || c == '/' || c == '-'){
+                space = true;
+            }
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Helper method which splits a name into its distinct grams, padding the ends
+     * so the first and last letters appear in as many grams as the others
+     * @param name the normalised name
+     * @return the set of the grams of the name
+     */
+    private LinkedHashSet<String> grams(String name){
+        String padded = "$$" + name + "$$";
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for(int i = 0; i + GRAM <= padded.length(); i++){
+            result.add(padded.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+
+    /**
+     * Helper method which finds the edit distance between two names, counting swapped neighbouring
+     * letters as a single edit and giving up once the distance exceeds the bound
+     * @param a the first name
+     * @param b the second name
+     * @param bound the largest distance of interest
+     * @return the edit distance, or bound + 1 if it is larger than the bound
+     */
+    private int boundedDistance(String a, String b, int bound){
+        if(Math.abs(a.length() - b.length()) > bound) return bound + 1;
+
+        int[] twoBack = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++) previous[j] = j;
+
+        for(int i = 1; i <= a.length(); i++){
+            current[0] = i;
+            int rowMin = current[0];
+            for(int j = 1; j <= b.length(); j++){
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                // Swapped letters
+                if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)){
+                    current[j] = Math.min(current[j], twoBack[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            // The distance can only grow from here, so stop early
+            if(rowMin > bound) return bound + 1;
+
+            int[] swap = twoBack;
+            twoBack = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+
+}
@@ -0,0 +1,40 @@
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * Shares one String for each distinct station or line name between the graphs loaded in a process.
+ * Entries are weak, so a name is dropped from the pool once no loaded graph uses it any more,
+ * and unloading a network gives back the memory of the names only it had
+ */
+public class StringPool {
+
+    private final Map<String, WeakReference<String>> names = new WeakHashMap<>(); // Maps each name to the shared copy of it
+
+
+    /**
+     * Finds the shared copy of a name, adding it to the pool if it isn't there yet
+     * @param name the name to share
+     * @return a String equal to name, the same object for every equal name while it is in use
+     */
+    public synchronized String intern(String name){
+        WeakReference<String> shared = names.get(name);
+        String copy = shared == null ? null : shared.get();
+        if(copy == null){
+            copy = name;
+            names.put(copy, new WeakReference<>(copy));
+        }
+        return copy;
+    }
+
+
+    /**
+     * getter for the number of names in the pool, some of which may be about to be dropped
+     * @return the number of names
+     */
+    public synchronized int getSize(){
+        return names.size();
+    }
+
+}